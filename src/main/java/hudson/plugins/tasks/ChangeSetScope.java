@@ -0,0 +1,189 @@
+package hudson.plugins.tasks;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.plugins.analysis.util.PluginLogger;
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.tasks.parser.Task;
+import hudson.plugins.tasks.parser.TasksParserResult;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.ChangeLogSet.AffectedFile;
+import hudson.scm.ChangeLogSet.Entry;
+
+/**
+ * Determines the files that have been changed in the SCM since the reference build, i.e. the last build with a
+ * tasks result that has been created with the same configuration in the same workspace. Only these files need to be
+ * scanned, the tasks of all other files are carried over from the reference build. Deleted files and the old names
+ * of renamed files are part of the changed files as well, so their tasks are not carried over. A reference build
+ * whose scan has been incomplete is not used, since the tasks of the skipped files would be missing in all
+ * following builds.
+ * <p>
+ * The paths of the changed files are expected to be relative to the workspace, i.e. the repository needs to be
+ * checked out into the root of the workspace. The number of scanned files of the new build is the number of scanned
+ * changed files plus the number of unchanged files whose tasks are carried over, since the reference build does not
+ * record its files without tasks.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class ChangeSetScope {
+    private static final char SEPARATOR = '/';
+
+    private final TasksResult reference;
+    private final Set<String> changedFiles;
+    private final String workspacePrefix;
+
+    /**
+     * Creates the scope of the specified build. If the changed files can't be determined, e.g. because there is no
+     * reference build or the SCM does not provide change sets, then {@code null} is returned and all files need to
+     * be scanned.
+     *
+     * @param build
+     *            the current build
+     * @param workspace
+     *            the workspace of the build
+     * @param configuration
+     *            the configuration of the scanner including the workspace location, see
+     *            {@link TasksResult#getScanConfiguration()}
+     * @param logger
+     *            the logger
+     * @return the scope, or {@code null} if all files need to be scanned
+     */
+    static ChangeSetScope create(final Run<?, ?> build, final FilePath workspace, final String configuration,
+            final PluginLogger logger) {
+        Set<String> changedFiles = new HashSet<String>();
+        for (Run<?, ?> run = build; run != null; run = run.getPreviousBuild()) {
+            if (run != build) {
+                TasksResultAction action = run.getAction(TasksResultAction.class);
+                if (action != null) {
+                    return create(action.getResult(), changedFiles, workspace.getRemote(), configuration, logger);
+                }
+            }
+            if (!(run instanceof AbstractBuild)) {
+                logger.log("Change sets of build " + run.getDisplayName() + " are not available: scanning all files");
+                return null;
+            }
+            addChangedFiles((AbstractBuild<?, ?>)run, changedFiles);
+        }
+        logger.log("No reference build found: scanning all files");
+        return null;
+    }
+
+    private static ChangeSetScope create(final TasksResult reference, final Set<String> changedFiles,
+            final String workspacePath, final String configuration, final PluginLogger logger) {
+        if (!reference.isComplete()) {
+            logger.log("Scan of reference build " + reference.getOwner().getDisplayName()
+                    + " is incomplete: scanning all files");
+            return null;
+        }
+        if (!configuration.equals(reference.getScanConfiguration())) {
+            logger.log("Configuration or workspace of reference build " + reference.getOwner().getDisplayName()
+                    + " is different: scanning all files");
+            return null;
+        }
+        return new ChangeSetScope(reference, changedFiles, workspacePath);
+    }
+
+    private static void addChangedFiles(final AbstractBuild<?, ?> build, final Set<String> changedFiles) {
+        ChangeLogSet<? extends Entry> changeSet = build.getChangeSet();
+        for (Entry entry : changeSet) {
+            for (AffectedFile file : entry.getAffectedFiles()) {
+                changedFiles.add(normalize(file.getPath()));
+            }
+        }
+    }
+
+    private static String normalize(final String fileName) {
+        String normalized = fileName.replace('\\', SEPARATOR);
+        while (normalized.startsWith(String.valueOf(SEPARATOR))) {
+            normalized = normalized.substring(1);
+        }
+        return normalized;
+    }
+
+    private ChangeSetScope(final TasksResult reference, final Set<String> changedFiles, final String workspacePath) {
+        this.reference = reference;
+        this.changedFiles = changedFiles;
+        workspacePrefix = toPrefix(workspacePath);
+    }
+
+    /**
+     * Returns the files that have been changed since the reference build.
+     *
+     * @return the names of the changed files, relative to the workspace
+     */
+    public Set<String> getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * Returns the reference build.
+     *
+     * @return the reference build
+     */
+    public Run<?, ?> getReferenceBuild() {
+        return reference.getOwner();
+    }
+
+    /**
+     * Adds copies of the tasks of all unchanged files of the reference build to the specified result. The tasks are
+     * copied, so that the tasks of the reference build are not changed when the tasks of the result are modified,
+     * e.g. by the blame of the new build.
+     *
+     * @param result
+     *            the result of the scan of the changed files
+     * @return the number of tasks that have been carried over
+     */
+    public int carryOver(final TasksParserResult result) {
+        int carriedOver = 0;
+        Set<String> carriedFiles = new HashSet<String>();
+        for (FileAnnotation annotation : reference.getAnnotations()) {
+            String relativeName = getRelativeName(annotation.getFileName());
+            if (!changedFiles.contains(relativeName)) {
+                result.addAnnotation(copy(annotation));
+                carriedFiles.add(relativeName);
+                carriedOver++;
+            }
+        }
+        result.addScannedFiles(carriedFiles.size());
+
+        return carriedOver;
+    }
+
+    private FileAnnotation copy(final FileAnnotation annotation) {
+        if (annotation instanceof Task) {
+            return ((Task)annotation).copy();
+        }
+        Task task = new Task(annotation.getPriority(), annotation.getPrimaryLineNumber(), annotation.getType(),
+                annotation.getMessage());
+        task.setModuleName(annotation.getModuleName());
+        task.setPackageName(annotation.getPackageName());
+        task.setFileName(annotation.getFileName());
+        task.setPathName(annotation.getPathName());
+        task.setContextHashCode(annotation.getContextHashCode());
+        task.setAuthorName(annotation.getAuthorName());
+        task.setAuthorEmail(annotation.getAuthorEmail());
+        task.setCommitId(annotation.getCommitId());
+        return task;
+    }
+
+    private static String toPrefix(final String workspacePath) {
+        String prefix = workspacePath.replace('\\', SEPARATOR);
+        if (prefix.endsWith(String.valueOf(SEPARATOR))) {
+            return prefix;
+        }
+        return prefix + SEPARATOR;
+    }
+
+    private String getRelativeName(final String fileName) {
+        String name = fileName.replace('\\', SEPARATOR);
+        if (name.startsWith(workspacePrefix)) {
+            return normalize(name.substring(workspacePrefix.length()));
+        }
+        return normalize(name);
+    }
+}
@@ -0,0 +1,85 @@
+package hudson.plugins.tasks;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.plugins.tasks.parser.TaskFileCompressor;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Compresses the XML files with the open tasks of older builds in the background. Only files that have not been
+ * modified for some time are compressed, so that the files of running builds are not touched. The files of builds
+ * whose tasks are already stored in the binary format are left to the {@link TasksMigrationWork}, which deletes
+ * them; the compression of a build and its migration are serialized by the {@link TasksResult#MAINTENANCE_LOCK}.
+ *
+ * @author Ulli Hafner
+ */
+@Extension
+public class TasksCompressionWork extends AsyncPeriodicWork {
+    /** Minimum age of the files to compress. */
+    private static final long MINIMUM_AGE = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Creates a new instance of {@link TasksCompressionWork}.
+     */
+    public TasksCompressionWork() {
+        super("Open tasks compression");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return DAY;
+    }
+
+    @Override
+    protected void execute(final TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - MINIMUM_AGE;
+        long savedBytes = 0;
+        for (Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+            File[] builds = job.getBuildDir().listFiles(new FileFilter() {
+                @Override
+                public boolean accept(final File file) {
+                    return file.isDirectory();
+                }
+            });
+            if (builds == null) {
+                continue;
+            }
+            for (File build : builds) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                File file = new File(build, TasksResult.XML_FILE);
+                if (file.isFile() && file.lastModified() < deadline) {
+                    try {
+                        savedBytes += compress(build, file);
+                    }
+                    catch (IOException exception) {
+                        listener.error("Failed to compress " + file + ": " + exception);
+                    }
+                }
+            }
+        }
+        listener.getLogger().println("Saved " + savedBytes / 1024 + " KB, " + TaskFileCompressor.getStatistics());
+    }
+
+    private long compress(final File build, final File file) throws IOException {
+        synchronized (TasksResult.MAINTENANCE_LOCK) {
+            if (TasksResult.isBinary(build) || !file.isFile()) {
+                return 0;
+            }
+            return TaskFileCompressor.compress(file);
+        }
+    }
+}
@@ -7,10 +7,16 @@ import java.util.Collection;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import net.sf.json.JSONObject;
 
 import hudson.Extension;
 import hudson.plugins.analysis.core.PluginDescriptor;
+import hudson.plugins.tasks.parser.MigrationProgress;
 import hudson.plugins.tasks.parser.Task;
+import hudson.plugins.tasks.parser.TaskCache;
+import hudson.plugins.tasks.parser.TaskFileCompressor;
 import hudson.plugins.tasks.parser.TaskScanner;
 import hudson.util.FormValidation;
 
@@ -29,12 +35,83 @@ public final class TasksDescriptor extends PluginDescriptor {
     static final String RESULT_URL = PluginDescriptor.createResultUrlName(PLUGIN_ID);
     /** Icon to use for the result and project action. */
     static final String ICON_URL = ICONS_PREFIX + "tasks-24x24.png";
+    /** Default memory budget of the cache of the tasks of recently used builds in megabytes. */
+    static final int DEFAULT_CACHE_SIZE = 256;
+    /** Number of bytes of a megabyte. */
+    static final long MEGABYTE = 1024 * 1024;
+
+    /** Memory budget of the cache of the tasks of recently used builds in megabytes. */
+    private int cacheSize = DEFAULT_CACHE_SIZE;
 
     /**
      * Creates a new instance of {@link TasksDescriptor}.
      */
     public TasksDescriptor() {
         super(TasksPublisher.class);
+
+        load();
+        applyCacheSize();
+    }
+
+    @Override
+    public boolean configure(final StaplerRequest req, final JSONObject formData) throws FormException {
+        req.bindJSON(this, formData);
+        save();
+        applyCacheSize();
+
+        return true;
+    }
+
+    private void applyCacheSize() {
+        TasksResult.getCache().setBudget(cacheSize * MEGABYTE);
+    }
+
+    /**
+     * Returns the memory budget of the cache of the tasks of recently used builds.
+     *
+     * @return the budget in megabytes, 0 disables the cache
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the memory budget of the cache of the tasks of recently used builds.
+     *
+     * @param cacheSize
+     *            the budget in megabytes, 0 disables the cache
+     */
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = Math.max(0, cacheSize);
+    }
+
+    /**
+     * Returns the cache of the tasks of recently used builds, used to show its statistics.
+     *
+     * @return the cache
+     */
+    public TaskCache<?> getCache() {
+        return TasksResult.getCache();
+    }
+
+    /**
+     * Returns a summary of the XML files that have been compressed by the {@link TasksCompressionWork}.
+     *
+     * @return the summary
+     */
+    public String getCompressionStatistics() {
+        return TaskFileCompressor.getStatistics();
+    }
+
+    /**
+     * Returns the progress of the migration of older builds by the {@link TasksMigrationWork}, including the
+     * estimated remaining time.
+     *
+     * @return the progress
+     */
+    public String getMigrationProgress() {
+        MigrationProgress progress = TasksMigrationWork.getProgress();
+        return progress == null ? StringUtils.EMPTY : progress.toString();
     }
 
     @Override
@@ -0,0 +1,196 @@
+package hudson.plugins.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Run;
+import hudson.plugins.analysis.core.BuildHistory;
+import hudson.plugins.analysis.core.ResultAction;
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.tasks.parser.Task;
+import hudson.plugins.tasks.parser.TaskFingerprints;
+import hudson.plugins.tasks.parser.TaskStore;
+
+/**
+ * History of the open tasks that finds the new and fixed tasks using the {@link TaskFingerprints} of the reference
+ * build. The fingerprints are stored next to the tasks of each build, so the tasks of the reference build are read
+ * only if there are fixed tasks. If the fingerprints are in the order of the stored tasks, then only the pages of
+ * the store that contain the fixed tasks are read. If the reference build has no fingerprints yet, then the
+ * fingerprints are created from its tasks and stored for the next builds.
+ * <p>
+ * The tasks are matched differently than by the {@link hudson.plugins.analysis.core.AnnotationDifferencer}: each
+ * task of the reference build matches at most one task of the current build, so duplicated tasks are counted, and
+ * a moved task is matched only by a task with the same context hash and tag, not by any task with the same context
+ * hash.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public class TasksHistory extends BuildHistory {
+    private static final Logger LOGGER = Logger.getLogger(TasksHistory.class.getName());
+
+    private TaskFingerprints referenceFingerprints;
+    private boolean isReferenceResolved;
+
+    /**
+     * Creates a new instance of {@link TasksHistory}.
+     *
+     * @param baseline
+     *            the build to start the history from
+     * @param type
+     *            type of the action that contains the build results
+     * @param usePreviousBuildAsReference
+     *            determines whether to always use the previous build as the reference build
+     * @param useStableBuildAsReference
+     *            determines whether only stable builds should be used as reference builds or not
+     */
+    public TasksHistory(final Run<?, ?> baseline, final Class<? extends ResultAction<TasksResult>> type,
+            final boolean usePreviousBuildAsReference, final boolean useStableBuildAsReference) {
+        super(baseline, type, usePreviousBuildAsReference, useStableBuildAsReference);
+    }
+
+    @Override
+    public Collection<FileAnnotation> getNewWarnings(final Set<FileAnnotation> annotations) {
+        TaskFingerprints reference = getReferenceFingerprints();
+        if (reference == null) {
+            return super.getNewWarnings(annotations);
+        }
+        List<FileAnnotation> tasks = new ArrayList<FileAnnotation>(annotations);
+        boolean[] isNew = TaskFingerprints.create(tasks).getUnmatched(reference);
+        List<FileAnnotation> newTasks = new ArrayList<FileAnnotation>();
+        for (int i = 0; i < isNew.length; i++) {
+            if (isNew[i]) {
+                newTasks.add(tasks.get(i));
+            }
+        }
+        return newTasks;
+    }
+
+    @Override
+    public Collection<FileAnnotation> getFixedWarnings(final Set<FileAnnotation> annotations) {
+        TaskFingerprints reference = getReferenceFingerprints();
+        if (reference == null) {
+            return super.getFixedWarnings(annotations);
+        }
+        TaskFingerprints current = TaskFingerprints.create(annotations);
+        if (reference.getNumberOfUnmatched(current) == 0) {
+            return Collections.emptyList();
+        }
+
+        boolean[] isFixed = reference.getUnmatched(current);
+        if (reference.isStoreOrder()) {
+            Collection<FileAnnotation> fixedTasks = readFixedTasks(reference, isFixed);
+            if (fixedTasks != null) {
+                return fixedTasks;
+            }
+        }
+
+        List<FileAnnotation> tasks = new ArrayList<FileAnnotation>(getReferenceAnnotations().getAnnotations());
+        isFixed = TaskFingerprints.create(tasks).getUnmatched(current);
+        List<FileAnnotation> fixedTasks = new ArrayList<FileAnnotation>();
+        for (int i = 0; i < isFixed.length; i++) {
+            if (isFixed[i]) {
+                fixedTasks.add(tasks.get(i));
+            }
+        }
+        return fixedTasks;
+    }
+
+    /**
+     * Reads the fixed tasks from the store of the reference build. The tasks are read only if the store still
+     * contains the tasks of the fingerprints, i.e. if the fingerprints of the read tasks are the selected ones.
+     *
+     * @param reference
+     *            the fingerprints of the reference build, in the order of the store
+     * @param isFixed
+     *            for each task of the store whether it is fixed
+     * @return the fixed tasks, or {@code null} if they could not be read from the store
+     */
+    private Collection<FileAnnotation> readFixedTasks(final TaskFingerprints reference, final boolean[] isFixed) {
+        File file = new File(getReferenceBuild().getRootDir(), TasksResult.TASKS_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            List<Task> fixedTasks = TaskStore.read(file, toRanges(isFixed));
+            if (TaskFingerprints.create(fixedTasks).hasSameFingerprints(reference.select(isFixed))) {
+                return new ArrayList<FileAnnotation>(fixedTasks);
+            }
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.FINE, "Failed to read the fixed tasks of " + file, exception);
+        }
+        catch (IllegalArgumentException exception) {
+            LOGGER.log(Level.FINE, "Invalid ranges for " + file, exception);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the ranges of the selected tasks as pairs of start (inclusive) and end (exclusive) positions.
+     *
+     * @param selected
+     *            for each task whether it is selected
+     * @return the sorted ranges
+     */
+    private static int[] toRanges(final boolean[] selected) {
+        List<Integer> ranges = new ArrayList<Integer>();
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i] && (i == 0 || !selected[i - 1])) {
+                ranges.add(i);
+            }
+            if (selected[i] && (i == selected.length - 1 || !selected[i + 1])) {
+                ranges.add(i + 1);
+            }
+        }
+        int[] values = new int[ranges.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ranges.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the fingerprints of the tasks of the reference build. If the fingerprints have not been stored, then
+     * they are created from the tasks of the reference build and stored.
+     *
+     * @return the fingerprints, or {@code null} if there is no reference build
+     */
+    private synchronized TaskFingerprints getReferenceFingerprints() {
+        if (!isReferenceResolved) {
+            isReferenceResolved = true;
+            Run<?, ?> reference = getReferenceBuild();
+            if (reference != null) {
+                referenceFingerprints = readFingerprints(reference);
+            }
+        }
+        return referenceFingerprints;
+    }
+
+    private TaskFingerprints readFingerprints(final Run<?, ?> reference) {
+        File file = new File(reference.getRootDir(), TasksResult.FINGERPRINTS_FILE);
+        if (file.exists()) {
+            try {
+                return TaskFingerprints.load(file);
+            }
+            catch (IOException exception) {
+                LOGGER.log(Level.FINE, "Failed to load " + file + ", creating the fingerprints again", exception);
+            }
+        }
+        TaskFingerprints fingerprints = TaskFingerprints.create(getReferenceAnnotations().getAnnotations());
+        try {
+            fingerprints.save(file);
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.FINE, "Failed to store " + file, exception);
+        }
+        return fingerprints;
+    }
+}
@@ -0,0 +1,218 @@
+package hudson.plugins.tasks;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.plugins.tasks.parser.MigrationProgress;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Migrates the open tasks of older builds that are stored as XML into the binary format of the
+ * {@link hudson.plugins.tasks.parser.TaskStore} in the background. The jobs and their builds are visited in the order
+ * of their names, the last visited build is stored as checkpoint in the root folder of Jenkins so that the
+ * migration continues after a restart.
+ * <p>
+ * The migration runs with the lowest thread priority and pauses after each build for a multiple of the time the
+ * migration of the build took, so that reading and writing the files uses only a fraction of the CPU and I/O.
+ * While builds are running the pauses are longer.
+ * </p>
+ * <p>
+ * If the XML file of a build has been modified recently, then the run stops at this build without moving the
+ * checkpoint, so that the build is migrated by one of the next runs. The migration of a build and the compression
+ * by the {@link TasksCompressionWork} are serialized by the {@link TasksResult#MAINTENANCE_LOCK}.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+@Extension
+public class TasksMigrationWork extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(TasksMigrationWork.class.getName());
+
+    /** File of the checkpoint in the root folder of Jenkins. */
+    private static final String CHECKPOINT_FILE = TasksMigrationWork.class.getName() + ".properties";
+    /** Number of visited builds after which the checkpoint is written. */
+    private static final int CHECKPOINT_INTERVAL = 100;
+    /** Minimum age of the XML files to migrate, files of running builds are not touched. */
+    private static final long MINIMUM_AGE = TimeUnit.HOURS.toMillis(1);
+    /** Pause after each build relative to the time of the migration if no build is running. */
+    private static final int IDLE_PAUSE_FACTOR = 1;
+    /** Pause after each build relative to the time of the migration while builds are running. */
+    private static final int BUSY_PAUSE_FACTOR = 9;
+
+    private static MigrationProgress progress;
+
+    /**
+     * Returns the progress of the migration. The progress is loaded from the checkpoint if the migration has not
+     * been started since the start of the controller.
+     *
+     * @return the progress, or {@code null} if Jenkins is not available
+     */
+    static synchronized MigrationProgress getProgress() {
+        if (progress == null) {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return null;
+            }
+            File file = new File(jenkins.getRootDir(), CHECKPOINT_FILE);
+            try {
+                progress = MigrationProgress.load(file);
+            }
+            catch (IOException exception) {
+                LOGGER.log(Level.WARNING, "Failed to load the checkpoint " + file + ", starting with the first build",
+                        exception);
+                progress = new MigrationProgress(file);
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Creates a new instance of {@link TasksMigrationWork}.
+     */
+    public TasksMigrationWork() {
+        super("Open tasks migration");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return HOUR;
+    }
+
+    @Override
+    protected void execute(final TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        MigrationProgress migration = getProgress();
+        if (jenkins == null || migration == null || migration.isCompleted()) {
+            return;
+        }
+
+        List<Job<?, ?>> jobs = getJobs(jenkins);
+        int total = 0;
+        int visited = 0;
+        for (Job<?, ?> job : jobs) {
+            for (File build : getBuilds(job)) {
+                total++;
+                if (migration.isVisited(job.getFullName(), build.getName())) {
+                    visited++;
+                }
+            }
+        }
+        migration.start(total, visited);
+
+        Thread thread = Thread.currentThread();
+        int priority = thread.getPriority();
+        thread.setPriority(Thread.MIN_PRIORITY);
+        try {
+            migrate(jenkins, jobs, migration, listener);
+        }
+        finally {
+            thread.setPriority(priority);
+            migration.save();
+        }
+        listener.getLogger().println(migration);
+    }
+
+    private void migrate(final Jenkins jenkins, final List<Job<?, ?>> jobs, final MigrationProgress migration,
+            final TaskListener listener) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() - MINIMUM_AGE;
+        int count = 0;
+        for (Job<?, ?> job : jobs) {
+            String name = job.getFullName();
+            for (File build : getBuilds(job)) {
+                if (migration.isVisited(name, build.getName())) {
+                    continue;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                File xml = TasksResult.findXmlFile(build);
+                if (xml != null && xml.lastModified() >= deadline) {
+                    listener.getLogger().println("The open tasks of " + build
+                            + " have been written recently, continuing with the next run");
+                    return;
+                }
+                long start = System.nanoTime();
+                boolean isMigrated = false;
+                try {
+                    synchronized (TasksResult.MAINTENANCE_LOCK) {
+                        isMigrated = TasksResult.migrate(build);
+                    }
+                }
+                catch (IOException exception) {
+                    listener.error("Failed to migrate the open tasks of " + build + ": " + exception);
+                }
+                migration.visit(name, build.getName(), isMigrated);
+                if (++count % CHECKPOINT_INTERVAL == 0) {
+                    migration.save();
+                }
+                pause(jenkins, System.nanoTime() - start);
+            }
+        }
+        migration.complete();
+    }
+
+    /**
+     * Pauses for a multiple of the specified time, so that the migration uses only a fraction of the CPU and I/O.
+     */
+    private void pause(final Jenkins jenkins, final long elapsed) throws InterruptedException {
+        int factor = IDLE_PAUSE_FACTOR;
+        for (Computer computer : jenkins.getComputers()) {
+            if (computer.countBusy() > 0) {
+                factor = BUSY_PAUSE_FACTOR;
+                break;
+            }
+        }
+        TimeUnit.NANOSECONDS.sleep(elapsed * factor);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Job<?, ?>> getJobs(final Jenkins jenkins) {
+        List<Job<?, ?>> jobs = new ArrayList<Job<?, ?>>((List)jenkins.getAllItems(Job.class));
+        Collections.sort(jobs, new Comparator<Job<?, ?>>() {
+            @Override
+            public int compare(final Job<?, ?> first, final Job<?, ?> second) {
+                return first.getFullName().compareTo(second.getFullName());
+            }
+        });
+        return jobs;
+    }
+
+    /**
+     * Returns the folders of the builds of the specified job in the order of their names. Symbolic links to build
+     * folders are skipped, so that each build is visited only once.
+     */
+    private File[] getBuilds(final Job<?, ?> job) {
+        File[] builds = job.getBuildDir().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isDirectory() && !Files.isSymbolicLink(file.toPath());
+            }
+        });
+        if (builds == null) {
+            return new File[0];
+        }
+        Arrays.sort(builds, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                return first.getName().compareTo(second.getName());
+            }
+        });
+        return builds;
+    }
+}
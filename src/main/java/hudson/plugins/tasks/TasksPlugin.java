@@ -19,4 +19,9 @@ public class TasksPlugin extends Plugin {
             MavenInitialization.run(detailBuilder);
         }
     }
+
+    @Override
+    public void stop() throws Exception {
+        TasksResult.awaitStorage();
+    }
 }
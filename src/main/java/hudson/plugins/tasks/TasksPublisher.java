@@ -15,6 +15,8 @@ import hudson.model.Run;
 import hudson.plugins.analysis.core.BuildResult;
 import hudson.plugins.analysis.core.HealthAwarePublisher;
 import hudson.plugins.analysis.util.PluginLogger;
+import hudson.plugins.tasks.parser.ScanStatistics;
+import hudson.plugins.tasks.parser.ScanStatistics.Phase;
 import hudson.plugins.tasks.parser.TasksParserResult;
 import hudson.plugins.tasks.parser.WorkspaceScanner;
 
@@ -43,6 +45,24 @@ public class TasksPublisher extends HealthAwarePublisher {
     private String pattern;
     /** Ant file-set pattern of files to exclude from work. */
     private String excludePattern;
+    /** The number of threads that scan the files in parallel. */
+    private int numberOfThreads;
+    /** Determines whether the tasks of unchanged files should be reused from the previous scan. */
+    private boolean incremental;
+    /** Determines whether only the files of the SCM change sets since the reference build should be scanned. */
+    private boolean onlyChangedFiles;
+    /** Determines whether the tasks should be streamed from the agent while the workspace is scanned. */
+    private boolean streaming;
+    /** Maximum size of a file in kilobytes, larger files are skipped. */
+    private int maximumFileSize;
+    /** Maximum number of characters of a line that are matched, longer lines are truncated. */
+    private int maximumLineLength;
+    /** Time limit for scanning a single file in seconds. */
+    private int fileTimeLimit;
+    /** Time limit for scanning all files in seconds. */
+    private int scanTimeLimit;
+    /** Maximum number of tasks, the scan is stopped when this number is reached. */
+    private int maximumTasks;
     /** Plugin name */
     private static final String PLUGIN_NAME = "TASKS";
 
@@ -174,25 +194,228 @@ public class TasksPublisher extends HealthAwarePublisher {
         this.asRegexp = asRegexp;
     }
 
+    /**
+     * Returns the number of threads that scan the files in parallel.
+     *
+     * @return the number of threads, files are scanned sequentially if this value is less than 2
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @see {@link #getNumberOfThreads()}
+     */
+    @DataBoundSetter
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Returns whether the tasks of unchanged files should be reused from the previous scan.
+     *
+     * @return <code>true</code> if unchanged files should not be scanned again
+     */
+    public boolean getIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @see {@link #getIncremental()}
+     */
+    @DataBoundSetter
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns whether only the files of the SCM change sets since the reference build should be scanned. The tasks
+     * of all other files are carried over from the reference build.
+     *
+     * @return <code>true</code> if only changed files should be scanned
+     */
+    public boolean getOnlyChangedFiles() {
+        return onlyChangedFiles;
+    }
+
+    /**
+     * @see {@link #getOnlyChangedFiles()}
+     */
+    @DataBoundSetter
+    public void setOnlyChangedFiles(boolean onlyChangedFiles) {
+        this.onlyChangedFiles = onlyChangedFiles;
+    }
+
+    /**
+     * Returns whether the tasks should be streamed from the agent in batches while the workspace is scanned,
+     * instead of being transferred as part of the result.
+     *
+     * @return <code>true</code> if the tasks should be streamed
+     */
+    public boolean getStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @see {@link #getStreaming()}
+     */
+    @DataBoundSetter
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Returns the maximum size of a file in kilobytes. Larger files are skipped.
+     *
+     * @return the maximum size in kilobytes, 0 for no limit
+     */
+    public int getMaximumFileSize() {
+        return maximumFileSize;
+    }
+
+    /**
+     * @see {@link #getMaximumFileSize()}
+     */
+    @DataBoundSetter
+    public void setMaximumFileSize(int maximumFileSize) {
+        this.maximumFileSize = maximumFileSize;
+    }
+
+    /**
+     * Returns the maximum number of characters of a line that are matched. Longer lines are truncated.
+     *
+     * @return the maximum line length, 0 for no limit
+     */
+    public int getMaximumLineLength() {
+        return maximumLineLength;
+    }
+
+    /**
+     * @see {@link #getMaximumLineLength()}
+     */
+    @DataBoundSetter
+    public void setMaximumLineLength(int maximumLineLength) {
+        this.maximumLineLength = maximumLineLength;
+    }
+
+    /**
+     * Returns the time limit for scanning a single file. If the limit is exceeded, then only the tasks found so far are reported for this file.
+     *
+     * @return the time limit in seconds, 0 for no limit
+     */
+    public int getFileTimeLimit() {
+        return fileTimeLimit;
+    }
+
+    /**
+     * @see {@link #getFileTimeLimit()}
+     */
+    @DataBoundSetter
+    public void setFileTimeLimit(int fileTimeLimit) {
+        this.fileTimeLimit = fileTimeLimit;
+    }
+
+    /**
+     * Returns the time limit for scanning all files. If the limit is exceeded, then the remaining files are not scanned.
+     *
+     * @return the time limit in seconds, 0 for no limit
+     */
+    public int getScanTimeLimit() {
+        return scanTimeLimit;
+    }
+
+    /**
+     * @see {@link #getScanTimeLimit()}
+     */
+    @DataBoundSetter
+    public void setScanTimeLimit(int scanTimeLimit) {
+        this.scanTimeLimit = scanTimeLimit;
+    }
+
+    /**
+     * Returns the maximum number of tasks. If the limit is reached, then the remaining files are not scanned.
+     *
+     * @return the maximum number of tasks, 0 for no limit
+     */
+    public int getMaximumTasks() {
+        return maximumTasks;
+    }
+
+    /**
+     * @see {@link #getMaximumTasks()}
+     */
+    @DataBoundSetter
+    public void setMaximumTasks(int maximumTasks) {
+        this.maximumTasks = maximumTasks;
+    }
+
     @Override
     protected BuildResult perform(final Run<?, ?> build, FilePath workspace, final PluginLogger logger) throws InterruptedException, IOException {
         TasksParserResult project;
         WorkspaceScanner scanner = new WorkspaceScanner(StringUtils.defaultIfEmpty(getPattern(), DEFAULT_PATTERN),
                 getExcludePattern(), getDefaultEncoding(), high, normal, low, ignoreCase, shouldDetectModules(), asRegexp);
-        project = workspace.act(scanner);
+        scanner.setNumberOfThreads(numberOfThreads);
+        scanner.setIncremental(incremental);
+        scanner.setMaximumFileSize(maximumFileSize);
+        scanner.setMaximumLineLength(maximumLineLength);
+        scanner.setFileTimeLimit(fileTimeLimit);
+        scanner.setScanTimeLimit(scanTimeLimit);
+        scanner.setMaximumTasks(maximumTasks);
+
+        String configuration = createScanConfiguration(workspace);
+        ChangeSetScope scope = null;
+        if (onlyChangedFiles) {
+            scope = ChangeSetScope.create(build, workspace, configuration, logger);
+            if (scope != null) {
+                scanner.setFiles(scope.getChangedFiles());
+            }
+        }
+        long start = System.nanoTime();
+        if (streaming) {
+            project = scanner.scanStreaming(workspace);
+        }
+        else {
+            project = workspace.act(scanner);
+        }
+        ScanStatistics statistics = project.getStatistics();
+        statistics.stopRemoteCall(start);
 
         logger.logLines(project.getLogMessages());
+        if (scope != null) {
+            start = System.nanoTime();
+            int carriedOver = scope.carryOver(project);
+            statistics.stop(Phase.CARRY_OVER, start).addTasks(carriedOver);
+            logger.log(String.format("Carried over %d open tasks of unchanged files from %s.", carriedOver,
+                    scope.getReferenceBuild().getDisplayName()));
+        }
         logger.log(String.format("Found %d open tasks.", project.getNumberOfAnnotations()));
 
+        start = System.nanoTime();
         blame(project.getAnnotations(), build, workspace);
+        statistics.stop(Phase.BLAME, start).addTasks(project.getNumberOfAnnotations());
 
+        start = System.nanoTime();
         TasksResult result = new TasksResult(build, getDefaultEncoding(), project,
                 usePreviousBuildAsReference(), useOnlyStableBuildsAsReference(), high, normal, low);
+        statistics.stop(Phase.RESULT, start).addTasks(project.getNumberOfAnnotations());
+        result.setScanConfiguration(configuration);
+        result.setStatistics(statistics);
+        logger.log("Scan statistics:");
+        for (String line : statistics.getSummary()) {
+            logger.log("  " + line);
+        }
         build.addAction(new TasksResultAction(build, this, result));
 
         return result;
     }
 
+    private String createScanConfiguration(final FilePath workspace) {
+        return StringUtils.join(new Object[] {workspace.getRemote(),
+                StringUtils.defaultIfEmpty(getPattern(), DEFAULT_PATTERN), getExcludePattern(), getDefaultEncoding(),
+                high, normal, low, ignoreCase, asRegexp, shouldDetectModules(),
+                maximumFileSize, maximumLineLength, fileTimeLimit, scanTimeLimit, maximumTasks}, '\n');
+    }
+
     @Override
     public TasksDescriptor getDescriptor() {
         return (TasksDescriptor)super.getDescriptor();
@@ -7,6 +7,7 @@ import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.project.MavenProject;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -48,6 +49,20 @@ public class TasksReporter extends HealthAwareReporter<TasksResult> {
     private final boolean ignoreCase;
     /** If the identifiers should be treated as regular expression. */
     private final boolean asRegexp;
+    /** The number of threads that scan the files in parallel. */
+    private int numberOfThreads;
+    /** Determines whether the tasks of unchanged files should be reused from the previous scan. */
+    private boolean incremental;
+    /** Maximum size of a file in kilobytes, larger files are skipped. */
+    private int maximumFileSize;
+    /** Maximum number of characters of a line that are matched, longer lines are truncated. */
+    private int maximumLineLength;
+    /** Time limit for scanning a single file in seconds. */
+    private int fileTimeLimit;
+    /** Time limit for scanning all files in seconds. */
+    private int scanTimeLimit;
+    /** Maximum number of tasks, the scan is stopped when this number is reached. */
+    private int maximumTasks;
 
     /**
      * Creates a new instance of <code>TasksReporter</code>.
@@ -212,6 +227,146 @@ public class TasksReporter extends HealthAwareReporter<TasksResult> {
         return asRegexp;
     }
 
+    /**
+     * Returns the number of threads that scan the files in parallel.
+     *
+     * @return the number of threads, files are scanned sequentially if this value is less than 2
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * Sets the number of threads that scan the files in parallel.
+     *
+     * @param numberOfThreads
+     *            the number of threads, files are scanned sequentially if this value is less than 2
+     */
+    @DataBoundSetter
+    public void setNumberOfThreads(final int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Returns whether the tasks of unchanged files should be reused from the previous scan.
+     *
+     * @return <code>true</code> if unchanged files should not be scanned again
+     */
+    public boolean getIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Determines whether the tasks of unchanged files should be reused from the previous scan.
+     *
+     * @param incremental
+     *            <code>true</code> if unchanged files should not be scanned again
+     */
+    @DataBoundSetter
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns the maximum size of a file in kilobytes. Larger files are skipped.
+     *
+     * @return the maximum size in kilobytes, 0 for no limit
+     */
+    public int getMaximumFileSize() {
+        return maximumFileSize;
+    }
+
+    /**
+     * Sets the maximum size of a file in kilobytes. Larger files are skipped.
+     *
+     * @param maximumFileSize
+     *            the maximum size in kilobytes, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setMaximumFileSize(final int maximumFileSize) {
+        this.maximumFileSize = maximumFileSize;
+    }
+
+    /**
+     * Returns the maximum number of characters of a line that are matched. Longer lines are truncated.
+     *
+     * @return the maximum line length, 0 for no limit
+     */
+    public int getMaximumLineLength() {
+        return maximumLineLength;
+    }
+
+    /**
+     * Sets the maximum number of characters of a line that are matched. Longer lines are truncated.
+     *
+     * @param maximumLineLength
+     *            the maximum line length, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setMaximumLineLength(final int maximumLineLength) {
+        this.maximumLineLength = maximumLineLength;
+    }
+
+    /**
+     * Returns the time limit for scanning a single file. If the limit is exceeded, then only the tasks found so far are reported for this file.
+     *
+     * @return the time limit in seconds, 0 for no limit
+     */
+    public int getFileTimeLimit() {
+        return fileTimeLimit;
+    }
+
+    /**
+     * Sets the time limit for scanning a single file. If the limit is exceeded, then only the tasks found so far are reported for this file.
+     *
+     * @param fileTimeLimit
+     *            the time limit in seconds, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setFileTimeLimit(final int fileTimeLimit) {
+        this.fileTimeLimit = fileTimeLimit;
+    }
+
+    /**
+     * Returns the time limit for scanning all files. If the limit is exceeded, then the remaining files are not scanned.
+     *
+     * @return the time limit in seconds, 0 for no limit
+     */
+    public int getScanTimeLimit() {
+        return scanTimeLimit;
+    }
+
+    /**
+     * Sets the time limit for scanning all files. If the limit is exceeded, then the remaining files are not scanned.
+     *
+     * @param scanTimeLimit
+     *            the time limit in seconds, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setScanTimeLimit(final int scanTimeLimit) {
+        this.scanTimeLimit = scanTimeLimit;
+    }
+
+    /**
+     * Returns the maximum number of tasks. If the limit is reached, then the remaining files are not scanned.
+     *
+     * @return the maximum number of tasks, 0 for no limit
+     */
+    public int getMaximumTasks() {
+        return maximumTasks;
+    }
+
+    /**
+     * Sets the maximum number of tasks. If the limit is reached, then the remaining files are not scanned.
+     *
+     * @param maximumTasks
+     *            the maximum number of tasks, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setMaximumTasks(final int maximumTasks) {
+        this.maximumTasks = maximumTasks;
+    }
+
     @Override
     protected boolean acceptGoal(final String goal) {
         return true;
@@ -226,10 +381,24 @@ public class TasksReporter extends HealthAwareReporter<TasksResult> {
                 StringUtils.defaultIfEmpty(pattern, DEFAULT_PATTERN),
                 excludePattern, getDefaultEncoding(), high, normal, low, ignoreCase, pom.getName(),
                 pom.getModules(), asRegexp);
+        workspaceScanner.setNumberOfThreads(numberOfThreads);
+        workspaceScanner.setIncremental(incremental);
+        workspaceScanner.setMaximumFileSize(maximumFileSize);
+        workspaceScanner.setMaximumLineLength(maximumLineLength);
+        workspaceScanner.setFileTimeLimit(fileTimeLimit);
+        workspaceScanner.setScanTimeLimit(scanTimeLimit);
+        workspaceScanner.setMaximumTasks(maximumTasks);
+        long start = System.nanoTime();
         TasksParserResult project = basedir.act(workspaceScanner);
+        project.getStatistics().stopRemoteCall(start);
 
-        project.setLog(project.getLogMessages()
-                + String.format("Found %d open tasks.%n", project.getNumberOfAnnotations()));
+        StringBuilder log = new StringBuilder(project.getLogMessages());
+        log.append(String.format("Found %d open tasks.%n", project.getNumberOfAnnotations()));
+        log.append(String.format("Scan statistics:%n"));
+        for (String line : project.getStatistics().getSummary()) {
+            log.append(String.format("  %s%n", line));
+        }
+        project.setLog(log.toString());
 
         return project;
     }
@@ -237,8 +406,11 @@ public class TasksReporter extends HealthAwareReporter<TasksResult> {
     @Override
     @SuppressFBWarnings("BC")
     protected TasksResult createResult(final MavenBuild build, final ParserResult project) {
-        return new TasksReporterResult(build, getDefaultEncoding(), (TasksParserResult)project,
+        TasksParserResult tasks = (TasksParserResult)project;
+        TasksReporterResult result = new TasksReporterResult(build, getDefaultEncoding(), tasks,
                 usePreviousBuildAsReference(), useOnlyStableBuildsAsReference(), high, normal, low);
+        result.setStatistics(tasks.getStatistics());
+        return result;
     }
 
     @Override
@@ -1,10 +1,27 @@
 package hudson.plugins.tasks; // NOPMD
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -13,24 +30,79 @@ import hudson.plugins.analysis.core.BuildHistory;
 import hudson.plugins.analysis.core.BuildResult;
 import hudson.plugins.analysis.core.ResultAction;
 import hudson.plugins.analysis.util.model.AnnotationContainer;
+import hudson.plugins.analysis.util.model.AnnotationStream;
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.analysis.util.model.JavaProject;
 import hudson.plugins.analysis.util.model.Priority;
+import hudson.plugins.analysis.views.DetailFactory;
+import hudson.plugins.tasks.parser.ScanStatistics;
+import hudson.plugins.tasks.parser.StorageQueue;
+import hudson.plugins.tasks.parser.TaskCache;
+import hudson.plugins.tasks.parser.TaskDelta;
+import hudson.plugins.tasks.parser.TaskFileCompressor;
+import hudson.plugins.tasks.parser.TaskFingerprints;
 import hudson.plugins.tasks.parser.Task;
+import hudson.plugins.tasks.parser.TaskIndex;
+import hudson.plugins.tasks.parser.TaskIndex.Dimension;
+import hudson.plugins.tasks.parser.TaskStore;
+import hudson.plugins.tasks.parser.TaskTotals;
 import hudson.plugins.tasks.parser.TasksParserResult;
 
 /**
  * Represents the results of the task scanner. One instance of this class is persisted for
- * each build via an XML file.
+ * each build via an XML file. The tasks of the build are stored in the binary format of {@link TaskStore}, or as
+ * {@link TaskDelta difference} to the tasks of a previous build. The tasks of older builds are read from the XML
+ * file of the annotations.
  *
  * @author Ulli Hafner
  */
 public class TasksResult extends BuildResult {
     private static final long serialVersionUID = -344808345805935004L;
+    private static final Logger LOGGER = Logger.getLogger(TasksResult.class.getName());
+
+    /** Name of the file with the tasks of the build, see {@link TaskStore}. */
+    static final String TASKS_FILE = "open-tasks.bin";
+    /** Name of the XML file with the tasks of older builds. */
+    static final String XML_FILE = "open-tasks.xml";
+    /** Name of the file with the difference of the tasks of the build to a keyframe, see {@link TaskDelta}. */
+    static final String DELTA_FILE = "open-tasks.delta";
+    /** File with the fingerprints of the tasks, used to find the new and fixed tasks of later builds. */
+    static final String FINGERPRINTS_FILE = "open-tasks.hashes";
+    /** Number of builds after which the tasks are stored completely again rather than as difference. */
+    static final int KEYFRAME_INTERVAL = 20;
+    /** The tasks of recently used results, the budget is configured in the {@link TasksDescriptor}. */
+    private static final TaskCache<JavaProject> CACHE = new TaskCache<JavaProject>(
+            TasksDescriptor.DEFAULT_CACHE_SIZE * TasksDescriptor.MEGABYTE);
+    /** Writes the tasks of new builds in the background, the tasks are kept in memory until they are written. */
+    private static final StorageQueue<JavaProject> STORAGE = new StorageQueue<JavaProject>(2, 16);
+    /** Maximum time to wait for all pending writes on shutdown. */
+    private static final long STORAGE_TIMEOUT = 60000;
+    /** File extension of C# files that use namespaces rather than packages. */
+    private static final String CSHARP = "cs";
+    /** Element name of the tasks in the XML files. */
+    private static final String TASK_ALIAS = "task";
+    /** Serializes the migration and the compression of the files of a build, see {@link TasksMigrationWork}. */
+    static final Object MAINTENANCE_LOCK = new Object();
 
     private final String highTags;
     private final String normalTags;
     private final String lowTags;
 
     private final int numberOfFiles;
+    /** The configuration of the scanner that created this result, {@code null} for older results. */
+    private String scanConfiguration;
+    /** The statistics of the phases of the scan, {@code null} for older results. */
+    private ScanStatistics statistics;
+    /** The reason why the scan is incomplete, {@code null} for complete and older results. */
+    private String incompleteReason;
+    /** The number of tasks by priority, tag, module and package, {@code null} for older results. */
+    private TaskTotals totals;
+    /**
+     * Determines whether the tasks have been handed to the {@link #STORAGE} but have not been written yet. The flag
+     * is saved with the build, so that a write that has been lost, e.g. since Jenkins has been stopped abruptly, is
+     * detected when the tasks are loaded, see {@link #getContainer()}. Guarded by this result.
+     */
+    private boolean isWritePending;
 
     /**
      * Creates a new instance of {@link TasksResult}.
@@ -89,7 +161,7 @@ public class TasksResult extends BuildResult {
             final String highTags, final String normalTags, final String lowTags,
             final Class<? extends ResultAction<TasksResult>> actionType) {
         // CHECKSTYLE:ON
-        super(build, new BuildHistory(build, actionType, usePreviousBuildAsReference, useStableBuildAsReference),
+        super(build, new TasksHistory(build, actionType, usePreviousBuildAsReference, useStableBuildAsReference),
                 result, defaultEncoding);
 
         this.highTags = highTags;
@@ -97,8 +169,472 @@ public class TasksResult extends BuildResult {
         this.lowTags = lowTags;
 
         numberOfFiles = result.getNumberOfScannedFiles();
+        if (!result.isComplete()) {
+            incompleteReason = StringUtils.defaultIfEmpty(result.getIncompleteReason(),
+                    result.getSkippedFiles().size() + " files have been skipped or scanned partially");
+        }
+        totals = new TaskTotals(result.getAnnotations(), getNumberOfNewWarnings(), getNumberOfFixedWarnings());
 
-        serializeAnnotations(result.getAnnotations());
+        isWritePending = true;
+        storeAnnotations(result.getAnnotations());
+    }
+
+    /**
+     * Creates the history of this result after it has been loaded, so that the new and fixed tasks are found using
+     * the {@link TasksHistory} like when the result has been created.
+     *
+     * @param build
+     *            the build of this result
+     * @return the history
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected BuildHistory createHistory(final Run<?, ?> build) {
+        return new TasksHistory(build, (Class<? extends ResultAction<TasksResult>>)getResultActionType(),
+                usePreviousBuildAsStable(), useOnlyStableBuildsAsReference());
+    }
+
+    /**
+     * Stores the tasks in the background. Until the tasks have been written, {@link #getContainer()} returns the
+     * tasks in memory.
+     *
+     * @param annotations
+     *            the tasks to store
+     */
+    private void storeAnnotations(final Collection<FileAnnotation> annotations) {
+        final JavaProject project = new JavaProject();
+        project.addAnnotations(annotations);
+        attachLabelProvider(project);
+        STORAGE.submit(getStorageKey(), project, new Runnable() {
+            @Override
+            public void run() {
+                writeAnnotations(annotations, project);
+            }
+        });
+    }
+
+    private String getStorageKey() {
+        return getOwner().getRootDir().getAbsolutePath();
+    }
+
+    /**
+     * Waits until the tasks of all builds have been written. If the writes do not complete in time, then the tasks
+     * that are still waiting for a thread are written by the calling thread, and the builds whose tasks are still
+     * being written are logged.
+     *
+     * @throws InterruptedException
+     *             if the thread has been interrupted while waiting
+     */
+    static void awaitStorage() throws InterruptedException {
+        if (!STORAGE.awaitAll(STORAGE_TIMEOUT)) {
+            STORAGE.writeQueued();
+            Set<String> builds = STORAGE.getPendingKeys();
+            if (!builds.isEmpty()) {
+                LOGGER.warning("The open tasks of the following builds have not been written: " + builds);
+            }
+        }
+    }
+
+    /**
+     * Writes the tasks in the binary format, as difference to the keyframe of the previous build if possible. If
+     * the tasks can't be written in this format, then the tasks are serialized as XML. A build may have several
+     * results, e.g. the aggregated result of a Maven build, so the files of the other formats are deleted after
+     * the tasks have been written: the tasks of the last write are those read by {@link #getContainer()}.
+     *
+     * @param annotations
+     *            the tasks to write
+     * @param project
+     *            the tasks in memory, added to the cache when the tasks have been written
+     */
+    private void writeAnnotations(final Collection<FileAnnotation> annotations, final JavaProject project) {
+        long start = System.nanoTime();
+        boolean isKeyframe = false;
+        try {
+            File file = getDeltaFile();
+            if (storeDelta(annotations)) {
+                deleteTasksFile();
+            }
+            else {
+                file = getTasksFile();
+                TaskStore.write(annotations, file);
+                isKeyframe = true;
+                deleteDeltaFile();
+            }
+            CACHE.put(file.getAbsolutePath(), project, TaskCache.estimateSize(annotations));
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Failed to store the tasks of " + getOwner() + ", using XML instead", exception);
+            storeXml(annotations);
+        }
+        catch (RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Failed to store the tasks of " + getOwner() + ", using XML instead", exception);
+            storeXml(annotations);
+        }
+        storeFingerprints(getOwner().getRootDir(), annotations, isKeyframe);
+        synchronized (this) {
+            isWritePending = false;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Wrote %d open tasks of %s in %d ms", annotations.size(), getOwner(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+    }
+
+    private void storeXml(final Collection<FileAnnotation> annotations) {
+        serializeAnnotations(annotations);
+        deleteTasksFile();
+        deleteDeltaFile();
+        CACHE.remove(new File(getOwner().getRootDir(), XML_FILE).getAbsolutePath());
+    }
+
+    private void deleteTasksFile() {
+        File file = getTasksFile();
+        TaskStore.delete(file);
+        CACHE.remove(file.getAbsolutePath());
+    }
+
+    private void deleteDeltaFile() {
+        File file = getDeltaFile();
+        TaskDelta.delete(file);
+        CACHE.remove(file.getAbsolutePath());
+    }
+
+    /**
+     * Stores the fingerprints of the tasks, so that later builds can find their new and fixed tasks without reading
+     * these tasks. If the fingerprints can't be stored, then they are created again by the {@link TasksHistory} of
+     * the next build.
+     *
+     * @param root
+     *            the folder of the build
+     * @param annotations
+     *            the tasks of the build
+     * @param isKeyframe
+     *            determines whether the tasks have been stored in the {@link #TASKS_FILE}, in this case the
+     *            fingerprints are stored in the order of this file
+     */
+    private static void storeFingerprints(final File root, final Collection<? extends FileAnnotation> annotations,
+            final boolean isKeyframe) {
+        File file = new File(root, FINGERPRINTS_FILE);
+        try {
+            if (isKeyframe) {
+                TaskFingerprints.createInStoreOrder(annotations).save(file);
+            }
+            else {
+                TaskFingerprints.create(annotations).save(file);
+            }
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.FINE, "Failed to store " + file, exception);
+        }
+    }
+
+    /**
+     * Stores the tasks as difference to the keyframe of the previous build. A new keyframe is required if there is
+     * no previous build with tasks in the binary format, if the tasks of the previous build have not been written
+     * yet, if the keyframe is {@link #KEYFRAME_INTERVAL} builds old, or if the difference is too large. The write
+     * does not wait for the previous build, since it may run in the thread of the publisher if the
+     * {@link #STORAGE} is busy.
+     *
+     * @param annotations
+     *            the tasks to store
+     * @return {@code true} if the difference has been stored, {@code false} if a keyframe needs to be stored
+     */
+    private boolean storeDelta(final Collection<FileAnnotation> annotations) {
+        Run<?, ?> previous = getOwner().getPreviousBuild();
+        if (previous == null) {
+            return false;
+        }
+        if (STORAGE.getPending(previous.getRootDir().getAbsolutePath()) != null) {
+            return false;
+        }
+        try {
+            File keyframe = new File(previous.getRootDir(), TASKS_FILE);
+            int distance = 1;
+            if (!keyframe.exists()) {
+                File delta = new File(previous.getRootDir(), DELTA_FILE);
+                if (!delta.exists()) {
+                    return false;
+                }
+                keyframe = TaskDelta.getKeyframeFile(delta);
+                distance = TaskDelta.getDistance(delta) + 1;
+            }
+            return distance < KEYFRAME_INTERVAL && TaskDelta.write(annotations, keyframe, distance, getDeltaFile());
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.FINE, "Failed to store the tasks of " + getOwner() + " as difference", exception);
+            return false;
+        }
+    }
+
+    private File getTasksFile() {
+        return new File(getOwner().getRootDir(), TASKS_FILE);
+    }
+
+    private File getDeltaFile() {
+        return new File(getOwner().getRootDir(), DELTA_FILE);
+    }
+
+    /**
+     * Returns the cache of the tasks of recently used results.
+     *
+     * @return the cache
+     */
+    static TaskCache<JavaProject> getCache() {
+        return CACHE;
+    }
+
+    @Override
+    public synchronized JavaProject getContainer() {
+        JavaProject pending = STORAGE.getPending(getStorageKey());
+        if (pending != null) {
+            return pending;
+        }
+        File file = getStorageFile();
+        if (isWritePending) {
+            if (!file.exists()) {
+                return recoverLostTasks();
+            }
+            isWritePending = false;
+        }
+        String key = file.getAbsolutePath();
+        JavaProject project = CACHE.get(key);
+        if (project == null) {
+            if (XML_FILE.equals(file.getName())) {
+                project = super.getContainer();
+            }
+            else {
+                project = new JavaProject();
+                try {
+                    project.addAnnotations(readAnnotations(file));
+                }
+                catch (IOException exception) {
+                    LOGGER.log(Level.WARNING, "Failed to load " + file, exception);
+                    attachLabelProvider(project);
+                    return project; // not cached, so that the tasks are read again on the next access
+                }
+                attachLabelProvider(project);
+            }
+            CACHE.put(key, project, TaskCache.estimateSize(project.getAnnotations()));
+        }
+        return project;
+    }
+
+    /**
+     * Handles a write of the tasks that has been lost, i.e. the tasks have not been written before Jenkins has been
+     * stopped. The tasks can't be restored, so an empty XML file is written as fallback and the result is marked as
+     * incomplete, so that it is not used as reference for the tasks of unchanged files.
+     *
+     * @return the tasks, an empty container
+     */
+    private JavaProject recoverLostTasks() {
+        LOGGER.warning("The open tasks of " + getOwner() + " have not been written before Jenkins has been stopped");
+        isWritePending = false;
+        incompleteReason = "The open tasks have been lost since Jenkins has been stopped before they were written";
+        serializeAnnotations(Collections.<FileAnnotation>emptyList());
+        try {
+            getOwner().save();
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Failed to save " + getOwner(), exception);
+        }
+        JavaProject project = new JavaProject();
+        attachLabelProvider(project);
+        return project;
+    }
+
+    /**
+     * Returns the file with the tasks of this result. The tasks of older builds are stored as XML, possibly
+     * compressed by the {@link TasksCompressionWork}, until they are migrated by the {@link TasksMigrationWork}.
+     *
+     * @return the file with the tasks
+     */
+    private File getStorageFile() {
+        File root = getOwner().getRootDir();
+        for (String name : new String[] {TASKS_FILE, DELTA_FILE, XML_FILE}) {
+            File file = new File(root, name);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        File compressed = TaskFileCompressor.getCompressedFile(new File(root, XML_FILE));
+        if (compressed.exists()) {
+            return compressed;
+        }
+        return new File(root, XML_FILE);
+    }
+
+    private Collection<? extends FileAnnotation> readAnnotations(final File file) throws IOException {
+        if (TASKS_FILE.equals(file.getName())) {
+            return TaskStore.read(file);
+        }
+        if (DELTA_FILE.equals(file.getName())) {
+            return TaskDelta.read(file);
+        }
+        return readXml(file);
+    }
+
+    /**
+     * Returns whether the tasks of the specified build folder are stored in the binary format, either completely or
+     * as difference to a keyframe.
+     *
+     * @param root
+     *            the folder of the build
+     * @return {@code true} if the tasks are stored in the binary format
+     */
+    static boolean isBinary(final File root) {
+        return new File(root, TASKS_FILE).exists() || new File(root, DELTA_FILE).exists();
+    }
+
+    /**
+     * Returns the XML file with the tasks of the specified build folder, possibly compressed.
+     *
+     * @param root
+     *            the folder of the build
+     * @return the XML file, or {@code null} if there is no XML file
+     */
+    static File findXmlFile(final File root) {
+        File xml = new File(root, XML_FILE);
+        if (xml.exists()) {
+            return xml;
+        }
+        File compressed = TaskFileCompressor.getCompressedFile(xml);
+        if (compressed.exists()) {
+            return compressed;
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites the tasks of the specified build folder that are stored as XML, possibly compressed, into the
+     * binary format of the {@link TaskStore}. The XML file and its compressed copy are deleted when the tasks have
+     * been written. The caller needs to hold the {@link #MAINTENANCE_LOCK}, so that the XML file is not compressed
+     * concurrently.
+     *
+     * @param root
+     *            the folder of the build
+     * @return {@code true} if the tasks have been migrated, {@code false} if there are no tasks stored as XML
+     * @throws IOException
+     *             if the tasks could not be read or written
+     */
+    static boolean migrate(final File root) throws IOException {
+        if (isBinary(root)) {
+            return false;
+        }
+        File xml = findXmlFile(root);
+        if (xml == null) {
+            return false;
+        }
+        File tasks = new File(root, TASKS_FILE);
+        Collection<FileAnnotation> annotations = readXml(xml);
+        TaskStore.write(annotations, tasks);
+        storeFingerprints(root, annotations, true);
+        CACHE.remove(xml.getAbsolutePath());
+        File plain = new File(root, XML_FILE);
+        for (File file : new File[] {plain, TaskFileCompressor.getCompressedFile(plain)}) {
+            if (file.exists() && !file.delete()) {
+                LOGGER.warning("Failed to delete " + file + " after the migration to " + tasks);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the tasks of an XML file. Compressed files are decompressed while they are parsed.
+     *
+     * @param file
+     *            the XML file, possibly compressed
+     * @return the tasks
+     * @throws IOException
+     *             if the file could not be read
+     */
+    private static Collection<FileAnnotation> readXml(final File file) throws IOException {
+        XStream xstream = new AnnotationStream();
+        xstream.alias(TASK_ALIAS, Task.class);
+        InputStream input = file.getName().endsWith(TaskFileCompressor.SUFFIX)
+                ? TaskFileCompressor.open(file) : new BufferedInputStream(new FileInputStream(file));
+        try {
+            return Arrays.asList((FileAnnotation[])xstream.fromXML(input));
+        }
+        catch (XStreamException exception) {
+            throw new IOException("Malformed tasks in " + file, exception);
+        }
+        catch (ClassCastException exception) {
+            throw new IOException("Malformed tasks in " + file, exception);
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Returns the details of the specified module, package, file, priority or tag. If the tasks of this build are
+     * not in memory, then only the tasks of the selected element are read using the {@link TaskIndex} of the
+     * {@link #TASKS_FILE}. All other links are resolved by the detail factory using all tasks.
+     *
+     * @param link
+     *            the link to identify the sub page to show
+     * @param request
+     *            Stapler request
+     * @param response
+     *            Stapler response
+     * @return the dynamic result of this result detail
+     */
+    @Override
+    public Object getDynamic(final String link, final StaplerRequest request, final StaplerResponse response) {
+        File file = getTasksFile();
+        Dimension dimension = getDimension(link);
+        synchronized (this) {
+            if (dimension == null || !file.exists() || CACHE.contains(file.getAbsolutePath())) {
+                return super.getDynamic(link, request, response);
+            }
+        }
+        try {
+            TaskIndex index = TaskIndex.load(file);
+            String value;
+            if (dimension == Dimension.PRIORITY) {
+                value = link.toUpperCase(Locale.ENGLISH);
+            }
+            else {
+                value = index.findValue(dimension, Integer.parseInt(StringUtils.substringAfter(link, ".")));
+            }
+            if (value == null) {
+                return super.getDynamic(link, request, response);
+            }
+            JavaProject selection = new JavaProject();
+            selection.addAnnotations(TaskStore.read(file, index.getRanges(dimension, value)));
+            attachLabelProvider(selection);
+            return DetailFactory.create(getResultActionType()).createDetails(link, getOwner(), selection,
+                    getDefaultEncoding(), getDisplayName());
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Failed to load the index of " + file, exception);
+            return super.getDynamic(link, request, response);
+        }
+        catch (NumberFormatException exception) {
+            return super.getDynamic(link, request, response); // not a link to an element of the tasks
+        }
+    }
+
+    private Dimension getDimension(final String link) {
+        for (Priority priority : Priority.values()) {
+            if (priority.name().equalsIgnoreCase(link)) {
+                return Dimension.PRIORITY;
+            }
+        }
+        String prefix = StringUtils.substringBefore(link, ".");
+        if ("module".equals(prefix)) {
+            return Dimension.MODULE;
+        }
+        if ("package".equals(prefix)) {
+            return Dimension.PACKAGE;
+        }
+        if ("file".equals(prefix)) {
+            return Dimension.FILE;
+        }
+        if ("type".equals(prefix)) {
+            return Dimension.TYPE;
+        }
+        return null;
     }
 
     @Override
@@ -108,7 +644,7 @@ public class TasksResult extends BuildResult {
 
     @Override
     protected void configure(final XStream xstream) {
-        xstream.alias("task", Task.class);
+        xstream.alias(TASK_ALIAS, Task.class);
     }
 
     @Override
@@ -130,6 +666,99 @@ public class TasksResult extends BuildResult {
         return numberOfFiles;
     }
 
+    /**
+     * Returns the number of tasks by priority, tag, module and package of this result.
+     *
+     * @return the totals, or {@code null} if this result has been created by an older version of the plug-in
+     */
+    public TaskTotals getTotals() {
+        return totals;
+    }
+
+    @Override
+    public boolean hasAnnotations() {
+        if (totals == null) {
+            return super.hasAnnotations();
+        }
+        return totals.getNumberOfTasks() > 0;
+    }
+
+    @Override
+    public boolean hasAnnotations(final Priority priority) {
+        if (totals == null) {
+            return super.hasAnnotations(priority);
+        }
+        return totals.getNumberOfTasks(priority) > 0;
+    }
+
+    @Override
+    public boolean hasNoAnnotations() {
+        return !hasAnnotations();
+    }
+
+    @Override
+    public boolean hasNoAnnotations(final Priority priority) {
+        return !hasAnnotations(priority);
+    }
+
+    /**
+     * Returns the configuration of the scanner that created this result. The tasks of this result can be reused
+     * by subsequent builds only if they use the same configuration.
+     *
+     * @return the configuration of the scanner, or {@code null} if unknown
+     */
+    public String getScanConfiguration() {
+        return scanConfiguration;
+    }
+
+    /**
+     * Sets the configuration of the scanner that created this result.
+     *
+     * @param scanConfiguration
+     *            the configuration of the scanner
+     */
+    public void setScanConfiguration(final String scanConfiguration) {
+        this.scanConfiguration = scanConfiguration;
+    }
+
+    /**
+     * Returns whether the scan that created this result scanned all files completely, i.e. no scan budget has been
+     * exceeded. Results of older versions are considered complete.
+     *
+     * @return {@code true} if all files have been scanned completely, {@code false} if the tasks are partial
+     */
+    public boolean isComplete() {
+        return incompleteReason == null;
+    }
+
+    /**
+     * Returns the reason why the scan that created this result is incomplete.
+     *
+     * @return the exceeded budget, or {@code null} if the scan is complete
+     */
+    public String getIncompleteReason() {
+        return incompleteReason;
+    }
+
+    /**
+     * Returns the statistics of the phases of the scan that created this result.
+     *
+     * @return the statistics, or {@code null} if the scan has not been measured
+     */
+    public ScanStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics of the phases of the scan that created this result.
+     *
+     * @param statistics
+     *            the statistics of the scan
+     */
+    public void setStatistics(final ScanStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Returns the display name (bread crumb name) of this result.
      *
@@ -142,7 +771,7 @@ public class TasksResult extends BuildResult {
 
     @Override
     protected String getSerializationFileName() {
-        return "open-tasks.xml";
+        return XML_FILE;
     }
 
     @Override
@@ -181,12 +810,23 @@ public class TasksResult extends BuildResult {
 
     /**
      * Returns the package category name for the scanned files. Currently, only
-     * java and c# files are supported.
+     * java and c# files are supported. If there are tasks in C# files and in files of other languages, then a
+     * combined name is returned.
      *
      * @return the package category name for the scanned files
      */
     public String getPackageCategoryName() {
-        if (hasAnnotations()) {
+        if (totals != null) {
+            int namespaceTasks = totals.getNumberOfTasksInLanguage(CSHARP);
+            if (namespaceTasks == 0) {
+                return Messages.Tasks_PackageDetail();
+            }
+            if (namespaceTasks == totals.getNumberOfTasks()) {
+                return Messages.Tasks_NamespaceDetail();
+            }
+            return Messages.Tasks_PackageOrNamespaceDetail();
+        }
+        if (hasAnnotations()) { // results of older versions have no totals
             String fileName = getAnnotations().iterator().next().getFileName();
             if (fileName.endsWith(".cs")) {
                 return Messages.Tasks_NamespaceDetail();
@@ -0,0 +1,128 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Computes the context hash codes of tasks while the lines of a file are scanned, so that the file does not need to
+ * be read again. The context of a task consists of the two lines before the task, the line of the task and the five
+ * lines after the task. The hash code is the {@link String#hashCode()} of the concatenation of these lines, i.e. the
+ * same value that is computed by {@link hudson.plugins.analysis.util.ContextHashCode}. Existing results therefore
+ * can be compared with the tasks of new scans.
+ * <p>
+ * Use {@link #addLine(String)} for each line of the file, then {@link #addTask(Task)} for each task in this line.
+ * After the last line {@link #finish()} assigns the hash codes of the remaining tasks.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class ContextHashWindow {
+    /** Number of lines before the line of a task that are part of the context. */
+    static final int LINES_BEFORE = 2;
+    /** Number of lines after the line of a task that are part of the context. */
+    static final int LINES_AFTER = 5;
+
+    private static final int PRIME = 31;
+
+    /** The line of the current task and the lines before, as ring buffer. */
+    private final String[] lines = new String[LINES_BEFORE + 1];
+    private int numberOfLines;
+    private final List<Context> pending = new ArrayList<Context>();
+
+    /**
+     * Adds the next line of the file.
+     *
+     * @param line
+     *            the line, without line break
+     */
+    void addLine(final String line) {
+        Iterator<Context> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Context context = iterator.next();
+            context.hash = append(context.hash, line, 0, line.length());
+            context.remaining--;
+            if (context.remaining == 0) {
+                context.task.setContextHashCode(context.hash);
+                iterator.remove();
+            }
+        }
+        lines[numberOfLines % lines.length] = line;
+        numberOfLines++;
+    }
+
+    /**
+     * Returns whether there are tasks whose context is not complete yet, i.e. whether the next lines are part of a
+     * context.
+     *
+     * @return {@code true} if there are pending tasks
+     */
+    boolean hasPendingTasks() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Adds a task in the line that has been added last.
+     *
+     * @param task
+     *            the task
+     */
+    void addTask(final Task task) {
+        int hash = 0;
+        for (int line = Math.max(0, numberOfLines - lines.length); line < numberOfLines; line++) {
+            String text = lines[line % lines.length];
+            hash = append(hash, text, 0, text.length());
+        }
+        pending.add(new Context(task, hash));
+    }
+
+    /**
+     * Assigns the hash codes of the tasks whose context ends at the end of the file.
+     */
+    void finish() {
+        for (Context context : pending) {
+            context.task.setContextHashCode(context.hash);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Appends the characters of the specified text to a hash code, using the algorithm of
+     * {@link String#hashCode()}. Line breaks are skipped, so the hash code of a text that contains several lines
+     * is the hash code of the concatenation of the lines.
+     *
+     * @param hash
+     *            the hash code of the previous characters
+     * @param text
+     *            the text to append
+     * @param from
+     *            the start of the characters to append
+     * @param to
+     *            the end of the characters to append (exclusive)
+     * @return the hash code
+     */
+    static int append(final int hash, final CharSequence text, final int from, final int to) {
+        int result = hash;
+        for (int position = from; position < to; position++) {
+            char character = text.charAt(position);
+            if (character != '\n' && character != '\r') {
+                result = PRIME * result + character;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The context of a task that is not complete yet.
+     */
+    private static class Context {
+        private final Task task;
+        private int hash;
+        private int remaining = LINES_AFTER;
+
+        Context(final Task task, final int hash) {
+            this.task = task;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+
+/**
+ * Finds the files of a folder that match Ant file-set include and exclude patterns. The semantics are the same as
+ * the ones of an Ant {@link org.apache.tools.ant.types.FileSet} (including the default excludes), but the folder is
+ * traversed using {@link Files#walkFileTree}: subtrees that can't contain an included file or that are completely
+ * excluded are not visited at all. Symbolic links are followed, loops are skipped. Each file is passed to the
+ * {@link Visitor} as soon as it has been found.
+ *
+ * @author Ulli Hafner
+ */
+class FileWalker {
+    private static final String DEEP_TREE_MATCH = "**";
+    private static final String DELIMITERS = ", ";
+
+    private final List<TokenizedPattern> includes;
+    private final List<TokenizedPattern> excludes;
+
+    /**
+     * Visits the files that have been found by a {@link FileWalker}.
+     */
+    interface Visitor {
+        /**
+         * Visits the specified file.
+         *
+         * @param fileName
+         *            the name of the file relative to the folder that is traversed
+         * @param attributes
+         *            the attributes of the file
+         * @throws IOException
+         *             if the file could not be processed, the traversal is stopped
+         * @throws InterruptedException
+         *             if the user canceled the traversal
+         */
+        void visit(String fileName, BasicFileAttributes attributes) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Visits the files and the traversed folders that have been found by a {@link FileWalker}.
+     */
+    interface FolderVisitor extends Visitor {
+        /**
+         * Visits the specified folder before its files are visited.
+         *
+         * @param folderName
+         *            the name of the folder relative to the folder that is traversed, empty for this folder
+         * @param attributes
+         *            the attributes of the folder
+         */
+        void visitFolder(String folderName, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Creates a new instance of {@link FileWalker}.
+     *
+     * @param includePattern
+     *            Ant file-set pattern of the files to include, an empty pattern includes all files
+     * @param excludePattern
+     *            Ant file-set pattern of the files to exclude, may be empty
+     */
+    FileWalker(final String includePattern, final String excludePattern) {
+        includes = tokenize(StringUtils.defaultIfBlank(includePattern, DEEP_TREE_MATCH));
+        excludes = tokenize(excludePattern);
+        for (String defaultExclude : DirectoryScanner.getDefaultExcludes()) {
+            excludes.add(new TokenizedPattern(normalize(defaultExclude)));
+        }
+    }
+
+    private List<TokenizedPattern> tokenize(final String patterns) {
+        List<TokenizedPattern> tokenized = new ArrayList<TokenizedPattern>();
+        if (patterns != null) {
+            StringTokenizer tokenizer = new StringTokenizer(patterns, DELIMITERS, false);
+            while (tokenizer.hasMoreTokens()) {
+                tokenized.add(new TokenizedPattern(normalize(tokenizer.nextToken())));
+            }
+        }
+        return tokenized;
+    }
+
+    private String normalize(final String pattern) {
+        String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (normalized.endsWith(File.separator)) {
+            normalized += DEEP_TREE_MATCH;
+        }
+        return normalized;
+    }
+
+    /**
+     * Traverses the specified folder and visits all included files.
+     *
+     * @param folder
+     *            the folder to traverse
+     * @param visitor
+     *            the visitor of the files
+     * @throws IOException
+     *             if the visitor could not process a file
+     * @throws InterruptedException
+     *             if the user canceled the traversal
+     */
+    void walk(final File folder, final Visitor visitor) throws IOException, InterruptedException {
+        final Path root = folder.toPath();
+        final Deque<TokenizedPath> folders = new ArrayDeque<TokenizedPath>();
+        final InterruptedException[] interruption = new InterruptedException[1];
+
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) {
+                        TokenizedPath path = TokenizedPath.EMPTY_PATH;
+                        if (!directory.equals(root)) {
+                            path = new TokenizedPath(folders.peek(), directory.getFileName().toString());
+                            if (!isTraversed(path)) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                        }
+                        folders.push(path);
+                        if (visitor instanceof FolderVisitor) {
+                            ((FolderVisitor)visitor).visitFolder(path.toString(), attributes);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(final Path directory, final IOException exception) {
+                        folders.pop();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes)
+                            throws IOException {
+                        if (attributes.isRegularFile()) {
+                            TokenizedPath path = new TokenizedPath(folders.peek(), file.getFileName().toString());
+                            if (isIncluded(path) && !isExcluded(path)) {
+                                try {
+                                    visitor.visit(path.toString(), attributes);
+                                }
+                                catch (InterruptedException exception) {
+                                    interruption[0] = exception;
+                                    return FileVisitResult.TERMINATE;
+                                }
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exception) {
+                        // ignore files and folders that could not be read as well as symbolic link loops
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+
+        if (interruption[0] != null) {
+            throw interruption[0];
+        }
+    }
+
+    /**
+     * Visits the specified files of a folder that are included by the patterns. Files that do not exist are
+     * skipped.
+     *
+     * @param folder
+     *            the folder that contains the files
+     * @param fileNames
+     *            the names of the files relative to the folder
+     * @param visitor
+     *            the visitor of the files
+     * @throws IOException
+     *             if the visitor could not process a file
+     * @throws InterruptedException
+     *             if the user canceled the traversal
+     */
+    void visit(final File folder, final Collection<String> fileNames, final Visitor visitor)
+            throws IOException, InterruptedException {
+        for (String fileName : fileNames) {
+            TokenizedPath path = new TokenizedPath(fileName.replace('/', File.separatorChar)
+                    .replace('\\', File.separatorChar));
+            if (isIncluded(path) && !isExcluded(path)) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(new File(folder, path.toString()).toPath(),
+                            BasicFileAttributes.class);
+                }
+                catch (IOException exception) {
+                    continue; // skip files that have been deleted
+                }
+                if (attributes.isRegularFile()) {
+                    visitor.visit(path.toString(), attributes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the specified folder is traversed, i.e. whether it could contain an included file that is not
+     * excluded.
+     *
+     * @param folderName
+     *            the name of the folder relative to the folder that is traversed
+     * @return {@code true} if the folder is traversed
+     */
+    boolean isTraversed(final String folderName) {
+        return isTraversed(new TokenizedPath(folderName.replace('/', File.separatorChar)
+                .replace('\\', File.separatorChar)));
+    }
+
+    private boolean isTraversed(final TokenizedPath folder) {
+        return couldHoldIncluded(folder) && !isContentExcluded(folder);
+    }
+
+    private boolean isIncluded(final TokenizedPath path) {
+        return matches(includes, path);
+    }
+
+    private boolean isExcluded(final TokenizedPath path) {
+        return matches(excludes, path);
+    }
+
+    private boolean matches(final List<TokenizedPattern> patterns, final TokenizedPath path) {
+        for (TokenizedPattern pattern : patterns) {
+            if (pattern.matchPath(path, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the specified folder could contain an included file. Uses the same rules as the Ant
+     * {@link DirectoryScanner}.
+     *
+     * @param folder
+     *            the folder to check
+     * @return {@code true} if the folder needs to be traversed
+     */
+    private boolean couldHoldIncluded(final TokenizedPath folder) {
+        String excludesAll = folder + File.separator + DEEP_TREE_MATCH;
+        for (TokenizedPattern exclude : excludes) {
+            if (exclude.getPattern().equals(excludesAll)) {
+                return false;
+            }
+        }
+        for (TokenizedPattern include : includes) {
+            if (include.matchStartOf(folder, true)
+                    && (include.containsPattern(DEEP_TREE_MATCH) || include.depth() > folder.depth())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether all files of the specified folder are excluded, i.e. the folder matches an exclude pattern
+     * that ends with {@code **}.
+     *
+     * @param folder
+     *            the folder to check
+     * @return {@code true} if the folder does not need to be traversed
+     */
+    private boolean isContentExcluded(final TokenizedPath folder) {
+        for (TokenizedPattern exclude : excludes) {
+            if (exclude.endsWith(DEEP_TREE_MATCH) && exclude.withoutLastToken().matchPath(folder, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,195 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+
+/**
+ * An Aho-Corasick automaton that finds all occurrences of a set of keywords in a single left-to-right pass over a
+ * text. Each character of the text is consumed with one table lookup, independent of the number of keywords. The
+ * automaton can also be used to search bytes, if the keywords and the text bytes are represented by the characters
+ * 0 - 255.
+ * <p>
+ * The automaton is immutable, the current state needs to be stored by the caller. Start with {@link #START}, feed
+ * each character using {@link #next(int, char)} and use {@link #getKeywords(int)} to obtain the keywords that end at
+ * the last consumed character.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class KeywordAutomaton {
+    /** The initial state of the automaton. */
+    static final int START = 0;
+
+    /** Number of characters that are mapped using a lookup table, covers all values of a byte. */
+    private static final int TABLE_SIZE = 256;
+    private static final int ASCII = 128;
+    /** Symbol of all characters that are not part of a keyword. */
+    private static final int OTHER = 0;
+    private static final int UNDEFINED = -1;
+
+    private final int[] tableSymbols = new int[TABLE_SIZE];
+    private final char[] otherCharacters;
+    private final int[] otherSymbols;
+    private final int alphabetSize;
+
+    /** The transitions of the automaton: the next state is stored at index {@code state * alphabetSize + symbol}. */
+    private final int[] transitions;
+    /** The keywords that are recognized in a state, or {@code null} if there are none. */
+    private final int[][] outputs;
+    private final int[] lengths;
+
+    /**
+     * Creates a new instance of {@link KeywordAutomaton}.
+     *
+     * @param keywords
+     *            the keywords to find, the index of a keyword in this list is used to identify the keyword
+     * @param ignoreCase
+     *            if the case of US-ASCII characters should be ignored during matching (the same semantics as
+     *            {@link java.util.regex.Pattern#CASE_INSENSITIVE})
+     */
+    KeywordAutomaton(final List<String> keywords, final boolean ignoreCase) {
+        lengths = new int[keywords.size()];
+        TreeSet<Character> others = new TreeSet<Character>();
+        int symbol = OTHER;
+        for (int i = 0; i < keywords.size(); i++) {
+            String keyword = keywords.get(i);
+            lengths[i] = keyword.length();
+            for (char character : keyword.toCharArray()) {
+                if (character < TABLE_SIZE) {
+                    if (tableSymbols[character] == OTHER) {
+                        symbol++;
+                        tableSymbols[character] = symbol;
+                        if (ignoreCase && character < ASCII && Character.isLetter(character)) {
+                            tableSymbols[Character.toLowerCase(character)] = symbol;
+                            tableSymbols[Character.toUpperCase(character)] = symbol;
+                        }
+                    }
+                }
+                else {
+                    others.add(character);
+                }
+            }
+        }
+        otherCharacters = new char[others.size()];
+        otherSymbols = new int[others.size()];
+        int position = 0;
+        for (Character character : others) {
+            otherCharacters[position] = character;
+            symbol++;
+            otherSymbols[position] = symbol;
+            position++;
+        }
+        alphabetSize = symbol + 1;
+
+        List<int[]> trie = new ArrayList<int[]>();
+        List<List<Integer>> accepted = new ArrayList<List<Integer>>();
+        trie.add(createState());
+        accepted.add(new ArrayList<Integer>());
+        for (int i = 0; i < keywords.size(); i++) {
+            int state = START;
+            for (char character : keywords.get(i).toCharArray()) {
+                int next = trie.get(state)[toSymbol(character)];
+                if (next == UNDEFINED) {
+                    next = trie.size();
+                    trie.get(state)[toSymbol(character)] = next;
+                    trie.add(createState());
+                    accepted.add(new ArrayList<Integer>());
+                }
+                state = next;
+            }
+            accepted.get(state).add(i);
+        }
+
+        transitions = new int[trie.size() * alphabetSize];
+        outputs = new int[trie.size()][];
+        int[] failure = new int[trie.size()];
+        Queue<Integer> queue = new LinkedList<Integer>();
+        queue.add(START);
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            if (state != START) {
+                accepted.get(state).addAll(accepted.get(failure[state]));
+            }
+            outputs[state] = toArray(accepted.get(state));
+            for (int current = 0; current < alphabetSize; current++) {
+                int next = trie.get(state)[current];
+                int fallback = state == START ? START : transitions[failure[state] * alphabetSize + current];
+                if (next == UNDEFINED) {
+                    transitions[state * alphabetSize + current] = fallback;
+                }
+                else {
+                    transitions[state * alphabetSize + current] = next;
+                    failure[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private int[] createState() {
+        int[] state = new int[alphabetSize];
+        Arrays.fill(state, UNDEFINED);
+        return state;
+    }
+
+    private int[] toArray(final List<Integer> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private int toSymbol(final char character) {
+        if (character < TABLE_SIZE) {
+            return tableSymbols[character];
+        }
+        int position = Arrays.binarySearch(otherCharacters, character);
+        if (position < 0) {
+            return OTHER;
+        }
+        return otherSymbols[position];
+    }
+
+    /**
+     * Returns the state that is reached after consuming the specified character.
+     *
+     * @param state
+     *            the current state
+     * @param character
+     *            the character to consume
+     * @return the next state
+     */
+    public int next(final int state, final char character) {
+        return transitions[state * alphabetSize + toSymbol(character)];
+    }
+
+    /**
+     * Returns the keywords that end at the character that has been consumed last.
+     *
+     * @param state
+     *            the current state
+     * @return the indexes of the found keywords, or {@code null} if no keyword has been found
+     */
+    public int[] getKeywords(final int state) {
+        return outputs[state];
+    }
+
+    /**
+     * Returns the length of the specified keyword.
+     *
+     * @param keyword
+     *            the index of the keyword
+     * @return the length of the keyword
+     */
+    public int getLength(final int keyword) {
+        return lengths[keyword];
+    }
+}
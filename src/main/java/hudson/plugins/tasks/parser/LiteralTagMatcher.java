@@ -0,0 +1,183 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Finds literal task tags of all priorities in a single left-to-right pass over a line. The tags are compiled into a
+ * {@link KeywordAutomaton}, so the costs per line do not depend on the number of tags or priorities. The found tags are
+ * the same as the ones of the regular expression {@code ^.*(\bTAG1\b|\bTAG2\b)(.*)$} that is created for each
+ * priority by {@link TaskScanner}: for each priority the last occurrence of a tag in the line is reported, if several
+ * tags start at the same position then the tag that has been defined first is chosen.
+ * <p>
+ * Instances of this class are not thread safe.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class LiteralTagMatcher implements TagMatcher {
+    /** Characters that have a special meaning in regular expressions. */
+    private static final String REGEXP_META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final int NO_MATCH = -1;
+    /** Line terminators that are not matched by the regular expression {@code .}, see {@link Pattern}. */
+    private static final char NEXT_LINE = 0x0085;
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final KeywordAutomaton automaton;
+    private final List<String> words = new ArrayList<String>();
+    private final boolean ignoreCase;
+    private final Priority[] tagPriority;
+    private final int[] tagIndex;
+    private final int[] tagLength;
+    private final boolean[] hasLeadingBoundary;
+    private final boolean[] hasTrailingBoundary;
+
+    private final int[] bestStart = new int[Priority.values().length];
+    private final int[] bestTag = new int[Priority.values().length];
+    private final Matcher wordBoundary = Pattern.compile("\\b").matcher(StringUtils.EMPTY);
+
+    /**
+     * Returns whether the specified tag can be matched literally, i.e. it does not contain a character that has a
+     * special meaning in a regular expression.
+     *
+     * @param tag
+     *            the tag to check
+     * @return {@code true} if the tag can be matched by this matcher, {@code false} otherwise
+     */
+    static boolean isLiteral(final String tag) {
+        return StringUtils.containsNone(tag, REGEXP_META_CHARACTERS);
+    }
+
+    /**
+     * Creates a new instance of {@link LiteralTagMatcher}.
+     *
+     * @param tags
+     *            the literal tags to find, mapped by priority. Within a priority, the tags are ordered by precedence.
+     * @param ignoreCase
+     *            if the case of US-ASCII characters should be ignored during matching
+     */
+    LiteralTagMatcher(final Map<Priority, List<String>> tags, final boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+
+        List<Priority> priorities = new ArrayList<Priority>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (Priority priority : Priority.values()) {
+            if (tags.containsKey(priority)) {
+                List<String> priorityTags = tags.get(priority);
+                for (int i = 0; i < priorityTags.size(); i++) {
+                    words.add(priorityTags.get(i));
+                    priorities.add(priority);
+                    indexes.add(i);
+                }
+            }
+        }
+
+        int size = words.size();
+        tagPriority = priorities.toArray(new Priority[size]);
+        tagIndex = new int[size];
+        tagLength = new int[size];
+        hasLeadingBoundary = new boolean[size];
+        hasTrailingBoundary = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            String word = words.get(i);
+            tagIndex[i] = indexes.get(i);
+            tagLength[i] = word.length();
+            hasLeadingBoundary[i] = Character.isLetterOrDigit(word.charAt(0));
+            hasTrailingBoundary[i] = Character.isLetterOrDigit(word.charAt(word.length() - 1));
+        }
+
+        automaton = new KeywordAutomaton(words, ignoreCase);
+    }
+
+    @Override
+    public List<String> getRequiredLiterals() {
+        return Collections.unmodifiableList(words);
+    }
+
+    @Override
+    public boolean isIgnoringCase() {
+        return ignoreCase;
+    }
+
+    @Override
+    public void setDeadline(final long deadline) {
+        // matching a line needs linear time
+    }
+
+    @Override
+    public List<TagMatch> match(final String line) {
+        Arrays.fill(bestStart, NO_MATCH);
+
+        boolean isMatch = false;
+        int state = KeywordAutomaton.START;
+        int length = line.length();
+        for (int position = 0; position < length; position++) {
+            char character = line.charAt(position);
+            if (isLineSeparator(character)) {
+                return Collections.emptyList(); // the regular expression '.' does not match these characters
+            }
+            state = automaton.next(state, character);
+            int[] tags = automaton.getKeywords(state);
+            if (tags != null) {
+                for (int tag : tags) {
+                    isMatch |= accept(line, tag, position + 1 - tagLength[tag]);
+                }
+            }
+        }
+        if (!isMatch) {
+            return Collections.emptyList();
+        }
+
+        List<TagMatch> matches = new ArrayList<TagMatch>();
+        for (Priority priority : Priority.values()) {
+            int start = bestStart[priority.ordinal()];
+            if (start != NO_MATCH) {
+                int end = start + tagLength[bestTag[priority.ordinal()]];
+                matches.add(new TagMatch(priority, line.substring(start, end), line.substring(end)));
+            }
+        }
+        return matches;
+    }
+
+    private boolean accept(final String line, final int tag, final int start) {
+        int priority = tagPriority[tag].ordinal();
+        int best = bestStart[priority];
+        if (start < best || start == best && tagIndex[tag] > tagIndex[bestTag[priority]]) {
+            return false;
+        }
+        if (hasLeadingBoundary[tag] && !isWordBoundary(line, start)
+                || hasTrailingBoundary[tag] && !isWordBoundary(line, start + tagLength[tag])) {
+            return false;
+        }
+        bestStart[priority] = start;
+        bestTag[priority] = tag;
+        return true;
+    }
+
+    /**
+     * Returns whether there is a word boundary at the specified position. The check is delegated to the regular
+     * expression engine so that the semantics of {@code \b} are exactly the same as in the non-literal case.
+     */
+    private boolean isWordBoundary(final String line, final int position) {
+        wordBoundary.reset(line);
+        wordBoundary.useTransparentBounds(true);
+        wordBoundary.region(position, line.length());
+
+        return wordBoundary.lookingAt();
+    }
+
+    private static boolean isLineSeparator(final char character) {
+        return character >= NEXT_LINE
+                && (character == NEXT_LINE || character == LINE_SEPARATOR || character == PARAGRAPH_SEPARATOR);
+    }
+}
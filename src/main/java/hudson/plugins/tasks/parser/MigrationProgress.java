@@ -0,0 +1,230 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Records the progress of the migration of the tasks of older builds into the {@link TaskStore} format. The builds
+ * are migrated job by job in the order of their names. The last migrated build is stored as checkpoint, so that the
+ * migration continues with the next build after a restart.
+ * <p>
+ * The remaining time is estimated from the builds that have been visited since the migration has been started by
+ * {@link #start(int, int)}.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public class MigrationProgress {
+    private static final String JOB = "job";
+    private static final String BUILD = "build";
+    private static final String MIGRATED = "migrated";
+    private static final String COMPLETED = "completed";
+    private static final int PERCENT = 100;
+
+    private final File file;
+    private String job = StringUtils.EMPTY;
+    private String build = StringUtils.EMPTY;
+    private long migrated;
+    private boolean completed;
+
+    private int total;
+    private int visited;
+    private int visitedSinceStart;
+    private long started;
+
+    /**
+     * Loads the checkpoint of the migration from the specified file. If the file does not exist, then the migration
+     * starts with the first build.
+     *
+     * @param file
+     *            the file of the checkpoint
+     * @return the progress of the migration
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public static MigrationProgress load(final File file) throws IOException {
+        MigrationProgress progress = new MigrationProgress(file);
+        if (file.exists()) {
+            Properties properties = new Properties();
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            }
+            finally {
+                IOUtils.closeQuietly(input);
+            }
+            progress.job = properties.getProperty(JOB, StringUtils.EMPTY);
+            progress.build = properties.getProperty(BUILD, StringUtils.EMPTY);
+            progress.completed = Boolean.parseBoolean(properties.getProperty(COMPLETED));
+            try {
+                progress.migrated = Long.parseLong(properties.getProperty(MIGRATED, "0"));
+            }
+            catch (NumberFormatException exception) {
+                progress.migrated = 0;
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Creates a new instance of {@link MigrationProgress} that starts with the first build.
+     *
+     * @param file
+     *            the file of the checkpoint
+     */
+    public MigrationProgress(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the checkpoint of the migration. The checkpoint is written to a temporary file that is renamed when it
+     * is complete.
+     *
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(JOB, job);
+        properties.setProperty(BUILD, build);
+        properties.setProperty(MIGRATED, String.valueOf(migrated));
+        properties.setProperty(COMPLETED, String.valueOf(completed));
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            properties.store(output, "Migration of the open tasks");
+            TaskStore.sync(output, output);
+        }
+        finally {
+            output.close();
+        }
+        TaskStore.replace(temporary, file);
+    }
+
+    /**
+     * Starts the migration of the remaining builds.
+     *
+     * @param numberOfBuilds
+     *            the number of all builds
+     * @param numberOfVisitedBuilds
+     *            the number of builds up to the checkpoint
+     */
+    public synchronized void start(final int numberOfBuilds, final int numberOfVisitedBuilds) {
+        total = numberOfBuilds;
+        visited = numberOfVisitedBuilds;
+        visitedSinceStart = 0;
+        started = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns whether the specified build is before or at the checkpoint, i.e. whether the build has been visited
+     * already.
+     *
+     * @param jobName
+     *            the full name of the job
+     * @param buildName
+     *            the name of the folder of the build
+     * @return {@code true} if the build has been visited, {@code false} otherwise
+     */
+    public synchronized boolean isVisited(final String jobName, final String buildName) {
+        int order = jobName.compareTo(job);
+        return order < 0 || order == 0 && buildName.compareTo(build) <= 0;
+    }
+
+    /**
+     * Moves the checkpoint to the specified build.
+     *
+     * @param jobName
+     *            the full name of the job
+     * @param buildName
+     *            the name of the folder of the build
+     * @param isMigrated
+     *            determines whether the tasks of the build have been migrated
+     */
+    public synchronized void visit(final String jobName, final String buildName, final boolean isMigrated) {
+        job = jobName;
+        build = buildName;
+        visited++;
+        visitedSinceStart++;
+        if (isMigrated) {
+            migrated++;
+        }
+    }
+
+    /**
+     * Marks the migration as completed, i.e. all builds have been visited.
+     */
+    public synchronized void complete() {
+        completed = true;
+        visited = total;
+    }
+
+    /**
+     * Returns whether all builds have been visited.
+     *
+     * @return {@code true} if the migration has been completed
+     */
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the number of builds whose tasks have been migrated.
+     *
+     * @return the number of migrated builds
+     */
+    public synchronized long getNumberOfMigratedBuilds() {
+        return migrated;
+    }
+
+    /**
+     * Returns the percentage of the visited builds.
+     *
+     * @return the percentage
+     */
+    public synchronized int getPercentage() {
+        if (completed || total == 0) {
+            return PERCENT;
+        }
+        return (int)(PERCENT * (long)visited / total);
+    }
+
+    /**
+     * Returns the estimated time until all builds have been visited.
+     *
+     * @return the remaining time in milliseconds, or -1 if there is no estimate yet
+     */
+    public synchronized long getRemainingTime() {
+        if (completed) {
+            return 0;
+        }
+        if (visitedSinceStart == 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed * Math.max(0, total - visited) / visitedSinceStart;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (completed) {
+            return String.format("Completed, %d builds migrated", migrated);
+        }
+        long remaining = getRemainingTime();
+        return String.format("%d of %d builds (%d%%), %d builds migrated, %s", visited, total, getPercentage(),
+                migrated, remaining < 0 ? "remaining time unknown"
+                        : "about " + TimeUnit.MILLISECONDS.toMinutes(remaining) + " minutes remaining");
+    }
+}
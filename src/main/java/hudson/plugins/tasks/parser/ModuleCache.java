@@ -0,0 +1,381 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.ModuleDetector;
+
+/**
+ * Remembers the module names of a workspace so that the build files do not need to be parsed again if the module
+ * layout did not change. For each Maven, Ant and OSGi build file the time of the last modification is stored,
+ * together with the module name that the {@link ModuleDetector} guessed for the folder of the build file.
+ * <p>
+ * The cache is validated without traversing the workspace: the cached build files need to exist unmodified, and
+ * no build file may have been added to the folders of the workspace. Since adding a file or folder changes the
+ * modification time of its parent folder, only the folders that have been modified since the cache has been created
+ * are listed, and only the folders that have been added to them are traversed. As a safeguard for file systems that
+ * do not update the modification time of folders, the cache expires after {@link #MAXIMUM_AGE}.
+ * </p>
+ * <p>
+ * Since the module of a file is the module of the nearest folder with a build file, the module names of the cached
+ * folders are sufficient to guess the same module names as the {@link ModuleDetector}. The cache is stored as plain
+ * data records, so that a cache that has been committed to or planted in the workspace can't make the scanner
+ * instantiate arbitrary classes.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class ModuleCache {
+    /** Name of the cache file in the workspace. */
+    static final String FILE_NAME = ".tasks-modules.bin";
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x5441534F;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 2;
+    /** Maximum age of a cache, after that the workspace is traversed again to find new build files. */
+    static final long MAXIMUM_AGE = TimeUnit.DAYS.toMillis(1);
+
+    /** Ant file-set pattern of the build files that define modules. */
+    private static final String BUILD_FILES = "**/pom.xml, **/build.xml, **/META-INF/MANIFEST.MF";
+    private static final String OSGI_BUNDLE = "META-INF/MANIFEST.MF";
+    private static final String[] BUILD_FILE_NAMES = {"pom.xml", "build.xml"};
+    /** Maximum resolution of file modification times of the supported file systems. */
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+    private static final char SEPARATOR = '/';
+
+    private final String workspacePath;
+    private final long timestamp;
+    private final Map<String, Long> buildFiles;
+    private final Map<String, Long> folders;
+    private final Map<String, String> modules;
+
+    /**
+     * Finds the build files of the specified workspace. The files are not read, only their modification times are
+     * determined.
+     *
+     * @param workspace
+     *            the workspace
+     * @param folders
+     *            the names of the traversed folders relative to the workspace, mapped to the time of the last
+     *            modification, filled by this method
+     * @return the names of the build files relative to the workspace, mapped to the time of the last modification
+     * @throws IOException
+     *             if the workspace could not be traversed
+     * @throws InterruptedException
+     *             if the user canceled the traversal
+     */
+    static Map<String, Long> findBuildFiles(final File workspace, final Map<String, Long> folders)
+            throws IOException, InterruptedException {
+        final Map<String, Long> buildFiles = new TreeMap<String, Long>();
+        new FileWalker(BUILD_FILES, null).walk(workspace, new FileWalker.FolderVisitor() {
+            @Override
+            public void visit(final String fileName, final BasicFileAttributes attributes) {
+                buildFiles.put(normalize(fileName), attributes.lastModifiedTime().toMillis());
+            }
+
+            @Override
+            public void visitFolder(final String folderName, final BasicFileAttributes attributes) {
+                folders.put(normalize(folderName), attributes.lastModifiedTime().toMillis());
+            }
+        });
+        return buildFiles;
+    }
+
+    /**
+     * Loads the cache of the specified workspace. If there is no cache yet, the cache can't be parsed, or the build
+     * files have been changed or added since the cache has been created, then {@code null} is returned.
+     *
+     * @param workspace
+     *            the workspace
+     * @return the cache, or {@code null} if the modules need to be detected again
+     * @throws InterruptedException
+     *             if the user canceled the validation of the cache
+     */
+    static ModuleCache load(final File workspace) throws InterruptedException {
+        File file = new File(workspace, FILE_NAME);
+        if (file.isFile()) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                ModuleCache stored = read(input, file.length());
+                if (stored.isValid(workspace)) {
+                    return stored;
+                }
+            }
+            catch (IOException exception) {
+                // ignore and detect the modules again
+            }
+            catch (RuntimeException exception) {
+                // ignore and detect the modules again
+            }
+            finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new cache with the module names that the specified detector guesses for the folders of the build
+     * files.
+     *
+     * @param workspace
+     *            the workspace
+     * @param buildFiles
+     *            the current build files of the workspace, see {@link #findBuildFiles(File, Map)}
+     * @param folders
+     *            the current folders of the workspace, see {@link #findBuildFiles(File, Map)}
+     * @param moduleDetector
+     *            the module detector that has parsed the build files
+     * @return the cache
+     */
+    static ModuleCache create(final File workspace, final Map<String, Long> buildFiles,
+            final Map<String, Long> folders, final ModuleDetector moduleDetector) {
+        String path = getPath(workspace);
+        Map<String, String> modules = new HashMap<String, String>();
+        for (String buildFile : buildFiles.keySet()) {
+            String folder = path + getModuleFolder(buildFile);
+            modules.put(folder, moduleDetector.guessModuleName(folder));
+        }
+        return new ModuleCache(path, System.currentTimeMillis(), buildFiles, folders, modules);
+    }
+
+    private static String getModuleFolder(final String buildFile) {
+        String folder;
+        if (buildFile.endsWith(OSGI_BUNDLE)) {
+            folder = StringUtils.removeEnd(buildFile, OSGI_BUNDLE);
+        }
+        else {
+            folder = buildFile.substring(0, buildFile.lastIndexOf(SEPARATOR) + 1);
+        }
+        return folder;
+    }
+
+    private static String getPath(final File workspace) {
+        return normalize(workspace.getAbsolutePath()) + SEPARATOR;
+    }
+
+    private static String normalize(final String fileName) {
+        return fileName.replace('\\', SEPARATOR);
+    }
+
+    private ModuleCache(final String workspacePath, final long timestamp, final Map<String, Long> buildFiles,
+            final Map<String, Long> folders, final Map<String, String> modules) {
+        this.workspacePath = workspacePath;
+        this.timestamp = timestamp;
+        this.buildFiles = buildFiles;
+        this.folders = folders;
+        this.modules = modules;
+    }
+
+    private boolean isValid(final File workspace) throws IOException, InterruptedException {
+        long now = System.currentTimeMillis();
+        if (!workspacePath.equals(getPath(workspace)) || timestamp > now || timestamp + MAXIMUM_AGE < now) {
+            return false;
+        }
+        return isUnchanged(workspace) && !hasNewBuildFiles(workspace);
+    }
+
+    private boolean isUnchanged(final File workspace) {
+        for (Map.Entry<String, Long> entry : buildFiles.entrySet()) {
+            long lastModified = entry.getValue();
+            if (lastModified + TIMESTAMP_RESOLUTION >= timestamp) {
+                return false; // the file could have been changed again without changing the modification time
+            }
+            if (new File(workspace, entry.getKey()).lastModified() != lastModified) {
+                return false; // also if the file has been deleted
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a build file has been added to the workspace. Only the folders that have been modified since
+     * the cache has been created are listed, and only the folders that have been added to them are traversed.
+     *
+     * @param workspace
+     *            the workspace
+     * @return {@code true} if a build file has been added
+     * @throws IOException
+     *             if an added folder could not be traversed
+     * @throws InterruptedException
+     *             if the user canceled the traversal
+     */
+    private boolean hasNewBuildFiles(final File workspace) throws IOException, InterruptedException {
+        FileWalker walker = new FileWalker(BUILD_FILES, null);
+        for (Map.Entry<String, Long> entry : folders.entrySet()) {
+            long lastModified = entry.getValue();
+            File folder = entry.getKey().isEmpty() ? workspace : new File(workspace, entry.getKey());
+            if (lastModified + TIMESTAMP_RESOLUTION < timestamp && folder.lastModified() == lastModified) {
+                continue; // neither a file nor a folder has been added
+            }
+            String[] children = folder.list();
+            if (children == null) {
+                continue; // deleted folders can't contain new build files
+            }
+            for (String child : children) {
+                String fileName = entry.getKey().isEmpty() ? child : entry.getKey() + SEPARATOR + child;
+                File file = new File(folder, child);
+                if (file.isDirectory()) {
+                    if (!folders.containsKey(fileName) && walker.isTraversed(fileName) && hasBuildFiles(file)) {
+                        return true;
+                    }
+                }
+                else if (isBuildFile(fileName) && !buildFiles.containsKey(fileName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBuildFile(final String fileName) {
+        for (String name : BUILD_FILE_NAMES) {
+            if (fileName.equals(name) || fileName.endsWith(SEPARATOR + name)) {
+                return true;
+            }
+        }
+        return fileName.equals(OSGI_BUNDLE) || fileName.endsWith(SEPARATOR + OSGI_BUNDLE);
+    }
+
+    private static boolean hasBuildFiles(final File folder) throws IOException, InterruptedException {
+        final boolean[] hasBuildFiles = new boolean[1];
+        new FileWalker(BUILD_FILES, null).walk(folder, new FileWalker.Visitor() {
+            @Override
+            public void visit(final String fileName, final BasicFileAttributes attributes) {
+                hasBuildFiles[0] = true;
+            }
+        });
+        return hasBuildFiles[0];
+    }
+
+    /**
+     * Stores this cache in the specified workspace.
+     *
+     * @param workspace
+     *            the workspace
+     * @throws IOException
+     *             if the cache could not be written
+     */
+    void save(final File workspace) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(workspace, FILE_NAME))));
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeUTF(workspacePath);
+            output.writeLong(timestamp);
+            writeTimestamps(output, buildFiles);
+            writeTimestamps(output, folders);
+            output.writeInt(modules.size());
+            for (Map.Entry<String, String> entry : modules.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeBoolean(entry.getValue() != null);
+                output.writeUTF(StringUtils.defaultString(entry.getValue()));
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private void writeTimestamps(final DataOutputStream output, final Map<String, Long> files) throws IOException {
+        output.writeInt(files.size());
+        for (Map.Entry<String, Long> entry : files.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeLong(entry.getValue());
+        }
+    }
+
+    private static ModuleCache read(final DataInputStream input, final long length) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a module cache");
+        }
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version " + version);
+        }
+        String workspacePath = input.readUTF();
+        long timestamp = input.readLong();
+        Map<String, Long> buildFiles = readTimestamps(input, length);
+        Map<String, Long> folders = readTimestamps(input, length);
+        int size = readSize(input, length);
+        Map<String, String> modules = new HashMap<String, String>(size);
+        for (int i = 0; i < size; i++) {
+            String folder = input.readUTF();
+            boolean hasModule = input.readBoolean();
+            String module = input.readUTF();
+            modules.put(folder, hasModule ? module : null);
+        }
+        return new ModuleCache(workspacePath, timestamp, buildFiles, folders, modules);
+    }
+
+    private static Map<String, Long> readTimestamps(final DataInputStream input, final long length)
+            throws IOException {
+        int size = readSize(input, length);
+        Map<String, Long> files = new TreeMap<String, Long>();
+        for (int i = 0; i < size; i++) {
+            String fileName = input.readUTF();
+            files.put(fileName, input.readLong());
+        }
+        return files;
+    }
+
+    private static int readSize(final DataInputStream input, final long length) throws IOException {
+        int size = input.readInt();
+        if (size < 0 || size > length) {
+            throw new StreamCorruptedException("Malformed size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of build files of the cached modules.
+     *
+     * @return the number of build files
+     */
+    int getNumberOfBuildFiles() {
+        return buildFiles.size();
+    }
+
+    /**
+     * Creates a module detector that guesses the module names using the cached modules.
+     *
+     * @return the module detector
+     */
+    ModuleDetector createModuleDetector() {
+        final Map<String, String> cachedModules = Collections.unmodifiableMap(modules);
+        return new ModuleDetector() {
+            @Override
+            public String guessModuleName(final String originalFileName) {
+                String fileName = normalize(originalFileName);
+                String folder = StringUtils.EMPTY;
+                String module = StringUtils.EMPTY;
+                for (Map.Entry<String, String> entry : cachedModules.entrySet()) {
+                    String current = entry.getKey();
+                    if (fileName.startsWith(current) && current.length() > folder.length()) {
+                        folder = current;
+                        module = entry.getValue();
+                    }
+                }
+                return module;
+            }
+        };
+    }
+}
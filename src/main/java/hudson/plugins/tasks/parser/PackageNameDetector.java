@@ -0,0 +1,185 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Detects the package or namespace of a file from the content that has been read by the task scanner, so that the
+ * file does not need to be read again. The same languages and rules as in
+ * {@link hudson.plugins.analysis.util.PackageDetectors} are supported: the {@code package} declaration of Java files
+ * and the {@code namespace} declaration of C# files.
+ *
+ * @author Ulli Hafner
+ */
+class PackageNameDetector {
+    /** The package name of files without a package declaration. */
+    static final String UNDEFINED_PACKAGE = "-";
+
+    private static final String JAVA_KEYWORD = "package";
+    private static final Pattern JAVA_PACKAGE = Pattern.compile(
+            "^\\s*package\\s*([a-z]+(\\.[a-zA-Z_][a-zA-Z0-9_]*)*)\\s*;.*");
+    private static final String CSHARP_KEYWORD = "namespace ";
+
+    private static final char LINE_FEED = '\n';
+    private static final char CARRIAGE_RETURN = '\r';
+
+    private final boolean isJava;
+    private final boolean isCsharp;
+    private String packageName;
+
+    /**
+     * Creates a new instance of {@link PackageNameDetector}.
+     *
+     * @param fileName
+     *            the name of the file, the language is derived from the extension
+     */
+    PackageNameDetector(final String fileName) {
+        isJava = fileName.endsWith(".java");
+        isCsharp = fileName.endsWith(".cs");
+        if (!isJava && !isCsharp) {
+            packageName = UNDEFINED_PACKAGE;
+        }
+    }
+
+    /**
+     * Returns whether the package name has been detected, i.e. no more lines need to be inspected.
+     *
+     * @return {@code true} if the package name has been detected
+     */
+    boolean isDone() {
+        return packageName != null;
+    }
+
+    /**
+     * Returns the detected package name.
+     *
+     * @return the package name, or {@link #UNDEFINED_PACKAGE} if the file has no package declaration
+     */
+    String getPackageName() {
+        return StringUtils.defaultString(packageName, UNDEFINED_PACKAGE);
+    }
+
+    /**
+     * Inspects the next line of the file.
+     *
+     * @param line
+     *            the line, without line break
+     */
+    void addLine(final String line) {
+        if (isDone()) {
+            return;
+        }
+        if (isJava) {
+            if (line.contains(JAVA_KEYWORD)) {
+                Matcher matcher = JAVA_PACKAGE.matcher(line);
+                if (matcher.matches()) {
+                    packageName = matcher.group(1);
+                }
+            }
+        }
+        else if (line.startsWith(CSHARP_KEYWORD)) {
+            if (line.contains("{")) {
+                packageName = StringUtils.substringBetween(line, " ", "{").trim();
+            }
+            else {
+                packageName = StringUtils.substringAfter(line, " ").trim();
+            }
+        }
+    }
+
+    /**
+     * Inspects the lines of the specified content until the package name has been detected.
+     *
+     * @param content
+     *            the content of the file
+     * @param length
+     *            the number of bytes of the content
+     * @param charset
+     *            the encoding of the file, must be compatible to US-ASCII
+     */
+    void detect(final byte[] content, final int length, final Charset charset) {
+        int start = 0;
+        while (!isDone() && start < length) {
+            int end = start;
+            while (end < length && content[end] != LINE_FEED && content[end] != CARRIAGE_RETURN) {
+                end++;
+            }
+            addLine(new String(content, start, end - start, charset));
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns a reader that inspects the lines of the specified reader while they are read.
+     *
+     * @param reader
+     *            the reader of the file
+     * @return the inspecting reader
+     */
+    Reader inspect(final Reader reader) {
+        if (isDone()) {
+            return reader;
+        }
+        return new InspectingReader(reader);
+    }
+
+    /**
+     * Passes the lines that have been read to the detector until the package name has been detected.
+     */
+    private class InspectingReader extends FilterReader {
+        private final StringBuilder line = new StringBuilder();
+
+        InspectingReader(final Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int character = super.read();
+            if (character < 0) {
+                finish();
+            }
+            else {
+                inspect((char)character);
+            }
+            return character;
+        }
+
+        @Override
+        public int read(final char[] characters, final int offset, final int length) throws IOException {
+            int count = super.read(characters, offset, length);
+            if (count < 0) {
+                finish();
+            }
+            for (int i = 0; i < count && !isDone(); i++) {
+                inspect(characters[offset + i]);
+            }
+            return count;
+        }
+
+        private void inspect(final char character) {
+            if (isDone()) {
+                return;
+            }
+            if (character == LINE_FEED || character == CARRIAGE_RETURN) {
+                finish();
+            }
+            else {
+                line.append(character);
+            }
+        }
+
+        private void finish() {
+            if (line.length() > 0) {
+                addLine(line.toString());
+                line.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Finds the task tags of all priorities using the regular expression of each priority. In order to skip the
+ * expensive regular expression matching for most of the lines, a literal that is part of every match is extracted
+ * from each expression (see {@link RequiredLiteral}). A single pass of a {@link KeywordAutomaton} then finds all
+ * priorities whose literal is contained in the line. Only the expressions of these priorities (and of the priorities
+ * without a literal) are evaluated.
+ * <p>
+ * Instances of this class are not thread safe.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class RegexpTagMatcher implements TagMatcher {
+    private final Matcher[] matchers = new Matcher[Priority.values().length];
+    private final boolean[] hasLiteral = new boolean[Priority.values().length];
+    private final boolean[] isCandidate = new boolean[Priority.values().length];
+
+    /** Finds the literals of all priorities, or {@code null} if no expression provides a literal. */
+    private final KeywordAutomaton prefilter;
+    /** Maps the index of a keyword of the prefilter to the ordinal of the priority. */
+    private final int[] keywordPriority;
+    private final List<String> literals = new ArrayList<String>();
+    private boolean isComplete = true;
+    private boolean ignoreCase;
+    private long deadline = TaskScanner.NO_DEADLINE;
+
+    /**
+     * Creates a new instance of {@link RegexpTagMatcher}.
+     *
+     * @param patterns
+     *            the regular expressions of each priority. Each expression must match the whole line and provide the
+     *            tag in group 1 and the message in group 2.
+     */
+    RegexpTagMatcher(final Map<Priority, Pattern> patterns) {
+        List<Integer> priorities = new ArrayList<Integer>();
+        for (Priority priority : Priority.values()) {
+            Pattern pattern = patterns.get(priority);
+            if (pattern != null) {
+                matchers[priority.ordinal()] = pattern.matcher("");
+                String literal = RequiredLiteral.find(pattern);
+                if (literal != null) {
+                    hasLiteral[priority.ordinal()] = true;
+                    literals.add(literal);
+                    priorities.add(priority.ordinal());
+                    ignoreCase |= (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+                }
+                else {
+                    isComplete = false;
+                }
+            }
+        }
+
+        if (literals.isEmpty()) {
+            prefilter = null;
+            keywordPriority = new int[0];
+        }
+        else {
+            prefilter = new KeywordAutomaton(literals, ignoreCase);
+            keywordPriority = new int[priorities.size()];
+            for (int i = 0; i < keywordPriority.length; i++) {
+                keywordPriority[i] = priorities.get(i);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getRequiredLiterals() {
+        if (isComplete) {
+            return Collections.unmodifiableList(literals);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isIgnoringCase() {
+        return ignoreCase;
+    }
+
+    @Override
+    public void setDeadline(final long deadline) {
+        this.deadline = deadline;
+    }
+
+    @Override
+    public List<TagMatch> match(final String line) {
+        findCandidates(line);
+        CharSequence input;
+        if (deadline == TaskScanner.NO_DEADLINE) {
+            input = line;
+        }
+        else {
+            input = new DeadlineCharSequence(line, deadline);
+        }
+
+        List<TagMatch> matches = null;
+        for (Priority priority : Priority.values()) {
+            int ordinal = priority.ordinal();
+            Matcher matcher = matchers[ordinal];
+            if (matcher != null && (isCandidate[ordinal] || !hasLiteral[ordinal])) {
+                matcher.reset(input);
+                if (matcher.matches() && matcher.groupCount() == 2) {
+                    if (matches == null) {
+                        matches = new ArrayList<TagMatch>();
+                    }
+                    matches.add(new TagMatch(priority, matcher.group(1), matcher.group(2)));
+                }
+            }
+        }
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        return matches;
+    }
+
+    /**
+     * Marks all priorities whose literal is part of the specified line as candidates.
+     *
+     * @param line
+     *            the line to scan
+     */
+    private void findCandidates(final String line) {
+        Arrays.fill(isCandidate, false);
+        if (prefilter == null) {
+            return;
+        }
+
+        int remaining = keywordPriority.length;
+        int state = KeywordAutomaton.START;
+        int length = line.length();
+        for (int position = 0; position < length; position++) {
+            state = prefilter.next(state, line.charAt(position));
+            int[] keywords = prefilter.getKeywords(state);
+            if (keywords != null) {
+                for (int keyword : keywords) {
+                    int priority = keywordPriority[keyword];
+                    if (!isCandidate[priority]) {
+                        isCandidate[priority] = true;
+                        remaining--;
+                        if (remaining == 0) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A line that throws a {@link ScanTimeoutException} if its characters are accessed after the deadline. Evaluating
+     * a regular expression with catastrophic backtracking then is canceled as well.
+     */
+    private static class DeadlineCharSequence implements CharSequence {
+        /** Number of character accesses between two checks of the time. */
+        private static final int CHECK_INTERVAL = 4096;
+
+        private final String line;
+        private final long deadline;
+        private int accesses;
+
+        DeadlineCharSequence(final String line, final long deadline) {
+            this.line = line;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int length() {
+            return line.length();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            accesses++;
+            if (accesses % CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                throw new ScanTimeoutException();
+            }
+            return line.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return line.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return line;
+        }
+    }
+}
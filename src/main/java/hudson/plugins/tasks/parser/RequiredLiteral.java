@@ -0,0 +1,334 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Extracts a literal from a regular expression that is part of every text that is matched by the expression. If a
+ * line does not contain this literal, then the expression can't match the line. The extraction is conservative: every
+ * construct that is not understood results in no literal at all.
+ *
+ * @author Ulli Hafner
+ */
+final class RequiredLiteral {
+    /** Escape sequences without arguments that do not represent a literal character. */
+    private static final String SIMPLE_ESCAPES = "bBAGZzdDsSwWhHvVRXntrfae";
+
+    private final String regexp;
+    private int position;
+
+    /**
+     * Returns the longest literal that is part of every text that is matched by the specified pattern.
+     *
+     * @param pattern
+     *            the pattern to analyze
+     * @return the literal or {@code null} if no literal could be found
+     */
+    static String find(final Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return null;
+        }
+        try {
+            RequiredLiteral parser = new RequiredLiteral(pattern.pattern());
+            List<String> literals = parser.parseSequence();
+            if (parser.position < parser.regexp.length()) {
+                return null;
+            }
+            String longest = null;
+            for (String literal : literals) {
+                if (longest == null || literal.length() > longest.length()) {
+                    longest = literal;
+                }
+            }
+            return longest;
+        }
+        catch (UnsupportedConstructException exception) {
+            return null;
+        }
+    }
+
+    private RequiredLiteral(final String regexp) {
+        this.regexp = regexp;
+    }
+
+    /**
+     * Parses a sequence of atoms up to the end of the enclosing group.
+     *
+     * @return the literals that are part of every match of the sequence
+     * @throws UnsupportedConstructException
+     *             if the sequence contains a construct that is not understood
+     */
+    private List<String> parseSequence() throws UnsupportedConstructException {
+        List<String> literals = new ArrayList<String>();
+        StringBuilder run = new StringBuilder();
+        boolean isAlternation = false;
+        while (position < regexp.length() && current() != ')') {
+            char character = current();
+            if (character == '|') {
+                isAlternation = true;
+                position++;
+                flush(run, literals);
+                continue;
+            }
+
+            String literal = null;
+            List<String> groupLiterals = null;
+            if (character == '\\') {
+                literal = parseEscape();
+            }
+            else if (character == '[') {
+                skipCharacterClass();
+            }
+            else if (character == '(') {
+                groupLiterals = parseGroup();
+            }
+            else if (character == '.' || character == '^' || character == '$') {
+                position++;
+            }
+            else if (character == '*' || character == '+' || character == '?' || character == '{') {
+                throw new UnsupportedConstructException();
+            }
+            else if (Character.isHighSurrogate(character) && position + 1 < regexp.length()) {
+                literal = regexp.substring(position, position + 2);
+                position += 2;
+            }
+            else {
+                literal = String.valueOf(character);
+                position++;
+            }
+
+            int minimum = parseQuantifier();
+            if (literal != null && !literal.isEmpty()) {
+                int last = literal.length() - (Character.isLowSurrogate(literal.charAt(literal.length() - 1)) ? 2 : 1);
+                run.append(literal, 0, last);
+                if (minimum == 0) {
+                    flush(run, literals);
+                }
+                else {
+                    run.append(literal, last, literal.length());
+                    if (minimum > 1) {
+                        flush(run, literals);
+                    }
+                }
+            }
+            else {
+                flush(run, literals);
+                if (groupLiterals != null && minimum > 0) {
+                    literals.addAll(groupLiterals);
+                }
+            }
+        }
+        flush(run, literals);
+
+        if (isAlternation) {
+            literals.clear();
+        }
+        return literals;
+    }
+
+    private char current() {
+        return regexp.charAt(position);
+    }
+
+    private void flush(final StringBuilder run, final List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Parses an escape sequence.
+     *
+     * @return the escaped literal, or {@code null} if the escape sequence does not represent a literal
+     * @throws UnsupportedConstructException
+     *             if the construct is not understood
+     */
+    private String parseEscape() throws UnsupportedConstructException {
+        position++;
+        char escaped = next();
+        if (escaped == 'Q') {
+            int end = regexp.indexOf("\\E", position);
+            if (end < 0) {
+                end = regexp.length();
+            }
+            String quoted = regexp.substring(position, end);
+            position = Math.min(end + 2, regexp.length());
+            return quoted;
+        }
+        if (!Character.isLetterOrDigit(escaped)) {
+            return String.valueOf(escaped);
+        }
+        if (SIMPLE_ESCAPES.indexOf(escaped) >= 0) {
+            return null;
+        }
+        if (escaped == 'p' || escaped == 'P' || escaped == 'x' || escaped == 'N') {
+            if (position < regexp.length() && current() == '{') {
+                skipTo('}');
+            }
+            else if (escaped == 'x') {
+                skip(2);
+            }
+            else if (escaped == 'N') {
+                throw new UnsupportedConstructException();
+            }
+            else {
+                skip(1);
+            }
+        }
+        else if (escaped == 'u') {
+            skip(4);
+        }
+        else if (escaped == 'c') {
+            skip(1);
+        }
+        else if (escaped == 'k') {
+            skipTo('>');
+        }
+        else if (escaped >= '0' && escaped <= '9') {
+            while (position < regexp.length() && Character.isDigit(current())) {
+                position++;
+            }
+        }
+        else {
+            throw new UnsupportedConstructException();
+        }
+        return null;
+    }
+
+    private char next() throws UnsupportedConstructException {
+        if (position >= regexp.length()) {
+            throw new UnsupportedConstructException();
+        }
+        return regexp.charAt(position++);
+    }
+
+    private void skip(final int count) throws UnsupportedConstructException {
+        for (int i = 0; i < count; i++) {
+            next();
+        }
+    }
+
+    private void skipTo(final char end) throws UnsupportedConstructException {
+        while (next() != end) {
+            // skip content
+        }
+    }
+
+    private void skipCharacterClass() throws UnsupportedConstructException {
+        position++;
+        if (position < regexp.length() && current() == '^') {
+            position++;
+        }
+        if (position < regexp.length() && current() == ']') {
+            position++;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            char character = next();
+            if (character == '\\') {
+                if (next() == 'Q') {
+                    skipTo('\\');
+                    next();
+                }
+            }
+            else if (character == '[') {
+                depth++;
+            }
+            else if (character == ']') {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Parses a group.
+     *
+     * @return the literals that are part of every match of the group
+     * @throws UnsupportedConstructException
+     *             if the group contains a construct that is not understood
+     */
+    private List<String> parseGroup() throws UnsupportedConstructException {
+        position++;
+        boolean isLookAround = false;
+        if (position < regexp.length() && current() == '?') {
+            position++;
+            char type = next();
+            if (type == '=' || type == '!') {
+                isLookAround = true;
+            }
+            else if (type == '<') {
+                char name = next();
+                if (name == '=' || name == '!') {
+                    isLookAround = true;
+                }
+                else {
+                    skipTo('>');
+                }
+            }
+            else if (type != ':' && type != '>') {
+                throw new UnsupportedConstructException(); // embedded flags
+            }
+        }
+        List<String> literals = parseSequence();
+        if (next() != ')') {
+            throw new UnsupportedConstructException();
+        }
+        if (isLookAround) {
+            literals.clear();
+        }
+        return literals;
+    }
+
+    /**
+     * Parses an optional quantifier.
+     *
+     * @return the minimum number of repetitions of the previous atom
+     * @throws UnsupportedConstructException
+     *             if the construct is not understood
+     */
+    private int parseQuantifier() throws UnsupportedConstructException {
+        if (position >= regexp.length()) {
+            return 1;
+        }
+        int minimum;
+        char character = current();
+        if (character == '?' || character == '*') {
+            minimum = 0;
+            position++;
+        }
+        else if (character == '+') {
+            minimum = 2;
+            position++;
+        }
+        else if (character == '{') {
+            position++;
+            int start = position;
+            while (position < regexp.length() && Character.isDigit(current())) {
+                position++;
+            }
+            if (start == position) {
+                throw new UnsupportedConstructException();
+            }
+            minimum = StringUtils.containsOnly(regexp.substring(start, position), "0") ? 0 : 2;
+            skipTo('}');
+        }
+        else {
+            return 1;
+        }
+        if (position < regexp.length() && (current() == '?' || current() == '+')) {
+            position++;
+        }
+        return minimum;
+    }
+
+    /**
+     * Thrown if the regular expression contains a construct that is not understood, so no literal can be extracted.
+     */
+    private static class UnsupportedConstructException extends Exception {
+        private static final long serialVersionUID = 1707295232946283316L;
+    }
+}
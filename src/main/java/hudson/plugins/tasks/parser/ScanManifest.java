@@ -0,0 +1,352 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Remembers the tasks of the files of a workspace so that unchanged files do not need to be scanned again. For each
+ * file the size, the time of the last modification, a hash of the content and the found tasks are stored. The
+ * manifest is stored in the workspace and is valid only for the configuration it has been created with: if the
+ * tags, the encoding or the workspace location change, then all entries are discarded.
+ * <p>
+ * A file is considered to be unchanged if size and modification time did not change and the file has not been
+ * modified shortly before the manifest has been created (in this case the file could have been changed again
+ * without changing the modification time). Otherwise, if the size did not change, the hash of the content is
+ * compared before the file is scanned: if the content hash did not change, the previously found tasks are reused.
+ * </p>
+ * <p>
+ * The manifest is stored as plain data records followed by the tasks in the format of the {@link TaskStore}, so
+ * that a manifest that has been committed to or planted in the workspace can't make the scanner instantiate
+ * arbitrary classes. A manifest that can't be parsed is ignored.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class ScanManifest {
+    /** Name of the manifest file in the workspace. */
+    static final String FILE_NAME = ".tasks-manifest.bin";
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x5441534D;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 1;
+    /** Maximum resolution of file modification times of the supported file systems. */
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private final String configuration;
+    private final long timestamp;
+    private final Map<String, Entry> entries;
+    private final Map<String, Entry> previous;
+    private final AtomicInteger reused;
+
+    /**
+     * Creates a new instance of {@link ScanManifest}.
+     *
+     * @param configuration
+     *            the configuration of the scanner that creates the entries
+     * @param previous
+     *            the entries of the previous scan
+     */
+    private ScanManifest(final String configuration, final Map<String, Entry> previous) {
+        this(configuration, previous, System.currentTimeMillis());
+    }
+
+    private ScanManifest(final String configuration, final Map<String, Entry> previous, final long timestamp) {
+        this.configuration = configuration;
+        this.previous = previous;
+        this.timestamp = timestamp;
+        reused = new AtomicInteger();
+        entries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * Loads the manifest of the specified workspace. If there is no manifest yet, or the manifest has been created
+     * with a different configuration, then an empty manifest is returned.
+     *
+     * @param workspace
+     *            the workspace
+     * @param configuration
+     *            the configuration of the scanner
+     * @return the manifest
+     */
+    static ScanManifest load(final File workspace, final String configuration) {
+        File file = new File(workspace, FILE_NAME);
+        if (file.isFile()) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                ScanManifest stored = read(input, file.length());
+                if (configuration.equals(stored.configuration)) {
+                    return new ScanManifest(configuration, stored.getTrustedEntries());
+                }
+            }
+            catch (IOException exception) {
+                // ignore and start with an empty manifest
+            }
+            catch (RuntimeException exception) {
+                // ignore and start with an empty manifest
+            }
+            finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return new ScanManifest(configuration, Collections.<String, Entry>emptyMap());
+    }
+
+    /**
+     * Reads the entries of a stored manifest.
+     *
+     * @param input
+     *            the stream to read
+     * @param length
+     *            the length of the file, used to reject malformed sizes
+     * @return the stored manifest
+     * @throws IOException
+     *             if the stream could not be read or is not a valid manifest
+     */
+    private static ScanManifest read(final DataInputStream input, final long length) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a scan manifest");
+        }
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version " + version);
+        }
+        String configuration = new String(readBytes(input, length), TaskReader.ENCODING);
+        long timestamp = input.readLong();
+        int numberOfEntries = readSize(input, length);
+
+        String[] fileNames = new String[numberOfEntries];
+        Entry[] stored = new Entry[numberOfEntries];
+        int[] numberOfTasks = new int[numberOfEntries];
+        for (int i = 0; i < numberOfEntries; i++) {
+            fileNames[i] = new String(readBytes(input, length), TaskReader.ENCODING);
+            long size = input.readLong();
+            long lastModified = input.readLong();
+            byte[] hash = readBytes(input, length);
+            numberOfTasks[i] = readSize(input, length);
+            stored[i] = new Entry(size, lastModified, hash, new ArrayList<Task>(numberOfTasks[i]));
+        }
+        List<Task> tasks = TaskStore.read(input, length);
+
+        Map<String, Entry> entries = new HashMap<String, Entry>(numberOfEntries);
+        int position = 0;
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (position + numberOfTasks[i] > tasks.size()) {
+                throw new StreamCorruptedException("Missing tasks of " + fileNames[i]);
+            }
+            stored[i].tasks.addAll(tasks.subList(position, position + numberOfTasks[i]));
+            position += numberOfTasks[i];
+            entries.put(fileNames[i], stored[i]);
+        }
+        ScanManifest manifest = new ScanManifest(configuration, Collections.<String, Entry>emptyMap(), timestamp);
+        manifest.entries.putAll(entries);
+        return manifest;
+    }
+
+    private static int readSize(final DataInputStream input, final long length) throws IOException {
+        int size = input.readInt();
+        if (size < 0 || size > length) {
+            throw new StreamCorruptedException("Malformed size " + size);
+        }
+        return size;
+    }
+
+    private static byte[] readBytes(final DataInputStream input, final long length) throws IOException {
+        byte[] bytes = new byte[readSize(input, length)];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private Map<String, Entry> getTrustedEntries() {
+        Map<String, Entry> trusted = new HashMap<String, Entry>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            boolean isRacy = value.lastModified + TIMESTAMP_RESOLUTION >= timestamp;
+            trusted.put(entry.getKey(), isRacy ? value.withoutTimestamp() : value);
+        }
+        return trusted;
+    }
+
+    /**
+     * Stores this manifest in the specified workspace. The manifest contains only the files that have been added
+     * to this manifest, i.e. the files of the current scan. The manifest is written to a temporary file that is
+     * renamed afterwards, so that an aborted build does not leave a truncated manifest.
+     *
+     * @param workspace
+     *            the workspace
+     * @throws IOException
+     *             if the manifest could not be written
+     */
+    void save(final File workspace) throws IOException {
+        File file = new File(workspace, FILE_NAME);
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            writeBytes(output, configuration.getBytes(TaskReader.ENCODING));
+            output.writeLong(timestamp);
+
+            Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+            List<Task> tasks = new ArrayList<Task>();
+            output.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                Entry value = entry.getValue();
+                writeBytes(output, entry.getKey().getBytes(TaskReader.ENCODING));
+                output.writeLong(value.size);
+                output.writeLong(value.lastModified);
+                writeBytes(output, value.hash);
+                output.writeInt(value.tasks.size());
+                tasks.addAll(value.tasks);
+            }
+            TaskStore.write(tasks, output);
+            TaskStore.sync(output, stream);
+        }
+        finally {
+            output.close();
+        }
+        TaskStore.replace(temporary, file);
+    }
+
+    private void writeBytes(final DataOutputStream output, final byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Returns the tasks of the specified file if the file has not been changed since the last scan. In this case
+     * the file is added to this manifest.
+     *
+     * @param fileName
+     *            the name of the file relative to the workspace
+     * @param size
+     *            the size of the file
+     * @param lastModified
+     *            the time of the last modification of the file
+     * @return the tasks, or {@code null} if the file needs to be scanned
+     */
+    Collection<Task> getUnchanged(final String fileName, final long size, final long lastModified) {
+        Entry entry = previous.get(fileName);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            entries.put(fileName, entry);
+            reused.incrementAndGet();
+            return entry.copyTasks();
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the specified file might be unchanged since the last scan even though its time of the last
+     * modification changed, i.e. whether the hash of its content should be compared before the file is scanned.
+     *
+     * @param fileName
+     *            the name of the file relative to the workspace
+     * @param size
+     *            the size of the file
+     * @return {@code true} if the file has been scanned before and has the same size
+     */
+    boolean isCandidate(final String fileName, final long size) {
+        Entry entry = previous.get(fileName);
+        return entry != null && entry.size == size;
+    }
+
+    /**
+     * Returns the tasks of the specified file if the content of the file has not been changed since the last
+     * scan. In this case the file is added to this manifest.
+     *
+     * @param fileName
+     *            the name of the file relative to the workspace
+     * @param size
+     *            the size of the file
+     * @param lastModified
+     *            the time of the last modification of the file
+     * @param hash
+     *            the hash of the content of the file
+     * @return the tasks, or {@code null} if the found tasks need to be classified
+     */
+    Collection<Task> getUnchanged(final String fileName, final long size, final long lastModified, final byte[] hash) {
+        Entry entry = previous.get(fileName);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            entries.put(fileName, new Entry(size, lastModified, hash, entry.tasks));
+            reused.incrementAndGet();
+            return entry.copyTasks();
+        }
+        return null;
+    }
+
+    /**
+     * Adds the tasks of a scanned file to this manifest.
+     *
+     * @param fileName
+     *            the name of the file relative to the workspace
+     * @param size
+     *            the size of the file
+     * @param lastModified
+     *            the time of the last modification of the file
+     * @param hash
+     *            the hash of the content of the file
+     * @param tasks
+     *            the classified tasks of the file
+     */
+    void add(final String fileName, final long size, final long lastModified, final byte[] hash,
+            final Collection<Task> tasks) {
+        entries.put(fileName, new Entry(size, lastModified, hash, new ArrayList<Task>(tasks)));
+    }
+
+    /**
+     * Returns the number of files whose tasks have been reused from the previous scan.
+     *
+     * @return the number of reused files
+     */
+    int getNumberOfReusedFiles() {
+        return reused.get();
+    }
+
+    /**
+     * The properties and tasks of a file.
+     */
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+        private final List<Task> tasks;
+
+        Entry(final long size, final long lastModified, final byte[] hash, final List<Task> tasks) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.tasks = tasks;
+        }
+
+        Entry withoutTimestamp() {
+            return new Entry(size, -1, hash, tasks);
+        }
+
+        Collection<Task> copyTasks() {
+            List<Task> copies = new ArrayList<Task>(tasks.size());
+            for (Task task : tasks) {
+                copies.add(task.copy());
+            }
+            return copies;
+        }
+    }
+}
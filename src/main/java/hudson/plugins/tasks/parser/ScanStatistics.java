@@ -0,0 +1,329 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the phases of a scan for open tasks: for each phase the wall time, the number of bytes read, and the
+ * number of files, lines and tasks that have been processed are recorded. The statistics are created on the agent
+ * by the {@link WorkspaceScanner}, completed on the controller by the publisher and stored with the result of the
+ * build.
+ * <p>
+ * This class is not thread safe: each thread needs to use its own instance, the instances are combined using
+ * {@link #add(ScanStatistics)}. The time of a phase that is executed by several threads in parallel is the sum of
+ * the times of all threads, so it may exceed the wall time of the whole scan, see {@link #getScanTime()}.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public class ScanStatistics implements Serializable {
+    private static final long serialVersionUID = -1604883960406766617L;
+
+    private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+    private static final long KILOBYTE = 1024;
+
+    /**
+     * The phases of a scan, in the order of their execution.
+     */
+    public enum Phase {
+        /** Detection of the modules of the workspace. */
+        MODULES("module detection"),
+        /** Enumeration of the files that match the file-set patterns. */
+        ENUMERATION("file enumeration"),
+        /** Reading of the files into memory. */
+        READING("reading"),
+        /** Matching of the tags in the files. */
+        MATCHING("matching"),
+        /** Computation of the context hash codes of the tasks. */
+        CONTEXT_HASHING("context hashing"),
+        /** Detection of the packages of the files with tasks. */
+        PACKAGES("package detection"),
+        /** Transfer of the tasks from the agent to the controller. */
+        TRANSFER("transfer"),
+        /** Carry over of the tasks of unchanged files from the reference build. */
+        CARRY_OVER("carry over"),
+        /** Assignment of the SCM authors to the tasks. */
+        BLAME("blame"),
+        /**
+         * Serialization of the tasks into the build folder. The tasks are now written in the background, so this
+         * phase is no longer measured. It is kept to read the statistics of older builds.
+         */
+        @Deprecated
+        SERIALIZATION("serialization"),
+        /** Creation of the result: the new and fixed tasks, the totals, and the submission of the background write. */
+        RESULT("result creation");
+
+        private final String displayName;
+
+        Phase(final String displayName) {
+            this.displayName = displayName;
+        }
+
+        /**
+         * Returns the name of this phase as shown in the console log.
+         *
+         * @return the display name
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final EnumMap<Phase, Measurement> measurements = new EnumMap<Phase, Measurement>(Phase.class);
+    /** The wall time of the scan of the workspace in nanoseconds. */
+    private long scanTime;
+
+    /**
+     * Records the wall time of the specified phase.
+     *
+     * @param phase
+     *            the phase
+     * @param nanoseconds
+     *            the time in nanoseconds
+     * @return the measurement of the phase to record additional counters
+     */
+    public Measurement addTime(final Phase phase, final long nanoseconds) {
+        Measurement measurement = get(phase);
+        measurement.time += nanoseconds;
+        return measurement;
+    }
+
+    /**
+     * Records the wall time of the specified phase that started at the specified time and ends now.
+     *
+     * @param phase
+     *            the phase
+     * @param start
+     *            the start of the phase, see {@link System#nanoTime()}
+     * @return the measurement of the phase to record additional counters
+     */
+    public Measurement stop(final Phase phase, final long start) {
+        return addTime(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the measurement of the specified phase. If the phase has not been measured yet, then an empty
+     * measurement is created.
+     *
+     * @param phase
+     *            the phase
+     * @return the measurement
+     */
+    public Measurement get(final Phase phase) {
+        Measurement measurement = measurements.get(phase);
+        if (measurement == null) {
+            measurement = new Measurement();
+            measurements.put(phase, measurement);
+        }
+        return measurement;
+    }
+
+    /**
+     * Returns the measured phases.
+     *
+     * @return the phases that have been measured, mapped to the measurement
+     */
+    public Map<Phase, Measurement> getMeasurements() {
+        return Collections.unmodifiableMap(measurements);
+    }
+
+    /**
+     * Adds the measurements of the specified statistics to these statistics.
+     *
+     * @param other
+     *            the statistics to add
+     */
+    public void add(final ScanStatistics other) {
+        for (Map.Entry<Phase, Measurement> entry : other.measurements.entrySet()) {
+            get(entry.getKey()).add(entry.getValue());
+        }
+    }
+
+    /**
+     * Sets the wall time of the scan of the workspace, i.e. the time of all phases before the transfer of the
+     * tasks to the controller.
+     *
+     * @param nanoseconds
+     *            the time in nanoseconds
+     */
+    public void setScanTime(final long nanoseconds) {
+        scanTime = nanoseconds;
+    }
+
+    /**
+     * Returns the wall time of the scan of the workspace.
+     *
+     * @return the time in milliseconds
+     */
+    public long getScanTime() {
+        return scanTime / NANOSECONDS_PER_MILLISECOND;
+    }
+
+    /**
+     * Records the wall time of the remote call that scanned the workspace. The part of the time that has not been
+     * spent in the scan itself is recorded as {@link Phase#TRANSFER transfer} of the tasks.
+     *
+     * @param start
+     *            the start of the remote call, see {@link System#nanoTime()}
+     */
+    public void stopRemoteCall(final long start) {
+        addTime(Phase.TRANSFER, Math.max(0, System.nanoTime() - start - scanTime));
+    }
+
+    /**
+     * Returns a compact summary of these statistics for the console log, one line per phase.
+     *
+     * @return the summary lines
+     */
+    public List<String> getSummary() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<Phase, Measurement> entry : measurements.entrySet()) {
+            lines.add(String.format("%-19s %s", entry.getKey().getDisplayName() + ":", entry.getValue()));
+        }
+        lines.add(String.format("%-19s %d ms", "scan of workspace:", getScanTime()));
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return getSummary().toString();
+    }
+
+    /**
+     * The wall time and counters of a phase.
+     */
+    public static class Measurement implements Serializable {
+        private static final long serialVersionUID = 2896412963052938566L;
+
+        /** The wall time in nanoseconds. */
+        private long time;
+        private long bytes;
+        private int files;
+        private long lines;
+        private int tasks;
+
+        /**
+         * Records the specified number of bytes read.
+         *
+         * @param newBytes
+         *            the number of bytes
+         * @return this measurement
+         */
+        public Measurement addBytes(final long newBytes) {
+            bytes += newBytes;
+            return this;
+        }
+
+        /**
+         * Records the specified number of processed files.
+         *
+         * @param newFiles
+         *            the number of files
+         * @return this measurement
+         */
+        public Measurement addFiles(final int newFiles) {
+            files += newFiles;
+            return this;
+        }
+
+        /**
+         * Records the specified number of processed lines.
+         *
+         * @param newLines
+         *            the number of lines
+         * @return this measurement
+         */
+        public Measurement addLines(final long newLines) {
+            lines += newLines;
+            return this;
+        }
+
+        /**
+         * Records the specified number of found or processed tasks.
+         *
+         * @param newTasks
+         *            the number of tasks
+         * @return this measurement
+         */
+        public Measurement addTasks(final int newTasks) {
+            tasks += newTasks;
+            return this;
+        }
+
+        private void add(final Measurement other) {
+            time += other.time;
+            bytes += other.bytes;
+            files += other.files;
+            lines += other.lines;
+            tasks += other.tasks;
+        }
+
+        /**
+         * Returns the wall time of this phase.
+         *
+         * @return the time in milliseconds
+         */
+        public long getTime() {
+            return time / NANOSECONDS_PER_MILLISECOND;
+        }
+
+        /**
+         * Returns the number of bytes read in this phase.
+         *
+         * @return the number of bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of files processed in this phase.
+         *
+         * @return the number of files
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the number of lines processed in this phase.
+         *
+         * @return the number of lines
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns the number of tasks found or processed in this phase.
+         *
+         * @return the number of tasks
+         */
+        public int getTasks() {
+            return tasks;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder();
+            summary.append(getTime()).append(" ms");
+            if (bytes > 0) {
+                summary.append(", ").append(bytes / KILOBYTE).append(" KB");
+            }
+            if (files > 0) {
+                summary.append(", ").append(files).append(" files");
+            }
+            if (lines > 0) {
+                summary.append(", ").append(lines).append(" lines");
+            }
+            if (tasks > 0) {
+                summary.append(", ").append(tasks).append(" tasks");
+            }
+            return summary.toString();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package hudson.plugins.tasks.parser;
+
+/**
+ * Indicates that the deadline of a scan has been exceeded while a line has been matched.
+ *
+ * @author Ulli Hafner
+ */
+class ScanTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = -3264931547203711094L;
+
+    /**
+     * Creates a new instance of {@link ScanTimeoutException}.
+     */
+    ScanTimeoutException() {
+        super("Time limit exceeded");
+    }
+}
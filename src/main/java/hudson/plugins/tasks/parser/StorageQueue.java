@@ -0,0 +1,235 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the tasks of builds in the background, so that the publisher does not need to wait until the tasks have
+ * been written. Until the tasks of a build have been written, the tasks are kept in memory and are returned by
+ * {@link #getPending(String)}. The number of threads and of waiting writes is bounded: if all threads are busy and
+ * the queue is full, then the tasks are written by the thread that submits them.
+ * <p>
+ * The writes of the same key are serialized: a key is written by at most one thread at a time, and if the tasks of
+ * a key are submitted again before the previous write has been started, then only the last tasks are written. So
+ * the last submission always wins.
+ * </p>
+ * <p>
+ * The writes themselves need to be atomic, i.e. write a temporary file and rename it, so that an abrupt shutdown
+ * never leaves a partially written file. On a regular shutdown {@link #awaitAll(long)} waits for the pending writes,
+ * and {@link #writeQueued()} writes the tasks that are still waiting for a thread.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the tasks in memory
+ * @author Ulli Hafner
+ */
+public class StorageQueue<V> {
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, Pending<V>> pending = new ConcurrentHashMap<String, Pending<V>>();
+    /** The keys that are written by a thread or wait for a thread, guarded by the map of pending writes. */
+    private final Set<String> scheduled = new HashSet<String>();
+
+    /**
+     * Creates a new instance of {@link StorageQueue}.
+     *
+     * @param threads
+     *            the number of threads that write the tasks
+     * @param capacity
+     *            the number of writes that may wait for a thread
+     */
+    public StorageQueue(final int threads, final int capacity) {
+        executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(capacity), new StorageThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Writes the specified tasks in the background. If the tasks of the same key are still waiting for a thread,
+     * then these tasks are replaced. If the tasks of the same key are being written, then the specified tasks are
+     * written afterwards.
+     *
+     * @param key
+     *            the key of the tasks, e.g. the folder of the build
+     * @param value
+     *            the tasks, returned by {@link #getPending(String)} until the tasks have been written
+     * @param write
+     *            writes the tasks, all errors need to be handled by the write
+     */
+    public void submit(final String key, final V value, final Runnable write) {
+        Pending<V> entry = new Pending<V>(value, write);
+        synchronized (pending) {
+            Pending<V> previous = pending.put(key, entry);
+            if (previous != null && !previous.isStarted) {
+                previous.done.countDown(); // replaced before it has been written
+            }
+            if (!scheduled.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Writer(key));
+    }
+
+    /**
+     * Returns the tasks with the specified key if they have not been written yet.
+     *
+     * @param key
+     *            the key of the tasks
+     * @return the tasks, or {@code null} if the tasks have been written
+     */
+    public V getPending(final String key) {
+        Pending<V> entry = pending.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Returns the number of tasks that have not been written yet.
+     *
+     * @return the number of pending writes
+     */
+    public int getNumberOfPendingWrites() {
+        return pending.size();
+    }
+
+    /**
+     * Waits until the tasks with the specified key have been written.
+     *
+     * @param key
+     *            the key of the tasks
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return {@code true} if the tasks have been written, {@code false} if the timeout elapsed
+     * @throws InterruptedException
+     *             if the thread has been interrupted while waiting
+     */
+    public boolean await(final String key, final long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Pending<V> entry = pending.get(key); entry != null; entry = pending.get(key)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !entry.done.await(remaining, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all pending tasks have been written.
+     *
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return {@code true} if all tasks have been written, {@code false} if the timeout elapsed
+     * @throws InterruptedException
+     *             if the thread has been interrupted while waiting
+     */
+    public boolean awaitAll(final long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        for (String key : getPendingKeys()) {
+            if (!await(key, deadline - System.currentTimeMillis())) {
+                return pending.isEmpty();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the tasks that are still waiting for a thread in the calling thread. Writes that have already been
+     * started by a thread are not affected.
+     *
+     * @return the number of writes that have been performed
+     */
+    public int writeQueued() {
+        List<Runnable> queued = new ArrayList<Runnable>();
+        executor.getQueue().drainTo(queued);
+        for (Runnable write : queued) {
+            write.run();
+        }
+        return queued.size();
+    }
+
+    /**
+     * Returns the keys of the tasks that have not been written yet.
+     *
+     * @return the keys of the pending writes
+     */
+    public Set<String> getPendingKeys() {
+        return new TreeSet<String>(pending.keySet());
+    }
+
+    /**
+     * Writes the tasks of a key until no more tasks of the key are pending.
+     */
+    private class Writer implements Runnable {
+        private final String key;
+
+        Writer(final String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Pending<V> entry;
+                synchronized (pending) {
+                    entry = pending.get(key);
+                    if (entry == null) {
+                        scheduled.remove(key);
+                        return;
+                    }
+                    entry.isStarted = true;
+                }
+                try {
+                    entry.write.run();
+                }
+                finally {
+                    pending.remove(key, entry);
+                    entry.done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tasks that have not been written yet.
+     *
+     * @param <V>
+     *            the type of the tasks in memory
+     */
+    private static class Pending<V> {
+        private final V value;
+        private final Runnable write;
+        private final CountDownLatch done = new CountDownLatch(1);
+        /** Determines whether the write has been started, guarded by the map of pending writes. */
+        private boolean isStarted;
+
+        Pending(final V value, final Runnable write) {
+            this.value = value;
+            this.write = write;
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that the threads do not prevent the JVM from exiting.
+     */
+    private static class StorageThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "Open tasks storage " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
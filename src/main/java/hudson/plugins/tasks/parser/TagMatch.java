@@ -0,0 +1,42 @@
+package hudson.plugins.tasks.parser;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * A task tag that has been found in a line of a scanned file.
+ *
+ * @author Ulli Hafner
+ */
+class TagMatch {
+    private final Priority priority;
+    private final String tag;
+    private final String message;
+
+    /**
+     * Creates a new instance of {@link TagMatch}.
+     *
+     * @param priority
+     *            the priority of the matching tag
+     * @param tag
+     *            the matching tag, as written in the scanned line
+     * @param message
+     *            the text that follows the tag in the scanned line
+     */
+    TagMatch(final Priority priority, final String tag, final String message) {
+        this.priority = priority;
+        this.tag = tag;
+        this.message = message;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
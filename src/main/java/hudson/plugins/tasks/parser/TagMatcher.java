@@ -0,0 +1,43 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.List;
+
+/**
+ * Finds the task tags of all priorities in a line.
+ *
+ * @author Ulli Hafner
+ */
+interface TagMatcher {
+    /**
+     * Finds the tags in the specified line.
+     *
+     * @param line
+     *            the line to scan
+     * @return the found tags, at most one for each priority. The matches are ordered by priority.
+     */
+    List<TagMatch> match(String line);
+
+    /**
+     * Returns literals so that every line that contains a tag contains at least one of these literals. The literals
+     * can be used to skip lines or files without a tag.
+     *
+     * @return the literals, or {@code null} if there is no such set of literals
+     */
+    List<String> getRequiredLiterals();
+
+    /**
+     * Returns whether the case of US-ASCII characters in the required literals should be ignored.
+     *
+     * @return {@code true} if case should be ignored, {@code false} otherwise
+     */
+    boolean isIgnoringCase();
+
+    /**
+     * Sets the time when the matching should be canceled. If matching a line takes longer, then a
+     * {@link ScanTimeoutException} is thrown. Matchers that need linear time only may ignore the deadline.
+     *
+     * @param deadline
+     *            the deadline in the time base of {@link System#nanoTime()}, or {@link TaskScanner#NO_DEADLINE}
+     */
+    void setDeadline(long deadline);
+}
@@ -17,6 +17,12 @@ public class Task extends AbstractAnnotation {
     /** Origin of the annotation. */
     public static final String ORIGIN = "tasks";
 
+    /**
+     * The key of this task if it has been read from a {@link TaskStore}, {@code null} otherwise. The key is stored by
+     * the {@link TaskStore} only, so it is not part of the XML files of the tasks.
+     */
+    private transient Long storedKey;
+
     /**
      * Creates a new instance of <code>Task</code>.
      *
@@ -35,6 +41,44 @@ public class Task extends AbstractAnnotation {
         setOrigin(ORIGIN);
     }
 
+    /**
+     * Restores the key of a task that has been read from a {@link TaskStore}, so that the key remains the same
+     * whenever the tasks of a build are loaded.
+     *
+     * @param key
+     *            the stored key
+     */
+    void setKey(final long key) {
+        storedKey = key;
+    }
+
+    @Override
+    public long getKey() {
+        if (storedKey == null) {
+            return super.getKey();
+        }
+        return storedKey;
+    }
+
+    /**
+     * Creates a copy of this task with a new key, so that the copy can be added to the tasks of another scan next to
+     * new tasks. The stored key of a task may collide with the keys of the tasks created since the start of the JVM.
+     *
+     * @return the copy
+     */
+    public Task copy() {
+        Task task = new Task(getPriority(), getPrimaryLineNumber(), getType(), getDetailMessage());
+        task.setModuleName(getModuleName());
+        task.setPackageName(getPackageName());
+        task.setFileName(getFileName());
+        task.setPathName(getPathName());
+        task.setContextHashCode(getContextHashCode());
+        task.setAuthorName(getAuthorName());
+        task.setAuthorEmail(getAuthorEmail());
+        task.setCommitId(getCommitId());
+        return task;
+    }
+
     /**
      * Returns the detail message of the task (the text after the task keyword).
      *
@@ -0,0 +1,220 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+
+/**
+ * Keeps the tasks of recently viewed builds in memory, so that the tasks do not need to be read again from the
+ * build folder on each request. The memory of the cached tasks is estimated; if the estimated memory exceeds the
+ * budget, then the tasks that have not been used for the longest time are evicted. The number of hits, misses and
+ * evictions is recorded so that administrators can choose a suitable budget.
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the cached tasks
+ * @author Ulli Hafner
+ */
+public class TaskCache<V> {
+    /** Estimated memory of a task without its strings, including the references of the containers. */
+    static final int TASK_SIZE = 256;
+    /** Estimated memory of a string without its characters. */
+    private static final int STRING_SIZE = 40;
+
+    private final Map<String, Entry<V>> entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+    private long budget;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Estimates the memory of the specified tasks. Only the messages of the tasks are counted, the other strings
+     * are shared by many tasks.
+     *
+     * @param tasks
+     *            the tasks
+     * @return the estimated number of bytes
+     */
+    public static long estimateSize(final Collection<? extends FileAnnotation> tasks) {
+        long bytes = 0;
+        for (FileAnnotation task : tasks) {
+            bytes += TASK_SIZE + STRING_SIZE + 2L * StringUtils.length(task.getMessage());
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates a new instance of {@link TaskCache}.
+     *
+     * @param budget
+     *            the memory budget in bytes
+     */
+    public TaskCache(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the cached tasks with the specified key.
+     *
+     * @param key
+     *            the key of the tasks, e.g. the file the tasks have been read from
+     * @return the tasks, or {@code null} if the tasks are not cached
+     */
+    public synchronized V get(final String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Returns whether the tasks with the specified key are cached. The access is not recorded as hit or miss.
+     *
+     * @param key
+     *            the key of the tasks
+     * @return {@code true} if the tasks are cached
+     */
+    public synchronized boolean contains(final String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Adds the specified tasks to this cache. Tasks that exceed the whole budget are not cached at all.
+     *
+     * @param key
+     *            the key of the tasks
+     * @param value
+     *            the tasks
+     * @param bytes
+     *            the estimated memory of the tasks, see {@link #estimateSize(Collection)}
+     */
+    public synchronized void put(final String key, final V value, final long bytes) {
+        remove(key);
+        if (bytes <= budget) {
+            entries.put(key, new Entry<V>(value, bytes));
+            size += bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the tasks with the specified key from this cache.
+     *
+     * @param key
+     *            the key of the tasks
+     */
+    public synchronized void remove(final String key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.bytes;
+        }
+    }
+
+    /**
+     * Sets the memory budget of this cache. If the cached tasks exceed the new budget, then the tasks that have not
+     * been used for the longest time are evicted.
+     *
+     * @param bytes
+     *            the budget in bytes, 0 disables the cache
+     */
+    public synchronized void setBudget(final long bytes) {
+        budget = Math.max(0, bytes);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (size > budget && eldest.hasNext()) {
+            size -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the memory budget of this cache.
+     *
+     * @return the budget in bytes
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the estimated memory of the cached tasks.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of cached task sets.
+     *
+     * @return the number of entries
+     */
+    public synchronized int getNumberOfEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of requests that have been served from this cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests that required to read the tasks.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of task sets that have been removed to stay within the budget.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d builds, %d of %d KB, %d hits, %d misses, %d evictions", entries.size(),
+                size / 1024, budget / 1024, hits, misses, evictions);
+    }
+
+    /**
+     * Cached tasks together with their estimated memory.
+     *
+     * @param <V>
+     *            the type of the cached tasks
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long bytes;
+
+        Entry(final V value, final long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+
+/**
+ * Stores the tasks of a build as difference to the tasks of a previous build, the keyframe. Since the tasks of
+ * consecutive builds are mostly the same, only the positions of the removed tasks of the keyframe and the added
+ * tasks need to be stored. The keyframe is a {@link TaskStore} that is linked into the folder of the build as hard
+ * link, so the keyframe is still available if the build of the keyframe is deleted, without using additional disk
+ * space.
+ * <p>
+ * All differences refer directly to a keyframe, not to the difference of the previous build, so that reading the
+ * tasks of a build requires at most the keyframe and one difference. The number of builds since the keyframe is
+ * stored so that the caller can write a new keyframe after a number of builds. The positions of the removed tasks
+ * and the keys of the retained tasks are compressed using a {@link java.util.zip.Deflater}.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public final class TaskDelta {
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x54415344;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 2;
+    /** Version of the format without compression, still supported when reading. */
+    private static final int UNCOMPRESSED_VERSION = 1;
+
+    private static final char SEPARATOR = '\0';
+    private static final String NULL_VALUE = "\u0001";
+
+    /**
+     * Returns the hard link of the keyframe of the specified difference.
+     *
+     * @param file
+     *            the file of the difference
+     * @return the keyframe
+     */
+    public static File getKeyframeFile(final File file) {
+        return new File(file.getParentFile(), StringUtils.substringBeforeLast(file.getName(), ".") + ".key");
+    }
+
+    /**
+     * Deletes the specified difference and the hard link of its keyframe.
+     *
+     * @param file
+     *            the file of the difference
+     */
+    public static void delete(final File file) {
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(getKeyframeFile(file));
+    }
+
+    /**
+     * Writes the specified tasks as difference to the specified keyframe. If the difference is larger than half of
+     * the tasks or the keyframe can't be linked, then nothing is written.
+     *
+     * @param annotations
+     *            the tasks to write
+     * @param keyframe
+     *            the keyframe, a file written by {@link TaskStore}
+     * @param distance
+     *            the number of builds since the build of the keyframe
+     * @param file
+     *            the file to write
+     * @return {@code true} if the difference has been written, {@code false} if the tasks should be written as
+     *         keyframe
+     * @throws IOException
+     *             if the keyframe could not be read or the file could not be written
+     */
+    public static boolean write(final Collection<? extends FileAnnotation> annotations, final File keyframe,
+            final int distance, final File file) throws IOException {
+        List<Task> tasks = TaskStore.sort(annotations);
+        List<Task> previous = TaskStore.read(keyframe);
+
+        Map<String, Deque<Integer>> rows = new HashMap<String, Deque<Integer>>();
+        for (int row = 0; row < previous.size(); row++) {
+            String signature = getSignature(previous.get(row));
+            Deque<Integer> positions = rows.get(signature);
+            if (positions == null) {
+                positions = new ArrayDeque<Integer>();
+                rows.put(signature, positions);
+            }
+            positions.add(row);
+        }
+        Task[] retained = new Task[previous.size()];
+        List<Task> added = new ArrayList<Task>();
+        for (Task task : tasks) {
+            Deque<Integer> positions = rows.get(getSignature(task));
+            if (positions == null || positions.isEmpty()) {
+                added.add(task);
+            }
+            else {
+                retained[positions.poll()] = task;
+            }
+        }
+        int removed = previous.size() - (tasks.size() - added.size());
+        if ((removed + added.size()) * 2 > tasks.size()) {
+            return false;
+        }
+
+        File link = getKeyframeFile(file);
+        if (!keyframe.getCanonicalFile().equals(link.getCanonicalFile())) {
+            FileUtils.deleteQuietly(link);
+            try {
+                Files.createLink(link.toPath(), keyframe.toPath());
+            }
+            catch (UnsupportedOperationException exception) {
+                return false;
+            }
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            VarInt.writeNumber(output, distance);
+            VarInt.writeNumber(output, previous.size());
+            byte[] changes = writeChanges(retained, removed);
+            VarInt.writeNumber(output, changes.length);
+            output.write(changes);
+            TaskStore.write(added, output);
+            TaskStore.sync(output, stream);
+        }
+        finally {
+            output.close();
+        }
+        TaskStore.replace(temporary, file);
+        return true;
+    }
+
+    private static byte[] writeChanges(final Task[] retained, final int removed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        VarInt.writeNumber(output, removed);
+        int position = 0;
+        for (int row = 0; row < retained.length; row++) {
+            if (retained[row] == null) {
+                VarInt.writeNumber(output, row - position);
+                position = row;
+            }
+        }
+        long key = 0;
+        for (Task task : retained) {
+            if (task != null) {
+                VarInt.writeSignedNumber(output, task.getKey() - key);
+                key = task.getKey();
+            }
+        }
+        output.close();
+        return TaskStore.deflate(bytes.toByteArray());
+    }
+
+    /**
+     * Returns the number of builds between the build of the specified difference and the build of its keyframe.
+     *
+     * @param file
+     *            the file of the difference
+     * @return the number of builds since the keyframe
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public static int getDistance(final File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readHeader(input);
+            return VarInt.readSize(input);
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads all tasks of the specified difference, i.e. the retained tasks of the keyframe and the added tasks.
+     *
+     * @param file
+     *            the file of the difference
+     * @return the tasks
+     * @throws IOException
+     *             if the file or the keyframe could not be read or is not a valid file
+     */
+    public static List<Task> read(final File file) throws IOException {
+        List<Task> previous = TaskStore.read(getKeyframeFile(file));
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            boolean isCompressed = readHeader(input) == VERSION;
+            VarInt.readSize(input); // distance
+            if (VarInt.readSize(input) != previous.size()) {
+                throw new StreamCorruptedException("Keyframe of " + file + " has been changed");
+            }
+            List<Task> tasks = new ArrayList<Task>();
+            TaskStore.Block block = new TaskStore.Block(input, isCompressed ? VarInt.readSize(input) : -1);
+            try {
+                readChanges(block.getInput(), previous, tasks);
+            }
+            finally {
+                block.close();
+            }
+            tasks.addAll(TaskStore.read(input, file.length()));
+            return tasks;
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static void readChanges(final DataInputStream input, final List<Task> previous, final List<Task> tasks)
+            throws IOException {
+        boolean[] removed = new boolean[previous.size()];
+        int numberOfRemovedTasks = VarInt.readSize(input);
+        int position = 0;
+        for (int i = 0; i < numberOfRemovedTasks; i++) {
+            position += VarInt.readSize(input);
+            if (position >= removed.length) {
+                throw new StreamCorruptedException("Removed task exceeds the keyframe");
+            }
+            removed[position] = true;
+        }
+
+        long key = 0;
+        for (int row = 0; row < removed.length; row++) {
+            if (!removed[row]) {
+                Task task = previous.get(row);
+                key += VarInt.readSignedNumber(input);
+                task.setKey(key);
+                tasks.add(task);
+            }
+        }
+    }
+
+    private static int readHeader(final DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a tasks difference");
+        }
+        int version = input.readUnsignedByte();
+        if (version != VERSION && version != UNCOMPRESSED_VERSION) {
+            throw new StreamCorruptedException("Unsupported version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Returns the properties of the specified task that need to be equal to retain a task of the keyframe.
+     */
+    private static String getSignature(final Task task) {
+        StringBuilder signature = new StringBuilder();
+        append(signature, task.getModuleName());
+        append(signature, task.getPackageName());
+        append(signature, task.getFileName());
+        append(signature, task.getPathName());
+        append(signature, String.valueOf(task.getPrimaryLineNumber()));
+        append(signature, task.getPriority().name());
+        append(signature, task.getType());
+        append(signature, task.getDetailMessage());
+        append(signature, String.valueOf(task.getContextHashCode()));
+        append(signature, task.getAuthorName());
+        append(signature, task.getAuthorEmail());
+        append(signature, task.getCommitId());
+        return signature.toString();
+    }
+
+    private static void append(final StringBuilder signature, final String value) {
+        signature.append(value == null ? NULL_VALUE : value).append(SEPARATOR);
+    }
+
+    private TaskDelta() {
+        // prevents instantiation
+    }
+}
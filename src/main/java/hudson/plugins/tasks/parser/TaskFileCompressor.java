@@ -0,0 +1,142 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Compresses the XML files with the tasks of older builds using GZIP. The XML files repeat the same element, file,
+ * package and module names for each task, so the compressed files are much smaller. The compressed files are read
+ * using {@link #open(File)}, i.e. they are decompressed while they are parsed.
+ * <p>
+ * The number of compressed files and the bytes before and after the compression are counted for all files that
+ * have been compressed since the start of the controller.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public final class TaskFileCompressor {
+    /** Suffix of the compressed files. */
+    public static final String SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long KILOBYTE = 1024;
+
+    private static final AtomicLong COMPRESSED_FILES = new AtomicLong();
+    private static final AtomicLong ORIGINAL_BYTES = new AtomicLong();
+    private static final AtomicLong COMPRESSED_BYTES = new AtomicLong();
+
+    /**
+     * Returns the compressed file of the specified file.
+     *
+     * @param file
+     *            the uncompressed file
+     * @return the compressed file
+     */
+    public static File getCompressedFile(final File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Compresses the specified file. The compressed file is written to a temporary file that is renamed when it is
+     * complete, then the uncompressed file is deleted.
+     *
+     * @param file
+     *            the file to compress
+     * @return the number of bytes saved
+     * @throws IOException
+     *             if the file could not be compressed
+     */
+    public static long compress(final File file) throws IOException {
+        File compressed = getCompressedFile(file);
+        File temporary = new File(compressed.getPath() + ".tmp");
+        InputStream input = new FileInputStream(file);
+        try {
+            FileOutputStream stream = new FileOutputStream(temporary);
+            GZIPOutputStream output = new GZIPOutputStream(stream, BUFFER_SIZE);
+            try {
+                IOUtils.copy(input, output);
+                output.finish();
+                TaskStore.sync(output, stream);
+            }
+            finally {
+                output.close();
+            }
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+        long originalSize = file.length();
+        TaskStore.replace(temporary, compressed);
+        if (!file.delete()) {
+            FileUtils.deleteQuietly(compressed); // keep the uncompressed file only
+            throw new IOException("Can't delete " + file);
+        }
+
+        COMPRESSED_FILES.incrementAndGet();
+        ORIGINAL_BYTES.addAndGet(originalSize);
+        COMPRESSED_BYTES.addAndGet(compressed.length());
+        return originalSize - compressed.length();
+    }
+
+    /**
+     * Opens the specified compressed file. The content is decompressed while it is read.
+     *
+     * @param compressed
+     *            the compressed file
+     * @return the stream of the uncompressed content
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public static InputStream open(final File compressed) throws IOException {
+        InputStream input = new FileInputStream(compressed);
+        try {
+            return new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE));
+        }
+        catch (IOException exception) {
+            IOUtils.closeQuietly(input);
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns the number of files that have been compressed.
+     *
+     * @return the number of files
+     */
+    public static long getNumberOfCompressedFiles() {
+        return COMPRESSED_FILES.get();
+    }
+
+    /**
+     * Returns the number of bytes that have been saved by the compression.
+     *
+     * @return the number of bytes
+     */
+    public static long getSavedBytes() {
+        return ORIGINAL_BYTES.get() - COMPRESSED_BYTES.get();
+    }
+
+    /**
+     * Returns a summary of the compressed files.
+     *
+     * @return the summary
+     */
+    public static String getStatistics() {
+        return String.format("%d files compressed from %d KB to %d KB", COMPRESSED_FILES.get(),
+                ORIGINAL_BYTES.get() / KILOBYTE, COMPRESSED_BYTES.get() / KILOBYTE);
+    }
+
+    private TaskFileCompressor() {
+        // prevents instantiation
+    }
+}
@@ -0,0 +1,334 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+
+/**
+ * The fingerprints of the tasks of a build, used to find the new and fixed tasks without comparing the tasks
+ * themselves. The fingerprint of a task consists of a hash of its context and type, and of a hash of its file
+ * name and line. Tasks are matched by the hash of the context and type, so that moved tasks are still matched.
+ * Only if several tasks have the same hash, i.e. the same context and type, then the file name and line decide
+ * which of these tasks are matched. Tasks without a context hash, e.g. tasks of older builds, are matched only with
+ * equal tasks, i.e. tasks with the same file name, line, type and message.
+ * <p>
+ * The fingerprints are stored next to the tasks of a build, so that later builds can find their new tasks without
+ * reading the tasks of the reference build. If the fingerprints are in the order of the {@link TaskStore}, then the
+ * position of a fingerprint is the position of its task in the store, so that only the fixed tasks need to be read.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public final class TaskFingerprints {
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x54414648;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 3;
+    /** Version of the format without the order of the tasks, still supported when reading. */
+    private static final int UNORDERED_VERSION = 2;
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final long INTEGER_MASK = 0xffffffffL;
+
+    private final long[] hashes;
+    private final long[] locations;
+    private final boolean isStoreOrder;
+
+    /**
+     * Creates the fingerprints of the specified tasks, in the order of the collection.
+     *
+     * @param tasks
+     *            the tasks
+     * @return the fingerprints
+     */
+    public static TaskFingerprints create(final Collection<? extends FileAnnotation> tasks) {
+        return create(tasks, false);
+    }
+
+    /**
+     * Creates the fingerprints of the specified tasks, in the order of the {@link TaskStore} that stores the same
+     * collection.
+     *
+     * @param tasks
+     *            the tasks
+     * @return the fingerprints
+     * @throws IllegalArgumentException
+     *             if one of the annotations is not a {@link Task}
+     */
+    public static TaskFingerprints createInStoreOrder(final Collection<? extends FileAnnotation> tasks) {
+        return create(TaskStore.sort(tasks), true);
+    }
+
+    private static TaskFingerprints create(final Collection<? extends FileAnnotation> tasks,
+            final boolean isStoreOrder) {
+        long[] hashes = new long[tasks.size()];
+        long[] locations = new long[tasks.size()];
+        int position = 0;
+        for (FileAnnotation task : tasks) {
+            locations[position] = (long)StringUtils.defaultString(task.getFileName()).hashCode() << Integer.SIZE
+                    | task.getPrimaryLineNumber() & INTEGER_MASK;
+            long contextHashCode = task.getContextHashCode();
+            if (contextHashCode == 0) {
+                contextHashCode = locations[position] * MULTIPLIER + getMessage(task).hashCode();
+            }
+            hashes[position] = contextHashCode * MULTIPLIER + StringUtils.defaultString(task.getType()).hashCode();
+            position++;
+        }
+        return new TaskFingerprints(hashes, locations, isStoreOrder);
+    }
+
+    private static String getMessage(final FileAnnotation task) {
+        if (task instanceof Task) {
+            return StringUtils.defaultString(((Task)task).getDetailMessage());
+        }
+        return StringUtils.defaultString(task.getMessage());
+    }
+
+    /**
+     * Reads the fingerprints of the specified file.
+     *
+     * @param file
+     *            the file to read
+     * @return the fingerprints
+     * @throws IOException
+     *             if the file could not be read or is not a valid file
+     */
+    public static TaskFingerprints load(final File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a fingerprints file");
+            }
+            int version = input.readUnsignedByte();
+            if (version != VERSION && version != UNORDERED_VERSION) {
+                throw new StreamCorruptedException("Unsupported version " + version);
+            }
+            boolean isStoreOrder = version == VERSION && input.readBoolean();
+            int size = input.readInt();
+            if (size < 0 || size > file.length() / (2 * Long.SIZE / Byte.SIZE)) {
+                throw new StreamCorruptedException("Malformed size " + size);
+            }
+            long[] hashes = new long[size];
+            long[] locations = new long[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = input.readLong();
+                locations[i] = input.readLong();
+            }
+            return new TaskFingerprints(hashes, locations, isStoreOrder);
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private TaskFingerprints(final long[] hashes, final long[] locations, final boolean isStoreOrder) {
+        this.hashes = hashes;
+        this.locations = locations;
+        this.isStoreOrder = isStoreOrder;
+    }
+
+    /**
+     * Writes the fingerprints to the specified file. The file is written to a temporary file that is renamed when it
+     * is complete, so concurrent writes of the same fingerprints do not interfere.
+     *
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public void save(final File file) throws IOException {
+        File temporary = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeBoolean(isStoreOrder);
+            output.writeInt(hashes.length);
+            for (int i = 0; i < hashes.length; i++) {
+                output.writeLong(hashes[i]);
+                output.writeLong(locations[i]);
+            }
+            TaskStore.sync(output, stream);
+        }
+        finally {
+            output.close();
+        }
+        TaskStore.replace(temporary, file);
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return the number of tasks
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * Returns whether these fingerprints are in the order of the {@link TaskStore} of the tasks.
+     *
+     * @return {@code true} if the position of a fingerprint is the position of its task in the store
+     */
+    public boolean isStoreOrder() {
+        return isStoreOrder;
+    }
+
+    /**
+     * Returns the fingerprints at the selected positions.
+     *
+     * @param selected
+     *            for each fingerprint whether it is selected
+     * @return the selected fingerprints
+     */
+    public TaskFingerprints select(final boolean[] selected) {
+        int size = 0;
+        for (boolean isSelected : selected) {
+            if (isSelected) {
+                size++;
+            }
+        }
+        long[] selectedHashes = new long[size];
+        long[] selectedLocations = new long[size];
+        int position = 0;
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                selectedHashes[position] = hashes[i];
+                selectedLocations[position] = locations[i];
+                position++;
+            }
+        }
+        return new TaskFingerprints(selectedHashes, selectedLocations, isStoreOrder);
+    }
+
+    /**
+     * Returns which of these tasks have no matching task in the specified other tasks. Each task of the other tasks
+     * matches at most one of these tasks. Called with the tasks of the current build and the tasks of the reference
+     * build, the unmatched tasks are the new tasks; called the other way round, the unmatched tasks are the fixed
+     * tasks.
+     *
+     * @param other
+     *            the tasks to match against
+     * @return for each of these tasks whether it has no matching task
+     */
+    public boolean[] getUnmatched(final TaskFingerprints other) {
+        LongCounter byLocation = new LongCounter(other.size());
+        LongCounter byHash = new LongCounter(other.size());
+        for (int i = 0; i < other.size(); i++) {
+            byLocation.increment(other.getKey(i));
+            byHash.increment(other.hashes[i]);
+        }
+
+        boolean[] unmatched = new boolean[size()];
+        for (int i = 0; i < size(); i++) {
+            if (byLocation.decrement(getKey(i))) {
+                byHash.decrement(hashes[i]);
+            }
+            else {
+                unmatched[i] = true;
+            }
+        }
+        for (int i = 0; i < size(); i++) {
+            if (unmatched[i] && byHash.decrement(hashes[i])) {
+                unmatched[i] = false;
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * Returns the number of these tasks that have no matching task in the specified other tasks.
+     *
+     * @param other
+     *            the tasks to match against
+     * @return the number of unmatched tasks
+     * @see #getUnmatched(TaskFingerprints)
+     */
+    public int getNumberOfUnmatched(final TaskFingerprints other) {
+        int count = 0;
+        for (boolean isUnmatched : getUnmatched(other)) {
+            if (isUnmatched) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the specified fingerprints contain the same fingerprints in the same order.
+     *
+     * @param other
+     *            the fingerprints to compare
+     * @return {@code true} if the fingerprints are the same
+     */
+    public boolean hasSameFingerprints(final TaskFingerprints other) {
+        return Arrays.equals(hashes, other.hashes) && Arrays.equals(locations, other.locations);
+    }
+
+    private long getKey(final int position) {
+        return hashes[position] * MULTIPLIER ^ locations[position];
+    }
+
+    /**
+     * Counts the occurrences of long values in an open addressing hash table, so that no objects are created for
+     * the values.
+     */
+    private static class LongCounter {
+        private final long[] keys;
+        private final int[] counts;
+        private final boolean[] used;
+        private final int mask;
+
+        LongCounter(final int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) * 2;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        void increment(final long key) {
+            int slot = find(key);
+            keys[slot] = key;
+            used[slot] = true;
+            counts[slot]++;
+        }
+
+        /**
+         * Decrements the count of the specified value.
+         *
+         * @return {@code true} if the value has been counted, {@code false} if the count is 0
+         */
+        boolean decrement(final long key) {
+            int slot = find(key);
+            if (used[slot] && counts[slot] > 0) {
+                counts[slot]--;
+                return true;
+            }
+            return false;
+        }
+
+        private int find(final long key) {
+            long mixed = key * MULTIPLIER;
+            int slot = (int)(mixed ^ mixed >>> Integer.SIZE) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = slot + 1 & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Index of the tasks in a {@link TaskStore}. For the modules, packages, files, priorities and tags of the tasks the
+ * positions of the corresponding tasks in the store are recorded, so that the tasks of a single module, package,
+ * file, priority or tag can be read without reading all tasks of the store. Since the tasks in the store are sorted
+ * by module, package and file, the tasks of a module, package or file are stored as one contiguous range.
+ *
+ * @author Ulli Hafner
+ */
+public class TaskIndex {
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x5441534A;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 1;
+
+    /**
+     * The properties of the tasks that are indexed.
+     */
+    public enum Dimension {
+        /** The module name of the tasks. */
+        MODULE,
+        /** The package name of the tasks. */
+        PACKAGE,
+        /** The file name of the tasks. */
+        FILE,
+        /** The name of the priority of the tasks. */
+        PRIORITY,
+        /** The tag of the tasks. */
+        TYPE;
+
+        /**
+         * Returns the value of this property of the specified task.
+         *
+         * @param task
+         *            the task
+         * @return the value, an empty string if the task has no value
+         */
+        String getValue(final Task task) {
+            switch (this) {
+                case MODULE:
+                    return StringUtils.defaultString(task.getModuleName());
+                case PACKAGE:
+                    return StringUtils.defaultString(task.getPackageName());
+                case FILE:
+                    return StringUtils.defaultString(task.getFileName());
+                case PRIORITY:
+                    return task.getPriority().name();
+                default:
+                    return StringUtils.defaultString(task.getType());
+            }
+        }
+    }
+
+    private final int numberOfTasks;
+    /** The values of each dimension, mapped to the ranges of the tasks as pairs of start (inclusive) and end. */
+    private final EnumMap<Dimension, Map<String, int[]>> ranges;
+
+    /**
+     * Returns the index file of the specified store.
+     *
+     * @param store
+     *            the file of the store
+     * @return the index file
+     */
+    static File getIndexFile(final File store) {
+        return new File(store.getParentFile(), StringUtils.substringBeforeLast(store.getName(), ".") + ".idx");
+    }
+
+    /**
+     * Creates the index of the specified tasks.
+     *
+     * @param tasks
+     *            the tasks in the order of the store
+     * @return the index
+     */
+    static TaskIndex create(final List<Task> tasks) {
+        EnumMap<Dimension, Map<String, int[]>> ranges = new EnumMap<Dimension, Map<String, int[]>>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, List<Integer>> positions = new LinkedHashMap<String, List<Integer>>();
+            for (int row = 0; row < tasks.size(); row++) {
+                String value = dimension.getValue(tasks.get(row));
+                List<Integer> range = positions.get(value);
+                if (range == null) {
+                    range = new ArrayList<Integer>();
+                    positions.put(value, range);
+                }
+                int size = range.size();
+                if (size > 0 && range.get(size - 1) == row) {
+                    range.set(size - 1, row + 1);
+                }
+                else {
+                    range.add(row);
+                    range.add(row + 1);
+                }
+            }
+            Map<String, int[]> values = new LinkedHashMap<String, int[]>();
+            for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                int[] range = new int[entry.getValue().size()];
+                for (int i = 0; i < range.length; i++) {
+                    range[i] = entry.getValue().get(i);
+                }
+                values.put(entry.getKey(), range);
+            }
+            ranges.put(dimension, values);
+        }
+        return new TaskIndex(tasks.size(), ranges);
+    }
+
+    /**
+     * Loads the index of the specified store.
+     *
+     * @param store
+     *            the file of the store
+     * @return the index
+     * @throws IOException
+     *             if the index could not be read
+     */
+    public static TaskIndex load(final File store) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(getIndexFile(store))));
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a tasks index");
+            }
+            int version = input.readUnsignedByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported version " + version);
+            }
+            int numberOfTasks = VarInt.readSize(input);
+            EnumMap<Dimension, Map<String, int[]>> ranges = new EnumMap<Dimension, Map<String, int[]>>(
+                    Dimension.class);
+            for (Dimension dimension : Dimension.values()) {
+                int size = VarInt.readSize(input);
+                Map<String, int[]> values = new LinkedHashMap<String, int[]>();
+                for (int i = 0; i < size; i++) {
+                    byte[] value = new byte[VarInt.readSize(input)];
+                    input.readFully(value);
+                    int[] range = new int[VarInt.readSize(input) * 2];
+                    int end = 0;
+                    for (int position = 0; position < range.length; position += 2) {
+                        range[position] = end + VarInt.readSize(input);
+                        end = range[position] + VarInt.readSize(input);
+                        range[position + 1] = end;
+                        if (end > numberOfTasks) {
+                            throw new StreamCorruptedException("Range exceeds the tasks of the store");
+                        }
+                    }
+                    values.put(new String(value, TaskReader.ENCODING), range);
+                }
+                ranges.put(dimension, values);
+            }
+            return new TaskIndex(numberOfTasks, ranges);
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private TaskIndex(final int numberOfTasks, final EnumMap<Dimension, Map<String, int[]>> ranges) {
+        this.numberOfTasks = numberOfTasks;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Stores this index for the specified store.
+     *
+     * @param store
+     *            the file of the store
+     * @throws IOException
+     *             if the index could not be written
+     */
+    void save(final File store) throws IOException {
+        File file = getIndexFile(store);
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            VarInt.writeNumber(output, numberOfTasks);
+            for (Dimension dimension : Dimension.values()) {
+                Map<String, int[]> values = ranges.get(dimension);
+                VarInt.writeNumber(output, values.size());
+                for (Map.Entry<String, int[]> entry : values.entrySet()) {
+                    byte[] value = entry.getKey().getBytes(TaskReader.ENCODING);
+                    VarInt.writeNumber(output, value.length);
+                    output.write(value);
+                    int[] range = entry.getValue();
+                    VarInt.writeNumber(output, range.length / 2);
+                    int end = 0;
+                    for (int position = 0; position < range.length; position += 2) {
+                        VarInt.writeNumber(output, range[position] - end);
+                        VarInt.writeNumber(output, range[position + 1] - range[position]);
+                        end = range[position + 1];
+                    }
+                }
+            }
+            TaskStore.sync(output, stream);
+        }
+        finally {
+            output.close();
+        }
+        TaskStore.replace(temporary, file);
+    }
+
+    /**
+     * Returns the number of tasks in the indexed store.
+     *
+     * @return the number of tasks
+     */
+    public int getNumberOfTasks() {
+        return numberOfTasks;
+    }
+
+    /**
+     * Returns the values of the specified property.
+     *
+     * @param dimension
+     *            the property
+     * @return the distinct values of the property
+     */
+    public List<String> getValues(final Dimension dimension) {
+        return new ArrayList<String>(ranges.get(dimension).keySet());
+    }
+
+    /**
+     * Finds the value of the specified property with the specified hash code. The detail views of the tasks
+     * reference modules, packages, files and tags by the hash code of their name.
+     *
+     * @param dimension
+     *            the property
+     * @param hashCode
+     *            the hash code of the value
+     * @return the value, or {@code null} if no task has a value with this hash code
+     */
+    public String findValue(final Dimension dimension, final int hashCode) {
+        for (String value : ranges.get(dimension).keySet()) {
+            if (value.hashCode() == hashCode) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the positions of the tasks with the specified value of a property.
+     *
+     * @param dimension
+     *            the property
+     * @param value
+     *            the value
+     * @return the ranges of the positions in the store, as pairs of start (inclusive) and end (exclusive)
+     */
+    public int[] getRanges(final Dimension dimension, final String value) {
+        int[] range = ranges.get(dimension).get(value);
+        if (range == null) {
+            return new int[0];
+        }
+        return range.clone();
+    }
+
+    /**
+     * Returns the number of tasks with the specified value of a property.
+     *
+     * @param dimension
+     *            the property
+     * @param value
+     *            the value
+     * @return the number of tasks
+     */
+    public int getNumberOfTasks(final Dimension dimension, final String value) {
+        int[] range = ranges.get(dimension).get(value);
+        int count = 0;
+        if (range != null) {
+            for (int position = 0; position < range.length; position += 2) {
+                count += range[position + 1] - range[position];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Reads the tasks that have been written by a {@link TaskWriter}.
+ *
+ * @author Ulli Hafner
+ */
+class TaskReader {
+    /** Encoding of the strings in the stream. */
+    static final Charset ENCODING = Charset.forName("UTF-8");
+
+    private final DataInputStream input;
+    private final List<String> dictionary = new ArrayList<String>();
+
+    /**
+     * Creates a new instance of {@link TaskReader}.
+     *
+     * @param input
+     *            the stream to read the tasks from
+     */
+    TaskReader(final InputStream input) {
+        this.input = new DataInputStream(new BufferedInputStream(input));
+    }
+
+    /**
+     * Reads all tasks of the stream and closes the stream.
+     *
+     * @param tasks
+     *            the collection to add the tasks to
+     * @throws IOException
+     *             if the tasks could not be read or the stream ended before all tasks have been written
+     */
+    void read(final Collection<Task> tasks) throws IOException {
+        try {
+            while (true) {
+                int marker = VarInt.readSize(input);
+                if (marker == TaskWriter.END) {
+                    return;
+                }
+                else if (marker == TaskWriter.GROUP) {
+                    readGroup(tasks);
+                }
+                else if (marker == TaskWriter.BATCH) {
+                    dictionary.clear();
+                }
+                else {
+                    throw new StreamCorruptedException("Unknown marker " + marker);
+                }
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private void readGroup(final Collection<Task> tasks) throws IOException {
+        String fileName = readString();
+        String packageName = readString();
+        String moduleName = readString();
+        String pathName = readString();
+        int size = VarInt.readSize(input);
+
+        int line = 0;
+        for (int i = 0; i < size; i++) {
+            line += (int)VarInt.readSignedNumber(input);
+            Priority priority = readPriority();
+            String tag = readString();
+            String message = readString();
+
+            Task task = new Task(priority, line, tag, message);
+            task.setFileName(fileName);
+            task.setPackageName(packageName);
+            task.setModuleName(moduleName);
+            task.setPathName(pathName);
+            task.setContextHashCode(VarInt.readSignedNumber(input));
+            tasks.add(task);
+        }
+    }
+
+    private Priority readPriority() throws IOException {
+        int ordinal = input.readUnsignedByte();
+        Priority[] priorities = Priority.values();
+        if (ordinal >= priorities.length) {
+            throw new StreamCorruptedException("Unknown priority " + ordinal);
+        }
+        return priorities[ordinal];
+    }
+
+    private String readString() throws IOException {
+        int reference = VarInt.readSize(input);
+        if (reference == TaskWriter.NULL_STRING) {
+            return null;
+        }
+        if (reference == TaskWriter.NEW_STRING) {
+            byte[] bytes = new byte[VarInt.readSize(input)];
+            input.readFully(bytes);
+            String value = new String(bytes, ENCODING);
+            dictionary.add(value);
+            return value;
+        }
+        int index = reference - TaskWriter.FIRST_INDEX;
+        if (index >= dictionary.size()) {
+            throw new StreamCorruptedException("Unknown string " + reference);
+        }
+        return dictionary.get(index);
+    }
+}
@@ -1,14 +1,16 @@
 package hudson.plugins.tasks.parser;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -27,15 +29,43 @@ import hudson.plugins.tasks.Messages;
  * @author Ulli Hafner
  */
 public class TaskScanner {
+    /** Indicates that a scan has no deadline. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
     private static final String WORD_BOUNDARY = "\\b";
+    /** Used to represent the bytes of an encoded literal as characters. */
+    private static final Charset BYTES = Charset.forName("ISO-8859-1");
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
 
     /** The regular expression patterns to be used to scan the files. One pattern per priority. */
     private final Map<Priority, Pattern> patterns = new HashMap<Priority, Pattern>();
     private final boolean ignoreCase;
+    /** Finds the tags of all priorities in a line. */
+    private TagMatcher matcher;
+
+    /** Finds the required literals of the matcher in the content of a file, created on demand. */
+    private KeywordAutomaton charMatcher;
+    private boolean isCharMatcherInitialized;
+    /** Finds the encoded required literals of the matcher in the bytes of a file, created on demand. */
+    private KeywordAutomaton byteMatcher;
+    /** The encoding of the literals in {@link #byteMatcher}. */
+    private Charset byteMatcherCharset;
 
     private boolean isInvalidPattern;
     private final StringBuilder errorMessage = new StringBuilder();
 
+    /** Maximum number of characters of a line that are matched, 0 if the lines are not truncated. */
+    private int maximumLineLength;
+    /** The time when the scan of a file is canceled. */
+    private long deadline = NO_DEADLINE;
+    private boolean hasTruncatedLines;
+    private boolean isTimeLimitExceeded;
+    /** The number of lines of the last scanned file. */
+    private int numberOfLines;
+    /** The time in nanoseconds spent in computing the context hash codes of the last scanned file. */
+    private long contextHashTime;
+
     /**
      * Creates a new instance of {@link TaskScanner}.
      */
@@ -69,6 +99,105 @@ public class TaskScanner {
         if (StringUtils.isNotBlank(low)) {
             patterns.put(Priority.LOW, compile(low, ignoreCase, asRegexp));
         }
+        if (!isInvalidPattern) {
+            if (!asRegexp) {
+                Map<Priority, String> tagIdentifiers = new HashMap<Priority, String>();
+                tagIdentifiers.put(Priority.HIGH, high);
+                tagIdentifiers.put(Priority.NORMAL, normal);
+                tagIdentifiers.put(Priority.LOW, low);
+                matcher = createLiteralMatcher(tagIdentifiers);
+            }
+            if (matcher == null) {
+                matcher = new RegexpTagMatcher(patterns);
+            }
+        }
+    }
+
+    /**
+     * Creates a matcher that finds the tags of all priorities in a single pass. The matcher is only created if all tags
+     * are literals, otherwise the regular expressions of each priority are used.
+     *
+     * @param tagIdentifiers
+     *            the tag identifiers of each priority
+     * @return the matcher, or {@code null} if some tags are no literals
+     */
+    private TagMatcher createLiteralMatcher(final Map<Priority, String> tagIdentifiers) {
+        Map<Priority, List<String>> tags = new HashMap<Priority, List<String>>();
+        for (Priority priority : patterns.keySet()) {
+            List<String> priorityTags = splitTags(tagIdentifiers.get(priority));
+            if (priorityTags.isEmpty()) {
+                return null; // the pattern '^.*()(.*)$' matches every line
+            }
+            for (String tag : priorityTags) {
+                if (!LiteralTagMatcher.isLiteral(tag)) {
+                    return null;
+                }
+            }
+            tags.put(priority, priorityTags);
+        }
+        return new LiteralTagMatcher(tags, ignoreCase);
+    }
+
+    /**
+     * Sets the maximum number of characters of a line that are matched. Longer lines are truncated, i.e. tags after
+     * this position are not found.
+     *
+     * @param maximumLineLength
+     *            the maximum line length, 0 if the lines should not be truncated
+     */
+    public void setMaximumLineLength(final int maximumLineLength) {
+        this.maximumLineLength = Math.max(0, maximumLineLength);
+    }
+
+    /**
+     * Sets the time when the scan of a file should be canceled. The tasks that have been found until then are
+     * returned, see {@link #isTimeLimitExceeded()}.
+     *
+     * @param deadline
+     *            the deadline in the time base of {@link System#nanoTime()}, or {@link #NO_DEADLINE}
+     */
+    public void setDeadline(final long deadline) {
+        this.deadline = deadline;
+        if (matcher != null) {
+            matcher.setDeadline(deadline);
+        }
+    }
+
+    /**
+     * Returns the number of lines of the last scanned file.
+     *
+     * @return the number of lines
+     */
+    public int getNumberOfLines() {
+        return numberOfLines;
+    }
+
+    /**
+     * Returns the time spent in computing the context hash codes of the tasks of the last scanned file.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getContextHashTime() {
+        return contextHashTime;
+    }
+
+    /**
+     * Returns whether lines have been truncated during the last scan, see {@link #setMaximumLineLength(int)}.
+     *
+     * @return {@code true} if lines have been truncated
+     */
+    public boolean hasTruncatedLines() {
+        return hasTruncatedLines;
+    }
+
+    /**
+     * Returns whether the last scan has been canceled since the deadline has been exceeded, see
+     * {@link #setDeadline(long)}.
+     *
+     * @return {@code true} if the scan has been canceled
+     */
+    public boolean isTimeLimitExceeded() {
+        return isTimeLimitExceeded;
     }
 
     public boolean isInvalidPattern() {
@@ -96,27 +225,17 @@ public class TaskScanner {
                 return Pattern.compile(tagIdentifiers);
             }
 
-            String[] tags;
-            if (tagIdentifiers.indexOf(',') == -1) {
-                tags = new String[] {tagIdentifiers};
-            }
-            else {
-                tags = StringUtils.split(tagIdentifiers, ",");
-            }
             List<String> regexps = new ArrayList<String>();
-            for (int i = 0; i < tags.length; i++) {
-                String tag = tags[i].trim();
-                if (StringUtils.isNotBlank(tag)) {
-                    StringBuilder actual = new StringBuilder();
-                    if (Character.isLetterOrDigit(tag.charAt(0))) {
-                        actual.append(WORD_BOUNDARY);
-                    }
-                    actual.append(tag);
-                    if (Character.isLetterOrDigit(tag.charAt(tag.length() - 1))) {
-                        actual.append(WORD_BOUNDARY);
-                    }
-                    regexps.add(actual.toString());
+            for (String tag : splitTags(tagIdentifiers)) {
+                StringBuilder actual = new StringBuilder();
+                if (Character.isLetterOrDigit(tag.charAt(0))) {
+                    actual.append(WORD_BOUNDARY);
                 }
+                actual.append(tag);
+                if (Character.isLetterOrDigit(tag.charAt(tag.length() - 1))) {
+                    actual.append(WORD_BOUNDARY);
+                }
+                regexps.add(actual.toString());
             }
             int flags;
             if (ignoreCase) {
@@ -137,7 +256,34 @@ public class TaskScanner {
     }
 
     /**
-     * Scans the specified input stream for open tasks.
+     * Splits the specified comma separated tag identifiers into the individual tags.
+     *
+     * @param tagIdentifiers
+     *            the identifiers to split
+     * @return the trimmed and non-empty tags
+     */
+    private List<String> splitTags(final String tagIdentifiers) {
+        String[] tags;
+        if (tagIdentifiers.indexOf(',') == -1) {
+            tags = new String[] {tagIdentifiers};
+        }
+        else {
+            tags = StringUtils.split(tagIdentifiers, ",");
+        }
+        List<String> trimmed = new ArrayList<String>();
+        for (int i = 0; i < tags.length; i++) {
+            String tag = tags[i].trim();
+            if (StringUtils.isNotBlank(tag)) {
+                trimmed.add(tag);
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Scans the specified input stream for open tasks. If the tags can be found using literals, then the whole
+     * content is searched for these literals first: content without a literal is not split into lines at all,
+     * otherwise only the lines that contain a literal are matched.
      *
      * @param reader
      *            the file to scan
@@ -150,31 +296,429 @@ public class TaskScanner {
             if (isInvalidPattern) {
                 throw new AbortException(errorMessage.toString());
             }
-            LineIterator lineIterator = IOUtils.lineIterator(reader);
-            List<Task> tasks = new ArrayList<Task>();
-            for (int lineNumber = 1; lineIterator.hasNext(); lineNumber++) {
+            resetLimits();
+            KeywordAutomaton automaton = getCharMatcher();
+            if (automaton == null) {
+                return matchLines(reader);
+            }
+            return scan(IOUtils.toString(reader), automaton);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Scans the specified input stream for open tasks line by line. Other than {@link #scan(Reader)} the content is
+     * never read into memory completely, so large files should be scanned using this method.
+     *
+     * @param reader
+     *            the file to scan
+     * @return the found tasks
+     * @throws IOException
+     *             if we can't read the file
+     */
+    public Collection<Task> scanLines(final Reader reader) throws IOException {
+        try {
+            if (isInvalidPattern) {
+                throw new AbortException(errorMessage.toString());
+            }
+            resetLimits();
+            return matchLines(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private Collection<Task> matchLines(final Reader reader) {
+        LineIterator lineIterator = IOUtils.lineIterator(reader);
+        List<Task> tasks = new ArrayList<Task>();
+        ContextHashWindow window = new ContextHashWindow();
+        try {
+            while (lineIterator.hasNext()) {
                 String line = (String)lineIterator.next();
+                numberOfLines++;
+                if (window.hasPendingTasks()) {
+                    long start = System.nanoTime();
+                    window.addLine(line);
+                    contextHashTime += System.nanoTime() - start;
+                }
+                else {
+                    window.addLine(line);
+                }
+                checkDeadline();
 
-                for (Priority priority : Priority.values()) {
-                    if (patterns.containsKey(priority)) {
-                        Matcher matcher = patterns.get(priority).matcher(line);
-                        if (matcher.matches() && matcher.groupCount() == 2) {
-                            String message = matcher.group(2).trim();
-                            String tag = matcher.group(1);
-                            if (ignoreCase) {
-                                tag = StringUtils.upperCase(tag);
-                            }
-                            tasks.add(new Task(priority, lineNumber, tag, StringUtils.remove(message, ":").trim()));
+                for (TagMatch match : matcher.match(truncate(line))) {
+                    Task task = createTask(match.getPriority(), numberOfLines, match.getTag(), match.getMessage());
+                    long start = System.nanoTime();
+                    window.addTask(task);
+                    contextHashTime += System.nanoTime() - start;
+                    tasks.add(task);
+                }
+            }
+        }
+        catch (ScanTimeoutException exception) {
+            isTimeLimitExceeded = true;
+        }
+        long start = System.nanoTime();
+        window.finish();
+        contextHashTime += System.nanoTime() - start;
+
+        return tasks;
+    }
+
+    private Collection<Task> scan(final String content, final KeywordAutomaton automaton) {
+        List<Task> tasks = new ArrayList<Task>();
+        int lineNumber = 1;
+        int lineStart = 0;
+        int state = KeywordAutomaton.START;
+        int length = content.length();
+        try {
+            for (int position = 0; position < length; position++) {
+                state = automaton.next(state, content.charAt(position));
+                if (automaton.getKeywords(state) != null) {
+                    checkDeadline();
+                    int start = findLineStart(content, position, lineStart);
+                    int end = findLineEnd(content, position, length);
+                    lineNumber += countLineBreaks(content, lineStart, start);
+                    lineStart = start;
+
+                    List<TagMatch> matches = matcher.match(content.substring(start, getTruncatedEnd(start, end)));
+                    if (!matches.isEmpty()) {
+                        long hashStart = System.nanoTime();
+                        int contextHashCode = createContextHashCode(content, start, end, length);
+                        contextHashTime += System.nanoTime() - hashStart;
+                        for (TagMatch match : matches) {
+                            Task task = createTask(match.getPriority(), lineNumber, match.getTag(),
+                                    match.getMessage());
+                            task.setContextHashCode(contextHashCode);
+                            tasks.add(task);
                         }
                     }
+
+                    state = KeywordAutomaton.START;
+                    position = end;
                 }
             }
+        }
+        catch (ScanTimeoutException exception) {
+            isTimeLimitExceeded = true;
+        }
+        numberOfLines = countLines(content, lineNumber, lineStart);
+        return tasks;
+    }
 
-            return tasks;
+    private void resetLimits() {
+        hasTruncatedLines = false;
+        isTimeLimitExceeded = false;
+        numberOfLines = 0;
+        contextHashTime = 0;
+    }
+
+    /**
+     * Counts the lines of the specified content, the lines before {@code lineStart} have been counted already.
+     */
+    private int countLines(final String content, final int lineNumber, final int lineStart) {
+        int length = content.length();
+        int lines = lineNumber - 1 + countLineBreaks(content, lineStart, length);
+        if (length > 0 && !isLineBreak(content.charAt(length - 1))) {
+            lines++;
         }
-        finally {
-            reader.close();
+        return lines;
+    }
+
+    /**
+     * Counts the lines of the specified content, the lines before {@code lineStart} have been counted already.
+     */
+    private int countLines(final byte[] content, final int length, final int lineNumber, final int lineStart) {
+        int lines = lineNumber - 1 + countLineBreaks(content, lineStart, length);
+        if (length > 0 && !isLineBreak(content[length - 1])) {
+            lines++;
+        }
+        return lines;
+    }
+
+    private void checkDeadline() {
+        if (deadline != NO_DEADLINE && System.nanoTime() - deadline > 0) {
+            throw new ScanTimeoutException();
+        }
+    }
+
+    private String truncate(final String line) {
+        return line.substring(0, getTruncatedEnd(0, line.length()));
+    }
+
+    private int getTruncatedEnd(final int start, final int end) {
+        if (maximumLineLength > 0 && end - start > maximumLineLength) {
+            hasTruncatedLines = true;
+            return start + maximumLineLength;
+        }
+        return end;
+    }
+
+    /**
+     * Returns an automaton that finds the required literals of the matcher in the content of a file.
+     *
+     * @return the automaton or {@code null} if the file needs to be scanned line by line
+     */
+    private KeywordAutomaton getCharMatcher() {
+        if (!isCharMatcherInitialized) {
+            isCharMatcherInitialized = true;
+
+            List<String> literals = matcher.getRequiredLiterals();
+            if (literals != null && !containsLineBreak(literals)) {
+                charMatcher = new KeywordAutomaton(literals, matcher.isIgnoringCase());
+            }
+        }
+        return charMatcher;
+    }
+
+    private boolean containsLineBreak(final List<String> literals) {
+        for (String literal : literals) {
+            if (StringUtils.containsAny(literal, "\r\n")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the specified encoding is compatible to US-ASCII, i.e. line breaks and the characters of other
+     * lines are never part of the encoded bytes of a character. Files in these encodings can be scanned on the byte
+     * level using {@link #scan(byte[], int, Charset)}.
+     *
+     * @param charset
+     *            the encoding to check
+     * @return {@code true} if the encoding is compatible to US-ASCII, {@code false} otherwise
+     */
+    public static boolean isAsciiCompatible(final Charset charset) {
+        String name = charset.name();
+
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || name.startsWith("ISO-8859-");
+    }
+
+    /**
+     * Scans the specified file content for open tasks. The content is not split into lines. Rather the encoded tags
+     * are searched in the bytes of the file, only the lines that contain a tag are decoded and matched. If the tags
+     * can't be searched on the byte level (e.g., for some regular expressions or encodings) the whole content is
+     * decoded and scanned line by line.
+     *
+     * @param content
+     *            the content of the file to scan
+     * @param length
+     *            the number of valid bytes in {@code content}
+     * @param charset
+     *            the encoding of the file
+     * @return the found tasks
+     * @throws IOException
+     *             if the content can't be scanned
+     */
+    public Collection<Task> scan(final byte[] content, final int length, final Charset charset) throws IOException {
+        if (isInvalidPattern) {
+            throw new AbortException(errorMessage.toString());
+        }
+        resetLimits();
+        KeywordAutomaton automaton = getByteMatcher(charset);
+        if (automaton == null) {
+            return scan(new InputStreamReader(new ByteArrayInputStream(content, 0, length), charset));
+        }
+
+        List<Task> tasks = new ArrayList<Task>();
+        int lineNumber = 1;
+        int lineStart = 0;
+        int state = KeywordAutomaton.START;
+        try {
+            for (int position = 0; position < length; position++) {
+                state = automaton.next(state, (char)(content[position] & 0xFF));
+                if (automaton.getKeywords(state) != null) {
+                    checkDeadline();
+                    int start = findLineStart(content, position, lineStart);
+                    int end = findLineEnd(content, position, length);
+                    lineNumber += countLineBreaks(content, lineStart, start);
+                    lineStart = start;
+
+                    String line = truncate(new String(content, start, end - start, charset));
+                    List<TagMatch> matches = matcher.match(line);
+                    if (!matches.isEmpty()) {
+                        long hashStart = System.nanoTime();
+                        int contextHashCode = createContextHashCode(content, start, end, length, charset);
+                        contextHashTime += System.nanoTime() - hashStart;
+                        for (TagMatch match : matches) {
+                            Task task = createTask(match.getPriority(), lineNumber, match.getTag(),
+                                    match.getMessage());
+                            task.setContextHashCode(contextHashCode);
+                            tasks.add(task);
+                        }
+                    }
+
+                    state = KeywordAutomaton.START;
+                    position = end;
+                }
+            }
+        }
+        catch (ScanTimeoutException exception) {
+            isTimeLimitExceeded = true;
+        }
+        numberOfLines = countLines(content, length, lineNumber, lineStart);
+        return tasks;
+    }
+
+    /**
+     * Returns an automaton that finds the required literals of the matcher in the encoded bytes of a file.
+     *
+     * @param charset
+     *            the encoding of the file
+     * @return the automaton or {@code null} if the file needs to be scanned line by line
+     */
+    private KeywordAutomaton getByteMatcher(final Charset charset) {
+        if (!charset.equals(byteMatcherCharset)) {
+            byteMatcherCharset = charset;
+            byteMatcher = null;
+
+            List<String> literals = matcher.getRequiredLiterals();
+            if (literals != null && !containsLineBreak(literals) && isAsciiCompatible(charset)) {
+                List<String> encoded = new ArrayList<String>();
+                for (String literal : literals) {
+                    encoded.add(new String(literal.getBytes(charset), BYTES));
+                }
+                byteMatcher = new KeywordAutomaton(encoded, matcher.isIgnoringCase());
+            }
+        }
+        return byteMatcher;
+    }
+
+    private int findLineStart(final byte[] content, final int position, final int lowerBound) {
+        int start = position;
+        while (start > lowerBound && !isLineBreak(content[start - 1])) {
+            start--;
+        }
+        return start;
+    }
+
+    private int findLineEnd(final byte[] content, final int position, final int length) {
+        int end = position;
+        while (end < length && !isLineBreak(content[end])) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Counts the line breaks in the specified range. A carriage return that is followed by a line feed counts as one
+     * line break.
+     */
+    private int countLineBreaks(final byte[] content, final int from, final int to) {
+        int count = 0;
+        for (int position = from; position < to; position++) {
+            if (content[position] == LINE_FEED) {
+                if (position == 0 || content[position - 1] != CARRIAGE_RETURN) {
+                    count++;
+                }
+            }
+            else if (content[position] == CARRIAGE_RETURN) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isLineBreak(final byte value) {
+        return value == LINE_FEED || value == CARRIAGE_RETURN;
+    }
+
+    /**
+     * Creates the context hash code of the tasks in the specified line, see {@link ContextHashWindow}.
+     */
+    private int createContextHashCode(final byte[] content, final int start, final int end, final int length,
+            final Charset charset) {
+        int from = start;
+        for (int i = 0; i < ContextHashWindow.LINES_BEFORE && from > 0; i++) {
+            int lineBreak = from - 1;
+            if (content[lineBreak] == LINE_FEED && lineBreak > 0 && content[lineBreak - 1] == CARRIAGE_RETURN) {
+                lineBreak--;
+            }
+            from = findLineStart(content, lineBreak, 0);
+        }
+        int to = end;
+        for (int i = 0; i < ContextHashWindow.LINES_AFTER && to < length; i++) {
+            int next = to + 1;
+            if (content[to] == CARRIAGE_RETURN && next < length && content[next] == LINE_FEED) {
+                next++;
+            }
+            to = findLineEnd(content, next, length);
+        }
+        String context = new String(content, from, to - from, charset);
+
+        return ContextHashWindow.append(0, context, 0, context.length());
+    }
+
+    private int findLineStart(final String content, final int position, final int lowerBound) {
+        int start = position;
+        while (start > lowerBound && !isLineBreak(content.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private int findLineEnd(final String content, final int position, final int length) {
+        int end = position;
+        while (end < length && !isLineBreak(content.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private int countLineBreaks(final String content, final int from, final int to) {
+        int count = 0;
+        for (int position = from; position < to; position++) {
+            if (content.charAt(position) == LINE_FEED) {
+                if (position == 0 || content.charAt(position - 1) != CARRIAGE_RETURN) {
+                    count++;
+                }
+            }
+            else if (content.charAt(position) == CARRIAGE_RETURN) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isLineBreak(final char value) {
+        return value == LINE_FEED || value == CARRIAGE_RETURN;
+    }
+
+    /**
+     * Creates the context hash code of the tasks in the specified line, see {@link ContextHashWindow}.
+     */
+    private int createContextHashCode(final String content, final int start, final int end, final int length) {
+        int from = start;
+        for (int i = 0; i < ContextHashWindow.LINES_BEFORE && from > 0; i++) {
+            int lineBreak = from - 1;
+            if (content.charAt(lineBreak) == LINE_FEED && lineBreak > 0
+                    && content.charAt(lineBreak - 1) == CARRIAGE_RETURN) {
+                lineBreak--;
+            }
+            from = findLineStart(content, lineBreak, 0);
+        }
+        int to = end;
+        for (int i = 0; i < ContextHashWindow.LINES_AFTER && to < length; i++) {
+            int next = to + 1;
+            if (content.charAt(to) == CARRIAGE_RETURN && next < length && content.charAt(next) == LINE_FEED) {
+                next++;
+            }
+            to = findLineEnd(content, next, length);
+        }
+
+        return ContextHashWindow.append(0, content, from, to);
+    }
+
+    private Task createTask(final Priority priority, final int lineNumber, final String tag, final String message) {
+        String actualTag = tag;
+        if (ignoreCase) {
+            actualTag = StringUtils.upperCase(tag);
         }
+        return new Task(priority, lineNumber, actualTag, StringUtils.remove(message.trim(), ":").trim());
     }
 }
 
@@ -0,0 +1,714 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang.ObjectUtils;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Stores the tasks of a build in a binary, column oriented file. Compared to the XML serialization of the tasks the
+ * file is smaller and can be read without reflection.
+ * <p>
+ * The file starts with a header: a magic number, the version of the format, the number of tasks and the dictionary
+ * of the strings that are shared by several tasks (file, package, module and path names, tags, authors and
+ * commits). The tasks are sorted by module, package, file and line and are split into pages of {@link #PAGE_SIZE}
+ * tasks. The header contains the length of each page, so that pages can be skipped. Within a page each property is
+ * stored as a column, i.e. the values of all tasks of the page are stored one after another: strings as reference
+ * into the dictionary, the messages inline, and numbers as variable length integers. Line numbers and keys are
+ * stored as difference to the previous task. The dictionary and each page are compressed individually using
+ * {@link Deflater}, so that single pages can still be skipped and are decompressed while they are read.
+ * </p>
+ * <p>
+ * The file is written to a temporary file that is forced to the disk and then renamed, so that an abrupt shutdown
+ * never leaves a partially written file.
+ * </p>
+ * <p>
+ * Next to the store a {@link TaskIndex} is written, so that the tasks of a module, package, file, priority or tag
+ * can be read using {@link #read(File, int[])}: only the pages that contain these tasks are decoded.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+public final class TaskStore {
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x5441534B;
+    /** Version of the format, incremented for incompatible changes. */
+    static final int VERSION = 2;
+    /** Version of the format without compression, still supported when reading. */
+    private static final int UNCOMPRESSED_VERSION = 1;
+    /** Number of tasks in a page. */
+    static final int PAGE_SIZE = 1024;
+    /** Maximum number of tasks in a page that is accepted when reading. */
+    private static final int MAXIMUM_PAGE_SIZE = 1 << 16;
+    /** Maximum ratio between the decompressed and the compressed bytes of the {@link Deflater} format. */
+    private static final int MAXIMUM_COMPRESSION = 1032;
+
+    /** Reference to a {@code null} string. */
+    private static final int NULL_STRING = 0;
+
+    /** Sorts the tasks so that the tasks of a module, package and file are stored next to each other. */
+    private static final Comparator<Task> BY_LOCATION = new Comparator<Task>() {
+        @Override
+        public int compare(final Task left, final Task right) {
+            int result = compareStrings(left.getModuleName(), right.getModuleName());
+            if (result == 0) {
+                result = compareStrings(left.getPackageName(), right.getPackageName());
+            }
+            if (result == 0) {
+                result = compareStrings(left.getFileName(), right.getFileName());
+            }
+            if (result == 0) {
+                result = left.getPrimaryLineNumber() - right.getPrimaryLineNumber();
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compareStrings(final String left, final String right) {
+            return ObjectUtils.compare(left, right);
+        }
+    };
+
+    /**
+     * Writes the specified tasks to the specified file. The file is replaced only if all tasks have been written.
+     *
+     * @param annotations
+     *            the tasks to write
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file could not be written
+     * @throws IllegalArgumentException
+     *             if one of the annotations is not a {@link Task}
+     */
+    public static void write(final Collection<? extends FileAnnotation> annotations, final File file)
+            throws IOException {
+        List<Task> tasks = sort(annotations);
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            write(tasks, output);
+            sync(output, stream);
+        }
+        finally {
+            output.close();
+        }
+        replace(temporary, file);
+        TaskIndex.create(tasks).save(file);
+    }
+
+    /**
+     * Returns the specified tasks in the order of the store.
+     *
+     * @param annotations
+     *            the tasks
+     * @return the sorted tasks
+     * @throws IllegalArgumentException
+     *             if one of the annotations is not a {@link Task}
+     */
+    static List<Task> sort(final Collection<? extends FileAnnotation> annotations) {
+        List<Task> tasks = new ArrayList<Task>(annotations.size());
+        for (FileAnnotation annotation : annotations) {
+            if (!(annotation instanceof Task)) {
+                throw new IllegalArgumentException("Not a task: " + annotation);
+            }
+            tasks.add((Task)annotation);
+        }
+        Collections.sort(tasks, BY_LOCATION);
+        return tasks;
+    }
+
+    /**
+     * Writes the specified tasks to the specified stream.
+     *
+     * @param tasks
+     *            the tasks in the order of the store, see {@link #sort(Collection)}
+     * @param output
+     *            the stream to write to
+     * @throws IOException
+     *             if the tasks could not be written
+     */
+    static void write(final List<Task> tasks, final DataOutputStream output) throws IOException {
+        new Writer(tasks).write(output);
+    }
+
+    /**
+     * Forces the written bytes to the disk, so that the file is complete before it is renamed.
+     *
+     * @param output
+     *            the buffered stream
+     * @param stream
+     *            the underlying stream of the file
+     * @throws IOException
+     *             if the bytes could not be written
+     */
+    static void sync(final OutputStream output, final FileOutputStream stream) throws IOException {
+        output.flush();
+        stream.getFD().sync();
+    }
+
+    /**
+     * Compresses the specified bytes using a {@link Deflater}.
+     *
+     * @param bytes
+     *            the bytes to compress
+     * @return the compressed bytes, see {@link Block}
+     * @throws IOException
+     *             if the bytes could not be compressed
+     */
+    static byte[] deflate(final byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream output = new DeflaterOutputStream(compressed, deflater);
+            output.write(bytes);
+            output.close();
+        }
+        finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Replaces the specified file with the specified temporary file.
+     *
+     * @param temporary
+     *            the completely written temporary file
+     * @param file
+     *            the file to replace
+     * @throws IOException
+     *             if the file could not be replaced
+     */
+    static void replace(final File temporary, final File file) throws IOException {
+        if (!temporary.renameTo(file)) {
+            FileUtils.deleteQuietly(file);
+            FileUtils.moveFile(temporary, file);
+        }
+    }
+
+    /**
+     * Deletes the specified file and its index.
+     *
+     * @param file
+     *            the file to delete
+     */
+    public static void delete(final File file) {
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(TaskIndex.getIndexFile(file));
+    }
+
+    /**
+     * Reads all tasks of the specified file.
+     *
+     * @param file
+     *            the file to read
+     * @return the tasks
+     * @throws IOException
+     *             if the file could not be read or is not a valid file
+     */
+    public static List<Task> read(final File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return read(input, file.length());
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads all tasks of the specified stream. All sizes of the stream are checked against the length of the stream
+     * before anything is allocated, so that a malformed stream can't exhaust the memory.
+     *
+     * @param input
+     *            the stream to read
+     * @param length
+     *            the maximum number of bytes of the stream
+     * @return the tasks
+     * @throws IOException
+     *             if the stream could not be read or does not contain valid tasks
+     */
+    static List<Task> read(final DataInputStream input, final long length) throws IOException {
+        Header header = new Header(input, length);
+        List<Task> tasks = new ArrayList<Task>(Math.min(header.numberOfTasks, header.pageSize));
+        for (int page = 0; page < header.pageLengths.length; page++) {
+            header.readPage(input, page, null, tasks);
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads the tasks at the specified positions of the specified file. Pages without a selected task are skipped.
+     *
+     * @param file
+     *            the file to read
+     * @param ranges
+     *            the positions of the tasks to read, as sorted pairs of start (inclusive) and end (exclusive), see
+     *            {@link TaskIndex#getRanges(TaskIndex.Dimension, String)}
+     * @return the tasks
+     * @throws IOException
+     *             if the file could not be read or is not a valid file
+     */
+    public static List<Task> read(final File file, final int[] ranges) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            Header header = new Header(input, file.length());
+            for (int position = 0; position < ranges.length; position += 2) {
+                int previous = position == 0 ? 0 : ranges[position - 1];
+                if (ranges[position] < previous || ranges[position + 1] < ranges[position]
+                        || ranges[position + 1] > header.numberOfTasks) {
+                    throw new IllegalArgumentException("Invalid range " + ranges[position] + "-" + ranges[position + 1]);
+                }
+            }
+
+            List<Task> tasks = new ArrayList<Task>();
+            int[] remaining = ranges.clone();
+            int position = 0;
+            while (position < remaining.length) {
+                if (remaining[position] == remaining[position + 1]) {
+                    position += 2;
+                    continue;
+                }
+                int page = remaining[position] / header.pageSize;
+                int pageStart = page * header.pageSize;
+                int pageEnd = Math.min(pageStart + header.pageSize, header.numberOfTasks);
+                boolean[] selected = new boolean[pageEnd - pageStart];
+                while (position < remaining.length && remaining[position] < pageEnd) {
+                    Arrays.fill(selected, remaining[position] - pageStart,
+                            Math.min(remaining[position + 1], pageEnd) - pageStart, true);
+                    if (remaining[position + 1] > pageEnd) {
+                        remaining[position] = pageEnd; // the range continues in the next page
+                        break;
+                    }
+                    position += 2;
+                }
+                header.skipTo(input, page);
+                header.readPage(input, page, selected, tasks);
+            }
+            return tasks;
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Writes the header and the pages of the tasks.
+     */
+    private static class Writer {
+        private final List<Task> tasks;
+        private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        Writer(final List<Task> tasks) {
+            this.tasks = tasks;
+        }
+
+        void write(final DataOutputStream output) throws IOException {
+            for (Task task : tasks) {
+                add(task.getFileName());
+                add(task.getPackageName());
+                add(task.getModuleName());
+                add(task.getPathName());
+                add(task.getType());
+                add(task.getAuthorName());
+                add(task.getAuthorEmail());
+                add(task.getCommitId());
+            }
+
+            List<byte[]> pages = new ArrayList<byte[]>();
+            for (int start = 0; start < tasks.size(); start += PAGE_SIZE) {
+                pages.add(writePage(tasks.subList(start, Math.min(tasks.size(), start + PAGE_SIZE))));
+            }
+
+            ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+            DataOutputStream dictionaryOutput = new DataOutputStream(dictionaryBytes);
+            for (String value : strings) {
+                writeBytes(dictionaryOutput, value.getBytes(TaskReader.ENCODING));
+            }
+            dictionaryOutput.close();
+            byte[] compressedDictionary = deflate(dictionaryBytes.toByteArray());
+
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            VarInt.writeNumber(output, tasks.size());
+            VarInt.writeNumber(output, PAGE_SIZE);
+            VarInt.writeNumber(output, strings.size());
+            writeBytes(output, compressedDictionary);
+            VarInt.writeNumber(output, pages.size());
+            for (byte[] page : pages) {
+                VarInt.writeNumber(output, page.length);
+            }
+            for (byte[] page : pages) {
+                output.write(page);
+            }
+        }
+
+        private void add(final String value) {
+            if (value != null && !dictionary.containsKey(value)) {
+                strings.add(value);
+                dictionary.put(value, strings.size());
+            }
+        }
+
+        private byte[] writePage(final List<Task> page) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            for (Task task : page) {
+                writeString(output, task.getModuleName());
+            }
+            for (Task task : page) {
+                writeString(output, task.getPackageName());
+            }
+            for (Task task : page) {
+                writeString(output, task.getFileName());
+            }
+            for (Task task : page) {
+                writeString(output, task.getPathName());
+            }
+            int line = 0;
+            for (Task task : page) {
+                VarInt.writeSignedNumber(output, task.getPrimaryLineNumber() - line);
+                line = task.getPrimaryLineNumber();
+            }
+            for (Task task : page) {
+                output.writeByte(task.getPriority().ordinal());
+            }
+            for (Task task : page) {
+                writeString(output, task.getType());
+            }
+            for (Task task : page) {
+                String message = task.getDetailMessage();
+                if (message == null) {
+                    VarInt.writeNumber(output, NULL_STRING);
+                }
+                else {
+                    byte[] encoded = message.getBytes(TaskReader.ENCODING);
+                    VarInt.writeNumber(output, encoded.length + 1);
+                    output.write(encoded);
+                }
+            }
+            for (Task task : page) {
+                VarInt.writeSignedNumber(output, task.getContextHashCode());
+            }
+            long key = 0;
+            for (Task task : page) {
+                VarInt.writeSignedNumber(output, task.getKey() - key);
+                key = task.getKey();
+            }
+            for (Task task : page) {
+                writeString(output, task.getAuthorName());
+            }
+            for (Task task : page) {
+                writeString(output, task.getAuthorEmail());
+            }
+            for (Task task : page) {
+                writeString(output, task.getCommitId());
+            }
+            output.close();
+            return deflate(bytes.toByteArray());
+        }
+
+        private void writeString(final DataOutputStream output, final String value) throws IOException {
+            if (value == null) {
+                VarInt.writeNumber(output, NULL_STRING);
+            }
+            else {
+                VarInt.writeNumber(output, dictionary.get(value));
+            }
+        }
+
+        private void writeBytes(final DataOutputStream output, final byte[] value) throws IOException {
+            VarInt.writeNumber(output, value.length);
+            output.write(value);
+        }
+    }
+
+    /**
+     * The header of a file: the number of tasks, the dictionary and the lengths of the pages.
+     */
+    private static class Header {
+        private final int numberOfTasks;
+        private final int pageSize;
+        private final String[] dictionary;
+        private final int[] pageLengths;
+        private final boolean isCompressed;
+        /** The page at the current position of the stream. */
+        private int currentPage;
+
+        Header(final DataInputStream input, final long length) throws IOException {
+            if (input.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a tasks file");
+            }
+            int version = input.readUnsignedByte();
+            if (version != VERSION && version != UNCOMPRESSED_VERSION) {
+                throw new StreamCorruptedException("Unsupported version " + version);
+            }
+            isCompressed = version == VERSION;
+            numberOfTasks = VarInt.readSize(input);
+            pageSize = VarInt.readSize(input);
+            if (pageSize <= 0 || pageSize > MAXIMUM_PAGE_SIZE) {
+                throw new StreamCorruptedException("Malformed page size " + pageSize);
+            }
+            int numberOfStrings = VarInt.readSize(input);
+            int blockLength = isCompressed ? readSize(input, length) : -1;
+            long limit = getDecompressedLimit(blockLength, length);
+            dictionary = new String[checkSize(numberOfStrings, limit)];
+            Block block = new Block(input, blockLength);
+            try {
+                for (int i = 0; i < dictionary.length; i++) {
+                    byte[] value = readBytes(block.input, readSize(block.input, limit));
+                    dictionary[i] = new String(value, TaskReader.ENCODING);
+                }
+            }
+            finally {
+                block.close();
+            }
+            pageLengths = new int[readSize(input, length)];
+            if (pageLengths.length != ((long)numberOfTasks + pageSize - 1) / pageSize) {
+                throw new StreamCorruptedException(pageLengths.length + " pages do not match " + numberOfTasks
+                        + " tasks");
+            }
+            long total = 0;
+            for (int i = 0; i < pageLengths.length; i++) {
+                pageLengths[i] = readSize(input, length);
+                total += pageLengths[i];
+            }
+            if (total > length) {
+                throw new StreamCorruptedException("Pages exceed the length " + length);
+            }
+        }
+
+        /**
+         * Returns the maximum number of bytes of a block.
+         *
+         * @param blockLength
+         *            the number of compressed bytes of the block, or -1 if the block is not compressed
+         * @param length
+         *            the maximum number of bytes of the stream
+         */
+        private static long getDecompressedLimit(final int blockLength, final long length) {
+            if (blockLength < 0) {
+                return length;
+            }
+            return (long)blockLength * MAXIMUM_COMPRESSION;
+        }
+
+        /**
+         * Reads a size that can't exceed the specified number of bytes, since each element needs at least one byte.
+         */
+        private static int readSize(final DataInputStream input, final long limit) throws IOException {
+            return checkSize(VarInt.readSize(input), limit);
+        }
+
+        private static int checkSize(final int size, final long limit) throws StreamCorruptedException {
+            if (size > limit) {
+                throw new StreamCorruptedException("Size " + size + " exceeds the length " + limit);
+            }
+            return size;
+        }
+
+        /**
+         * Skips the pages before the specified page.
+         */
+        void skipTo(final DataInputStream input, final int page) throws IOException {
+            long skip = 0;
+            for (; currentPage < page; currentPage++) {
+                skip += pageLengths[currentPage];
+            }
+            IOUtils.skipFully(input, skip);
+        }
+
+        /**
+         * Reads the tasks of the specified page. The stream needs to be positioned at the start of the page.
+         *
+         * @param selected
+         *            the tasks of the page to read, or {@code null} to read all tasks of the page
+         */
+        void readPage(final DataInputStream input, final int page, final boolean[] selected, final List<Task> tasks)
+                throws IOException {
+            currentPage = page + 1;
+            int size = Math.min(pageSize, numberOfTasks - page * pageSize);
+            if (size <= 0) {
+                throw new StreamCorruptedException("Unexpected page " + page);
+            }
+            int blockLength = isCompressed ? pageLengths[page] : -1;
+            Block block = new Block(input, blockLength);
+            try {
+                decodePage(block.input, size, getDecompressedLimit(blockLength, pageLengths[page]), selected, tasks);
+            }
+            finally {
+                block.close();
+            }
+        }
+
+        private void decodePage(final DataInputStream input, final int size, final long limit,
+                final boolean[] selected, final List<Task> tasks) throws IOException {
+            String[] modules = readStrings(input, size);
+            String[] packages = readStrings(input, size);
+            String[] files = readStrings(input, size);
+            String[] paths = readStrings(input, size);
+            int[] lines = new int[size];
+            int line = 0;
+            for (int i = 0; i < size; i++) {
+                line += (int)VarInt.readSignedNumber(input);
+                lines[i] = line;
+            }
+            Priority[] priorities = new Priority[size];
+            for (int i = 0; i < size; i++) {
+                priorities[i] = readPriority(input);
+            }
+            String[] tags = readStrings(input, size);
+            String[] messages = new String[size];
+            for (int i = 0; i < size; i++) {
+                int length = readSize(input, limit + 1);
+                if (length != NULL_STRING) {
+                    messages[i] = new String(readBytes(input, length - 1), TaskReader.ENCODING);
+                }
+            }
+            long[] hashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = VarInt.readSignedNumber(input);
+            }
+            long[] keys = new long[size];
+            long key = 0;
+            for (int i = 0; i < size; i++) {
+                key += VarInt.readSignedNumber(input);
+                keys[i] = key;
+            }
+            String[] authors = readStrings(input, size);
+            String[] emails = readStrings(input, size);
+            String[] commits = readStrings(input, size);
+
+            for (int i = 0; i < size; i++) {
+                if (selected != null && !selected[i]) {
+                    continue;
+                }
+                Task task = new Task(priorities[i], lines[i], tags[i], messages[i]);
+                task.setModuleName(modules[i]);
+                task.setPackageName(packages[i]);
+                task.setFileName(files[i]);
+                task.setPathName(paths[i]);
+                task.setContextHashCode(hashes[i]);
+                task.setKey(keys[i]);
+                task.setAuthorName(authors[i]);
+                task.setAuthorEmail(emails[i]);
+                task.setCommitId(commits[i]);
+                tasks.add(task);
+            }
+        }
+
+        private String[] readStrings(final DataInputStream input, final int size) throws IOException {
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                int reference = VarInt.readSize(input);
+                if (reference != NULL_STRING) {
+                    if (reference > dictionary.length) {
+                        throw new StreamCorruptedException("Unknown string " + reference);
+                    }
+                    values[i] = dictionary[reference - 1];
+                }
+            }
+            return values;
+        }
+
+        private Priority readPriority(final DataInputStream input) throws IOException {
+            int ordinal = input.readUnsignedByte();
+            Priority[] priorities = Priority.values();
+            if (ordinal >= priorities.length) {
+                throw new StreamCorruptedException("Unknown priority " + ordinal);
+            }
+            return priorities[ordinal];
+        }
+
+        private byte[] readBytes(final DataInputStream input, final int length) throws IOException {
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * A compressed part of a file that is decompressed while it is read. Closing the block skips the remaining bytes
+     * of the block, the underlying stream is not closed.
+     */
+    static class Block implements Closeable {
+        private final DataInputStream input;
+        private final BoundedInputStream bounded;
+        private final Inflater inflater;
+
+        /**
+         * Creates a new block.
+         *
+         * @param input
+         *            the stream of the file
+         * @param length
+         *            the number of compressed bytes, or -1 if the block is not compressed
+         */
+        Block(final DataInputStream input, final int length) {
+            if (length < 0) {
+                this.input = input;
+                bounded = null;
+                inflater = null;
+            }
+            else {
+                bounded = new BoundedInputStream(input, length);
+                bounded.setPropagateClose(false);
+                inflater = new Inflater();
+                this.input = new DataInputStream(new BufferedInputStream(new InflaterInputStream(bounded, inflater)));
+            }
+        }
+
+        /**
+         * Returns the decompressed stream of this block.
+         *
+         * @return the stream
+         */
+        DataInputStream getInput() {
+            return input;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bounded != null) {
+                inflater.end();
+                IOUtils.skip(bounded, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private TaskStore() {
+        // prevents instantiation
+    }
+}
@@ -0,0 +1,156 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * The number of open tasks of a build, by priority, tag, module, package and language, together with the number of
+ * new and fixed tasks. The totals are computed once when the result of a build is created and are stored with the
+ * result, so that summaries, health reports, tokens, columns and trend graphs do not need to read the tasks of the
+ * build.
+ *
+ * @author Ulli Hafner
+ */
+public class TaskTotals implements Serializable {
+    private static final long serialVersionUID = 4211465431402437447L;
+
+    private final int numberOfTasks;
+    private final EnumMap<Priority, Integer> priorities = new EnumMap<Priority, Integer>(Priority.class);
+    private final Map<String, Integer> tags = new TreeMap<String, Integer>();
+    private final Map<String, Integer> modules = new TreeMap<String, Integer>();
+    private final Map<String, Integer> packages = new TreeMap<String, Integer>();
+    /** The number of tasks by the file extension of the language. */
+    private final Map<String, Integer> languages = new TreeMap<String, Integer>();
+    private final int numberOfNewTasks;
+    private final int numberOfFixedTasks;
+
+    /**
+     * Creates a new instance of {@link TaskTotals}.
+     *
+     * @param tasks
+     *            the open tasks of the build
+     * @param numberOfNewTasks
+     *            the number of new tasks with respect to the reference build
+     * @param numberOfFixedTasks
+     *            the number of fixed tasks with respect to the reference build
+     */
+    public TaskTotals(final Collection<FileAnnotation> tasks, final int numberOfNewTasks,
+            final int numberOfFixedTasks) {
+        numberOfTasks = tasks.size();
+        for (Priority priority : Priority.values()) {
+            priorities.put(priority, 0);
+        }
+        for (FileAnnotation task : tasks) {
+            priorities.put(task.getPriority(), priorities.get(task.getPriority()) + 1);
+            increment(tags, task.getType());
+            increment(modules, task.getModuleName());
+            increment(packages, task.getPackageName());
+            increment(languages, StringUtils.lowerCase(FilenameUtils.getExtension(task.getFileName()), Locale.ENGLISH));
+        }
+        this.numberOfNewTasks = numberOfNewTasks;
+        this.numberOfFixedTasks = numberOfFixedTasks;
+    }
+
+    private static void increment(final Map<String, Integer> counts, final String value) {
+        String key = StringUtils.defaultString(value);
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Returns the total number of open tasks.
+     *
+     * @return the number of tasks
+     */
+    public int getNumberOfTasks() {
+        return numberOfTasks;
+    }
+
+    /**
+     * Returns the number of open tasks with the specified priority.
+     *
+     * @param priority
+     *            the priority
+     * @return the number of tasks
+     */
+    public int getNumberOfTasks(final Priority priority) {
+        return priorities.get(priority);
+    }
+
+    /**
+     * Returns the number of open tasks of each tag.
+     *
+     * @return the tags, mapped to the number of tasks
+     */
+    public Map<String, Integer> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    /**
+     * Returns the number of open tasks of each module.
+     *
+     * @return the module names, mapped to the number of tasks
+     */
+    public Map<String, Integer> getModules() {
+        return Collections.unmodifiableMap(modules);
+    }
+
+    /**
+     * Returns the number of open tasks of each package.
+     *
+     * @return the package names, mapped to the number of tasks
+     */
+    public Map<String, Integer> getPackages() {
+        return Collections.unmodifiableMap(packages);
+    }
+
+    /**
+     * Returns the number of open tasks in the files of each language.
+     *
+     * @return the lower case file extensions, mapped to the number of tasks
+     */
+    public Map<String, Integer> getLanguages() {
+        return Collections.unmodifiableMap(languages);
+    }
+
+    /**
+     * Returns the number of open tasks in the files of the specified language.
+     *
+     * @param extension
+     *            the lower case file extension of the language
+     * @return the number of tasks
+     */
+    public int getNumberOfTasksInLanguage(final String extension) {
+        Integer count = languages.get(extension);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Returns the number of new tasks with respect to the reference build.
+     *
+     * @return the number of new tasks
+     */
+    public int getNumberOfNewTasks() {
+        return numberOfNewTasks;
+    }
+
+    /**
+     * Returns the number of fixed tasks with respect to the reference build.
+     *
+     * @return the number of fixed tasks
+     */
+    public int getNumberOfFixedTasks() {
+        return numberOfFixedTasks;
+    }
+}
@@ -0,0 +1,153 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Writes tasks to a stream so that they can be transferred from the agent to the controller. Only the properties
+ * that are assigned by the {@link WorkspaceScanner} are written, the {@link TaskReader} creates new tasks with these
+ * properties.
+ * <p>
+ * The tasks are grouped by file: the file, package, module and path names are written once per group, followed by
+ * the line, priority, tag, message and context hash code of each task of the file. Strings are dictionary encoded,
+ * i.e. each distinct string is written only once and then referenced by its index. Numbers are written as variable
+ * length integers. The stream is flushed in batches of {@link #BATCH_SIZE} tasks; at the end of a batch the
+ * dictionary is cleared, so that writer and reader only need to keep the strings of one batch in memory.
+ * </p>
+ *
+ * @author Ulli Hafner
+ */
+class TaskWriter implements Closeable {
+    /** Number of tasks that are written before the stream is flushed. */
+    static final int BATCH_SIZE = 1000;
+
+    /** Marks the end of the stream. */
+    static final int END = 0;
+    /** Marks a group of tasks of the same file. */
+    static final int GROUP = 1;
+    /** Marks the end of a batch, the dictionary is cleared. */
+    static final int BATCH = 2;
+
+    /** Reference to a new string that is added to the dictionary. */
+    static final int NEW_STRING = 0;
+    /** Reference to a {@code null} string. */
+    static final int NULL_STRING = 1;
+    /** Index of the first string in the dictionary. */
+    static final int FIRST_INDEX = 2;
+
+    private final DataOutputStream output;
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private int pending;
+
+    /**
+     * Creates a new instance of {@link TaskWriter}.
+     *
+     * @param output
+     *            the stream to write the tasks to
+     */
+    TaskWriter(final OutputStream output) {
+        this.output = new DataOutputStream(new BufferedOutputStream(output));
+    }
+
+    /**
+     * Writes the specified tasks.
+     *
+     * @param tasks
+     *            the tasks to write
+     * @throws IOException
+     *             if the tasks could not be written
+     */
+    void write(final Collection<Task> tasks) throws IOException {
+        List<Task> group = new ArrayList<Task>();
+        for (Task task : tasks) {
+            if (!group.isEmpty() && !isSameFile(group.get(0), task)) {
+                writeGroup(group);
+                group.clear();
+            }
+            group.add(task);
+        }
+        if (!group.isEmpty()) {
+            writeGroup(group);
+        }
+    }
+
+    private boolean isSameFile(final Task first, final Task second) {
+        return StringUtils.equals(first.getFileName(), second.getFileName())
+                && StringUtils.equals(first.getPackageName(), second.getPackageName())
+                && StringUtils.equals(first.getModuleName(), second.getModuleName())
+                && StringUtils.equals(first.getPathName(), second.getPathName());
+    }
+
+    private void writeGroup(final List<Task> group) throws IOException {
+        Task first = group.get(0);
+        VarInt.writeNumber(output, GROUP);
+        writeString(first.getFileName());
+        writeString(first.getPackageName());
+        writeString(first.getModuleName());
+        writeString(first.getPathName());
+        VarInt.writeNumber(output, group.size());
+
+        int line = 0;
+        for (Task task : group) {
+            VarInt.writeSignedNumber(output, task.getPrimaryLineNumber() - line);
+            line = task.getPrimaryLineNumber();
+            output.writeByte(task.getPriority().ordinal());
+            writeString(task.getType());
+            writeString(task.getDetailMessage());
+            VarInt.writeSignedNumber(output, task.getContextHashCode());
+        }
+
+        pending += group.size();
+        if (pending >= BATCH_SIZE) {
+            VarInt.writeNumber(output, BATCH);
+            dictionary.clear();
+            output.flush();
+            pending = 0;
+        }
+    }
+
+    private void writeString(final String value) throws IOException {
+        if (value == null) {
+            VarInt.writeNumber(output, NULL_STRING);
+        }
+        else {
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                dictionary.put(value, dictionary.size() + FIRST_INDEX);
+                VarInt.writeNumber(output, NEW_STRING);
+                byte[] bytes = value.getBytes(TaskReader.ENCODING);
+                VarInt.writeNumber(output, bytes.length);
+                output.write(bytes);
+            }
+            else {
+                VarInt.writeNumber(output, index);
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the tasks and closes the stream.
+     *
+     * @throws IOException
+     *             if the stream could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            VarInt.writeNumber(output, END);
+        }
+        finally {
+            output.close();
+        }
+    }
+}
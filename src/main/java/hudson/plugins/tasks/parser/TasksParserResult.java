@@ -1,5 +1,14 @@
 package hudson.plugins.tasks.parser;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import hudson.plugins.analysis.core.ParserResult;
 import hudson.plugins.analysis.util.model.JavaProject;
 
@@ -14,6 +23,14 @@ public class TasksParserResult extends ParserResult {
     private static final long serialVersionUID = 4904609926196858707L;
     /** The number of scanned files in this project. */
     private int numberOfFiles;
+    /** The tasks in the transfer format of {@link TaskWriter}, decoded when the result is deserialized. */
+    private byte[] encodedTasks;
+    /** The files that have been skipped or truncated since they exceeded a scan budget, mapped to the reason. */
+    private TreeMap<String, String> skippedFiles;
+    /** The reason why the scan has been stopped before all files have been scanned. */
+    private String incompleteReason;
+    /** The statistics of the phases of the scan. */
+    private ScanStatistics statistics;
 
     /**
      * Creates a new instance of <code>TasksProject</code>.
@@ -53,5 +70,104 @@ public class TasksParserResult extends ParserResult {
     public void addScannedFiles(final int newFiles) {
         numberOfFiles += newFiles;
     }
+
+    /**
+     * Records that the specified file has been skipped or truncated since it exceeded a scan budget.
+     *
+     * @param fileName
+     *            the name of the file
+     * @param reason
+     *            the exceeded budget
+     */
+    public void addSkippedFile(final String fileName, final String reason) {
+        if (skippedFiles == null) {
+            skippedFiles = new TreeMap<String, String>();
+        }
+        skippedFiles.put(fileName, reason);
+    }
+
+    /**
+     * Returns the files that have been skipped or truncated since they exceeded a scan budget.
+     *
+     * @return the names of the files, mapped to the exceeded budget
+     */
+    public Map<String, String> getSkippedFiles() {
+        if (skippedFiles == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(skippedFiles);
+    }
+
+    /**
+     * Records that the scan has been stopped before all files have been scanned.
+     *
+     * @param reason
+     *            the exceeded budget
+     */
+    public void setIncomplete(final String reason) {
+        incompleteReason = reason;
+    }
+
+    /**
+     * Returns the reason why the scan has been stopped before all files have been scanned.
+     *
+     * @return the exceeded budget, or {@code null} if all files have been scanned
+     */
+    public String getIncompleteReason() {
+        return incompleteReason;
+    }
+
+    /**
+     * Returns whether all files have been scanned completely, i.e. no scan budget has been exceeded.
+     *
+     * @return {@code true} if all files have been scanned completely, {@code false} if the result is partial
+     */
+    public boolean isComplete() {
+        return incompleteReason == null && getSkippedFiles().isEmpty();
+    }
+
+    /**
+     * Returns the statistics of the phases of the scan.
+     *
+     * @return the statistics, empty if the scan has not been measured
+     */
+    public ScanStatistics getStatistics() {
+        if (statistics == null) {
+            statistics = new ScanStatistics();
+        }
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics of the phases of the scan.
+     *
+     * @param statistics
+     *            the statistics
+     */
+    public void setStatistics(final ScanStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Sets the tasks of this project in the transfer format of {@link TaskWriter}. The tasks are added to this
+     * project when it is deserialized on the controller.
+     *
+     * @param encodedTasks
+     *            the encoded tasks
+     */
+    void setEncodedTasks(final byte[] encodedTasks) {
+        this.encodedTasks = encodedTasks;
+    }
+
+    private void readObject(final ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+
+        if (encodedTasks != null) {
+            List<Task> tasks = new ArrayList<Task>();
+            new TaskReader(new ByteArrayInputStream(encodedTasks)).read(tasks);
+            encodedTasks = null;
+            addAnnotations(tasks);
+        }
+    }
 }
 
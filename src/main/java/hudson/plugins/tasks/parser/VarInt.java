@@ -0,0 +1,109 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Writes and reads numbers with a variable length encoding, used by all binary formats of the tasks. Each byte
+ * stores 7 bits of the number, starting with the lowest bits, the highest bit of a byte marks that more bytes
+ * follow. Signed numbers are zigzag encoded first, so that numbers with a small absolute value use few bytes.
+ *
+ * @author Ulli Hafner
+ */
+final class VarInt {
+    private static final int PAYLOAD_BITS = 7;
+    private static final int PAYLOAD_MASK = 0x7f;
+    private static final int CONTINUATION = 0x80;
+
+    /**
+     * Writes the specified number, negative numbers use the maximum length.
+     *
+     * @param output
+     *            the stream to write to
+     * @param value
+     *            the number to write
+     * @throws IOException
+     *             if the number could not be written
+     */
+    static void writeNumber(final DataOutputStream output, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~PAYLOAD_MASK) != 0) {
+            output.writeByte((int)(remaining & PAYLOAD_MASK) | CONTINUATION);
+            remaining >>>= PAYLOAD_BITS;
+        }
+        output.writeByte((int)remaining);
+    }
+
+    /**
+     * Writes the specified signed number.
+     *
+     * @param output
+     *            the stream to write to
+     * @param value
+     *            the number to write
+     * @throws IOException
+     *             if the number could not be written
+     */
+    static void writeSignedNumber(final DataOutputStream output, final long value) throws IOException {
+        writeNumber(output, (value << 1) ^ (value >> (Long.SIZE - 1)));
+    }
+
+    /**
+     * Reads a number that has been written by {@link #writeNumber(DataOutputStream, long)}.
+     *
+     * @param input
+     *            the stream to read from
+     * @return the number
+     * @throws IOException
+     *             if the number could not be read or is malformed
+     */
+    static long readNumber(final DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += PAYLOAD_BITS) {
+            int next = input.readUnsignedByte();
+            value |= (long)(next & PAYLOAD_MASK) << shift;
+            if ((next & CONTINUATION) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed number");
+    }
+
+    /**
+     * Reads a signed number that has been written by {@link #writeSignedNumber(DataOutputStream, long)}.
+     *
+     * @param input
+     *            the stream to read from
+     * @return the number
+     * @throws IOException
+     *             if the number could not be read or is malformed
+     */
+    static long readSignedNumber(final DataInputStream input) throws IOException {
+        long value = readNumber(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a size, i.e. a number that has been written by {@link #writeNumber(DataOutputStream, long)} and needs
+     * to fit into an {@code int}.
+     *
+     * @param input
+     *            the stream to read from
+     * @return the size
+     * @throws IOException
+     *             if the number could not be read or is not a valid size
+     */
+    static int readSize(final DataInputStream input) throws IOException {
+        long value = readNumber(input);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Malformed size " + value);
+        }
+        return (int)value;
+    }
+
+    private VarInt() {
+        // prevents instantiation
+    }
+}
@@ -1,25 +1,52 @@
 package hudson.plugins.tasks.parser;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import jenkins.MasterToSlaveFileCallable;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.tools.ant.types.FileSet;
 
 import hudson.FilePath;
 
-import hudson.plugins.analysis.util.ContextHashCode;
 import hudson.plugins.analysis.util.EncodingValidator;
 import hudson.plugins.analysis.util.ModuleDetector;
 import hudson.plugins.analysis.util.NullModuleDetector;
-import hudson.plugins.analysis.util.PackageDetectors;
 import hudson.plugins.analysis.util.StringPluginLogger;
+import hudson.plugins.tasks.parser.ScanStatistics.Phase;
 
+import hudson.remoting.Pipe;
 import hudson.remoting.VirtualChannel;
 
 /**
@@ -32,6 +59,12 @@ import hudson.remoting.VirtualChannel;
 public class WorkspaceScanner extends MasterToSlaveFileCallable<TasksParserResult> {
     /** Generated ID. */
     private static final long serialVersionUID = -4355362392102020724L;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final String ABORT_MESSAGE = "Canceling scanning since build has been aborted.";
+    private static final long KILOBYTE = 1024;
+    private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+    /** Maximum size of the buffer of each scanning thread, larger files are scanned line by line. */
+    private static final int MAXIMUM_BUFFER_SIZE = 4 * 1024 * 1024;
     /** Ant file-set pattern to define the files to scan. */
     private final String filePattern;
     /** Ant file-set pattern to define the files to exclude from scan. */
@@ -54,7 +87,46 @@ public class WorkspaceScanner extends MasterToSlaveFileCallable<TasksParserResul
     private final boolean shouldDetectModules;
     private final boolean asRegexp;
 
+    /** The number of threads that scan the files in parallel. */
+    private int numberOfThreads;
+    /** Determines whether the tasks of unchanged files should be reused from the previous scan. */
+    private boolean incremental;
+    /** The files to scan, or {@code null} if all files of the workspace should be scanned. */
+    private ArrayList<String> files;
+    /** The pipe to stream the tasks to the controller, or {@code null} if the tasks are part of the result. */
+    private Pipe pipe;
+    /** Maximum size of a file in kilobytes, larger files are skipped. 0 for no limit. */
+    private int maximumFileSize;
+    /** Maximum number of characters of a line that are matched, longer lines are truncated. 0 for no limit. */
+    private int maximumLineLength;
+    /** Time limit for scanning a single file in seconds. 0 for no limit. */
+    private int fileTimeLimit;
+    /** Time limit for scanning all files in seconds. 0 for no limit. */
+    private int scanTimeLimit;
+    /** Maximum number of tasks, the scan is stopped when this number is reached. 0 for no limit. */
+    private int maximumTasks;
+
     private transient StringPluginLogger stringLogger;
+    /** The manifest of the current scan, or {@code null} if the scan is not incremental. */
+    private transient ScanManifest manifest;
+    /** Writes the tasks to the pipe or the encoded result, or {@code null} if the tasks are part of the result. */
+    private transient TaskWriter taskWriter;
+    /** Determines whether this scanner has been sent to an agent, see {@link #readObject(ObjectInputStream)}. */
+    private transient boolean isRemote;
+    /** The time when the scan is stopped, see {@link #scanTimeLimit}. */
+    private transient long scanDeadline;
+    /** The reason why the scan has been stopped before all files have been scanned. */
+    private transient AtomicReference<String> stopReason;
+    /** The number of files that have not been scanned since the scan has been stopped. */
+    private transient AtomicInteger unscannedFiles;
+    /** The files that have been skipped or truncated since they exceeded a budget, mapped to the reason. */
+    private transient Map<String, String> skippedFiles;
+    /** The number of tasks that have been added to the result. */
+    private transient int numberOfTasks;
+    /** The statistics of the phases that run in the scanning thread. */
+    private transient ScanStatistics statistics;
+    /** The statistics of the {@link FileScanner file scanners}, one instance per thread. */
+    private transient List<ScanStatistics> scannerStatistics;
 
     /**
      * Creates a new instance of <code>WorkspaceScanner</code>.
@@ -198,46 +270,378 @@ public class WorkspaceScanner extends MasterToSlaveFileCallable<TasksParserResul
         return StringUtils.defaultIfEmpty(prefix, StringUtils.EMPTY);
     }
 
-    @Override
-    public TasksParserResult invoke(final File workspace, final VirtualChannel channel) throws IOException, InterruptedException {
-        String[] files = findFiles(workspace);
+    /**
+     * Sets the number of threads that scan the files in parallel. If the number of threads is less than 2, then all
+     * files are scanned sequentially.
+     *
+     * @param numberOfThreads the number of threads
+     */
+    public void setNumberOfThreads(final int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
 
-        TaskScanner taskScanner = new TaskScanner(high, normal, low, ignoreCase, asRegexp);
-        TasksParserResult result = new TasksParserResult(files.length);
-        ModuleDetector moduleDetector = createModuleDetector(workspace);
-        log("Found " + files.length + " files to scan for tasks");
-        for (String fileName : files) {
-            try {
-                File originalFile = new File(workspace, fileName);
-                Collection<Task> tasks = taskScanner.scan(readFile(originalFile));
-                if (!tasks.isEmpty()) {
-                    String absolutePath = originalFile.getAbsolutePath();
-                    String packageName = PackageDetectors.detectPackageName(absolutePath);
-                    String guessedModule = moduleDetector.guessModuleName(absolutePath);
-                    String actualModule = StringUtils.defaultIfEmpty(moduleName, guessedModule);
-
-                    for (Task task : tasks) {
-                        task.setFileName(absolutePath);
-                        task.setPackageName(packageName);
-                        task.setModuleName(actualModule);
-                        task.setPathName(workspace.getPath());
-
-                        ContextHashCode hashCode = new ContextHashCode();
-                        task.setContextHashCode(hashCode.create(absolutePath, task.getPrimaryLineNumber(), defaultEncoding));
-                    }
+    /**
+     * Returns the number of threads that scan the files in parallel.
+     *
+     * @return the number of threads
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * Determines whether the tasks of unchanged files should be reused from the previous scan. The tasks of the
+     * scanned files are stored in a manifest in the workspace. If modules are detected, then the detected modules
+     * are stored in the workspace as well and are reused as long as the build files do not change.
+     *
+     * @param incremental {@code true} if unchanged files should not be scanned again
+     */
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns whether the tasks of unchanged files should be reused from the previous scan.
+     *
+     * @return {@code true} if unchanged files should not be scanned again
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets the maximum size of a file. Larger files are skipped.
+     *
+     * @param maximumFileSize
+     *            the maximum size in kilobytes, 0 for no limit
+     */
+    public void setMaximumFileSize(final int maximumFileSize) {
+        this.maximumFileSize = maximumFileSize;
+    }
+
+    /**
+     * Sets the maximum number of characters of a line that are matched. Longer lines are truncated.
+     *
+     * @param maximumLineLength
+     *            the maximum line length, 0 for no limit
+     */
+    public void setMaximumLineLength(final int maximumLineLength) {
+        this.maximumLineLength = maximumLineLength;
+    }
+
+    /**
+     * Sets the time limit for scanning a single file. If the limit is exceeded, then only the tasks that have been
+     * found so far are reported for this file.
+     *
+     * @param fileTimeLimit
+     *            the time limit in seconds, 0 for no limit
+     */
+    public void setFileTimeLimit(final int fileTimeLimit) {
+        this.fileTimeLimit = fileTimeLimit;
+    }
+
+    /**
+     * Sets the time limit for scanning all files. If the limit is exceeded, then the remaining files are not
+     * scanned.
+     *
+     * @param scanTimeLimit
+     *            the time limit in seconds, 0 for no limit
+     */
+    public void setScanTimeLimit(final int scanTimeLimit) {
+        this.scanTimeLimit = scanTimeLimit;
+    }
+
+    /**
+     * Sets the maximum number of tasks. If the limit is reached, then the remaining files are not scanned.
+     *
+     * @param maximumTasks
+     *            the maximum number of tasks, 0 for no limit
+     */
+    public void setMaximumTasks(final int maximumTasks) {
+        this.maximumTasks = maximumTasks;
+    }
+
+    /**
+     * Restricts the scan to the specified files. Only the files that match the include and exclude patterns are
+     * scanned, files that do not exist are skipped. The manifest of an incremental scan is not updated, since it
+     * would contain the selected files only.
+     *
+     * @param fileNames
+     *            the names of the files to scan, relative to the workspace
+     */
+    public void setFiles(final Collection<String> fileNames) {
+        files = new ArrayList<String>(fileNames);
+    }
+
+    /**
+     * Scans the specified workspace for tasks. If the workspace is on an agent, then the tasks are streamed to the
+     * controller in batches while the scan is still running, so neither side needs to serialize or deserialize the
+     * whole result as a single object graph. The heap is not bounded by the size of a batch though: the controller
+     * collects all tasks until the result of the scan arrives, since the blame, the totals and the result of the
+     * build need all tasks.
+     *
+     * @param workspace
+     *            the workspace to scan
+     * @return the result of the scan
+     * @throws IOException
+     *             if the workspace could not be scanned or the tasks could not be transferred
+     * @throws InterruptedException
+     *             if the user canceled the scanning
+     */
+    public TasksParserResult scanStreaming(final FilePath workspace) throws IOException, InterruptedException {
+        if (!workspace.isRemote()) {
+            return workspace.act(this);
+        }
+
+        Pipe tasksPipe = Pipe.createRemoteToLocal();
+        Future<TasksParserResult> scan;
+        pipe = tasksPipe;
+        try {
+            scan = workspace.actAsync(this);
+        }
+        finally {
+            pipe = null;
+        }
+        List<Task> tasks = new ArrayList<Task>();
+        IOException readError = null;
+        InputStream input = tasksPipe.getIn();
+        Thread watcher = closeOnFailure(scan, input);
+        try {
+            new TaskReader(input).read(tasks);
+        }
+        catch (InterruptedIOException exception) {
+            scan.cancel(true);
+            throw new InterruptedException(ABORT_MESSAGE);
+        }
+        catch (IOException exception) {
+            readError = exception; // the scan has failed, the cause is reported by the result
+        }
+        finally {
+            watcher.interrupt();
+        }
+        TasksParserResult result = getResult(scan);
+        if (readError != null) {
+            throw readError;
+        }
+        result.addAnnotations(tasks);
 
-                    result.addAnnotations(tasks);
+        return result;
+    }
+
+    /**
+     * Closes the specified stream as soon as the scan fails. The stream is written by the scan on the agent, so if
+     * the scan fails before it starts writing, e.g. since the scanner could not be deserialized on the agent, then
+     * reading the stream would block forever.
+     *
+     * @param scan
+     *            the running scan
+     * @param input
+     *            the stream with the tasks of the scan
+     * @return the thread that waits for the scan, needs to be interrupted when the stream has been read
+     */
+    private Thread closeOnFailure(final Future<TasksParserResult> scan, final InputStream input) {
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scan.get();
+                }
+                catch (ExecutionException exception) {
+                    IOUtils.closeQuietly(input);
+                }
+                catch (CancellationException exception) {
+                    IOUtils.closeQuietly(input);
+                }
+                catch (InterruptedException exception) {
+                    // the stream has been read completely
                 }
             }
-            catch (IOException exception) {
-                // ignore files that could not be read
+        }, "Open tasks scan watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    private void initializeBudgets() {
+        if (scanTimeLimit > 0) {
+            scanDeadline = System.nanoTime() + scanTimeLimit * NANOSECONDS_PER_SECOND;
+        }
+        else {
+            scanDeadline = TaskScanner.NO_DEADLINE;
+        }
+        stopReason = new AtomicReference<String>();
+        unscannedFiles = new AtomicInteger();
+        skippedFiles = new ConcurrentHashMap<String, String>();
+        numberOfTasks = 0;
+    }
+
+    /**
+     * Stops the scan, the remaining files are not scanned anymore.
+     *
+     * @param reason
+     *            the exceeded budget
+     */
+    private void stop(final String reason) {
+        stopReason.compareAndSet(null, reason);
+    }
+
+    private boolean isStopped() {
+        return stopReason.get() != null;
+    }
+
+    private boolean isScanTimeLimitExceeded() {
+        return scanDeadline != TaskScanner.NO_DEADLINE && System.nanoTime() - scanDeadline > 0;
+    }
+
+    private String getScanTimeLimitMessage() {
+        return "time limit of " + scanTimeLimit + " seconds for the scan exceeded";
+    }
+
+    /**
+     * Logs and records the files that exceeded a budget and the reason why the scan has been stopped.
+     *
+     * @param result
+     *            the result to record the exceeded budgets in
+     */
+    private void reportBudgets(final TasksParserResult result) {
+        for (Map.Entry<String, String> skipped : new TreeMap<String, String>(skippedFiles).entrySet()) {
+            log("Skipped '" + skipped.getKey() + "': " + skipped.getValue());
+            result.addSkippedFile(skipped.getKey(), skipped.getValue());
+        }
+        String reason = stopReason.get();
+        if (reason != null) {
+            log("Stopped scanning: " + reason + ", " + unscannedFiles.get() + " files have not been scanned");
+            result.setIncomplete(reason);
+        }
+    }
+
+    private TasksParserResult getResult(final Future<TasksParserResult> scan)
+            throws IOException, InterruptedException {
+        try {
+            return scan.get();
+        }
+        catch (InterruptedException exception) {
+            scan.cancel(true);
+            throw exception;
+        }
+        catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
             }
-            if (Thread.interrupted()) {
-                throw new InterruptedException("Canceling scanning since build has been aborted.");
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException)cause;
             }
+            throw new IOException(cause);
         }
+    }
+
+    /**
+     * Marks this scanner as sent to an agent. The tasks of the result then are sent back in the compact transfer
+     * format of {@link TaskWriter} rather than as serialized objects.
+     *
+     * @param input
+     *            the stream to read the scanner from
+     * @throws IOException
+     *             if the scanner could not be read
+     * @throws ClassNotFoundException
+     *             if a class of the scanner could not be found
+     */
+    private void readObject(final ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+
+        isRemote = true;
+    }
+
+    @Override
+    public TasksParserResult invoke(final File workspace, final VirtualChannel channel) throws IOException, InterruptedException {
+        if (pipe != null) {
+            taskWriter = new TaskWriter(pipe.getOut());
+            try {
+                return scan(workspace);
+            }
+            finally {
+                taskWriter.close();
+            }
+        }
+        if (isRemote) {
+            ByteArrayOutputStream encodedTasks = new ByteArrayOutputStream();
+            taskWriter = new TaskWriter(encodedTasks);
+            TasksParserResult result = scan(workspace);
+            taskWriter.close();
+            result.setEncodedTasks(encodedTasks.toByteArray());
+            return result;
+        }
+        return scan(workspace);
+    }
+
+    private TasksParserResult scan(final File workspace) throws IOException, InterruptedException {
+        long scanStart = System.nanoTime();
+        final Charset charset = EncodingValidator.defaultCharset(defaultEncoding);
+        final TasksParserResult result = new TasksParserResult();
+        initializeBudgets();
+        statistics = new ScanStatistics();
+        scannerStatistics = Collections.synchronizedList(new ArrayList<ScanStatistics>());
+
+        long start = System.nanoTime();
+        final ModuleDetector moduleDetector = createModuleDetector(workspace);
+        statistics.stop(Phase.MODULES, start);
+        FileWalker fileWalker = createFileWalker(workspace);
+        if (incremental) {
+            manifest = ScanManifest.load(workspace, createConfiguration(workspace, charset));
+        }
+        if (numberOfThreads > 1) {
+            final SortedMap<String, BasicFileAttributes> found = new TreeMap<String, BasicFileAttributes>();
+            start = System.nanoTime();
+            walk(fileWalker, workspace, new FileWalker.Visitor() {
+                @Override
+                public void visit(final String fileName, final BasicFileAttributes attributes)
+                        throws InterruptedException {
+                    if (!isManifest(fileName)) {
+                        found.put(fileName, attributes);
+                    }
+                    checkInterrupted();
+                }
+            });
+            statistics.stop(Phase.ENUMERATION, start).addFiles(found.size());
+            log("Found " + found.size() + " files to scan for tasks");
+            log("Scanning files using " + numberOfThreads + " threads");
+            scanInParallel(workspace, found, charset, moduleDetector, result);
+        }
+        else {
+            final FileScanner scanner = new FileScanner();
+            final long[] scanTime = new long[1];
+            final int[] numberOfFiles = new int[1];
+            start = System.nanoTime();
+            walk(fileWalker, workspace, new FileWalker.Visitor() {
+                @Override
+                public void visit(final String fileName, final BasicFileAttributes attributes)
+                        throws IOException, InterruptedException {
+                    if (!isManifest(fileName)) {
+                        long fileStart = System.nanoTime();
+                        Collection<Task> tasks = scanner.scan(workspace, fileName, attributes, charset);
+                        addTasks(result, tasks, new File(workspace, fileName), moduleDetector);
+                        scanTime[0] += System.nanoTime() - fileStart;
+                        numberOfFiles[0]++;
+                    }
+                    checkInterrupted();
+                }
+            });
+            statistics.addTime(Phase.ENUMERATION, System.nanoTime() - start - scanTime[0]).addFiles(numberOfFiles[0]);
+            log("Scanned " + result.getNumberOfScannedFiles() + " files for tasks");
+        }
+        if (manifest != null && files == null) {
+            saveManifest(workspace);
+        }
+        reportBudgets(result);
         result.addModule(moduleName);
 
+        for (ScanStatistics scanner : scannerStatistics) {
+            statistics.add(scanner);
+        }
+        statistics.setScanTime(System.nanoTime() - scanStart);
+        result.setStatistics(statistics);
+
         if (stringLogger != null) {
             result.setLog(stringLogger.toString());
         }
@@ -245,13 +649,483 @@ public class WorkspaceScanner extends MasterToSlaveFileCallable<TasksParserResul
         return result;
     }
 
-    private InputStreamReader readFile(final File originalFile) throws IOException, InterruptedException {
-        return new InputStreamReader(new FilePath(originalFile).read(),
-                    EncodingValidator.defaultCharset(defaultEncoding));
+    /**
+     * Scans the specified files using a work-stealing pool. The largest files are submitted first so that the
+     * workers are evenly loaded at the end of the scan. The tasks of the files are added to the result in the
+     * order of the file names, independent of the order the workers complete them.
+     *
+     * @param workspace
+     *            the workspace that contains the files
+     * @param files
+     *            the files to scan, mapped to their size
+     * @param charset
+     *            the encoding of the files
+     * @param moduleDetector
+     *            the module detector to use
+     * @param result
+     *            the result to add the tasks to
+     * @throws IOException
+     *             if the tasks could not be written to the pipe
+     * @throws InterruptedException
+     *             if the user canceled the scanning
+     */
+    private void scanInParallel(final File workspace, final SortedMap<String, BasicFileAttributes> files,
+            final Charset charset, final ModuleDetector moduleDetector, final TasksParserResult result)
+            throws IOException, InterruptedException {
+        final String[] fileNames = new String[files.size()];
+        final BasicFileAttributes[] attributes = new BasicFileAttributes[files.size()];
+        final long[] sizes = new long[files.size()];
+        Integer[] bySize = new Integer[files.size()];
+        int position = 0;
+        for (Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            fileNames[position] = file.getKey();
+            attributes[position] = file.getValue();
+            sizes[position] = file.getValue().size();
+            bySize[position] = position;
+            position++;
+        }
+        Arrays.sort(bySize, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                return sizes[left] == sizes[right] ? left.compareTo(right) : sizes[left] > sizes[right] ? -1 : 1;
+            }
+        });
+
+        final ThreadLocal<FileScanner> scanners = new ThreadLocal<FileScanner>() {
+            @Override
+            protected FileScanner initialValue() {
+                return new FileScanner();
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+        try {
+            List<Future<Collection<Task>>> scans = new ArrayList<Future<Collection<Task>>>(
+                    Collections.<Future<Collection<Task>>>nCopies(fileNames.length, null));
+            for (final Integer index : bySize) {
+                scans.set(index, pool.submit(new Callable<Collection<Task>>() {
+                    @Override
+                    public Collection<Task> call() throws InterruptedException {
+                        return scanners.get().scan(workspace, fileNames[index], attributes[index], charset);
+                    }
+                }));
+            }
+            for (int i = 0; i < fileNames.length; i++) {
+                addTasks(result, getTasks(scans.get(i)), new File(workspace, fileNames[i]), moduleDetector);
+                checkInterrupted();
+            }
+        }
+        catch (InterruptedException exception) {
+            throw new InterruptedException(ABORT_MESSAGE);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Collection<Task> getTasks(final Future<Collection<Task>> scan) throws InterruptedException {
+        try {
+            return scan.get();
+        }
+        catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void walk(final FileWalker fileWalker, final File workspace, final FileWalker.Visitor visitor)
+            throws IOException, InterruptedException {
+        if (files == null) {
+            fileWalker.walk(workspace, visitor);
+        }
+        else {
+            log("Scanning only the " + files.size() + " selected files");
+            fileWalker.visit(workspace, files, visitor);
+        }
+    }
+
+    private boolean isManifest(final String fileName) {
+        return incremental && (ScanManifest.FILE_NAME.equals(fileName) || ModuleCache.FILE_NAME.equals(fileName));
+    }
+
+    /**
+     * Creates the configuration of this scanner that determines whether the tasks of a previous scan can be reused.
+     *
+     * @param workspace
+     *            the workspace to scan
+     * @param charset
+     *            the encoding of the files
+     * @return the configuration
+     */
+    private String createConfiguration(final File workspace, final Charset charset) {
+        return StringUtils.join(new Object[] {high, normal, low, ignoreCase, asRegexp, charset.name(),
+                workspace.getAbsolutePath()}, '\n');
+    }
+
+    private void saveManifest(final File workspace) {
+        log("Reused the tasks of " + manifest.getNumberOfReusedFiles() + " unchanged files");
+        try {
+            manifest.save(workspace);
+        }
+        catch (IOException exception) {
+            log("Can't write the manifest of the scanned files: " + exception);
+        }
+    }
+
+    private void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException(ABORT_MESSAGE);
+        }
+    }
+
+    /**
+     * Adds the tasks of the specified file to the result and assigns the module name. If the tasks are streamed
+     * or encoded for the transfer to the controller, then the tasks are written to the {@link TaskWriter} instead.
+     *
+     * @param result
+     *            the result to add the tasks to
+     * @param tasks
+     *            the tasks of the file
+     * @param file
+     *            the scanned file
+     * @param moduleDetector
+     *            the module detector to use
+     * @throws IOException
+     *             if the tasks could not be written to the pipe
+     */
+    private void addTasks(final TasksParserResult result, final Collection<Task> tasks, final File file,
+            final ModuleDetector moduleDetector) throws IOException {
+        if (tasks == null) {
+            return; // not scanned
+        }
+        if (isStopped()) {
+            unscannedFiles.incrementAndGet();
+            return;
+        }
+        result.addScannedFiles(1);
+        Collection<Task> added = limitTasks(tasks, file);
+        if (!added.isEmpty()) {
+            long start = System.nanoTime();
+            String guessedModule = moduleDetector.guessModuleName(file.getAbsolutePath());
+            String actualModule = StringUtils.defaultIfEmpty(moduleName, guessedModule);
+            for (Task task : added) {
+                task.setModuleName(actualModule);
+            }
+            statistics.stop(Phase.MODULES, start).addTasks(added.size());
+
+            if (taskWriter == null) {
+                result.addAnnotations(added);
+            }
+            else {
+                start = System.nanoTime();
+                taskWriter.write(added);
+                statistics.stop(Phase.TRANSFER, start).addTasks(added.size());
+            }
+        }
+    }
+
+    /**
+     * Returns the tasks of the specified file that do not exceed the maximum number of tasks. If the maximum is
+     * reached, then the scan is stopped.
+     *
+     * @param tasks
+     *            the tasks of the file
+     * @param file
+     *            the scanned file
+     * @return the tasks to add
+     */
+    private Collection<Task> limitTasks(final Collection<Task> tasks, final File file) {
+        if (maximumTasks <= 0) {
+            return tasks;
+        }
+
+        int remaining = maximumTasks - numberOfTasks;
+        if (tasks.size() < remaining) {
+            numberOfTasks += tasks.size();
+            return tasks;
+        }
+        String reason = "maximum number of " + maximumTasks + " tasks reached";
+        stop(reason);
+        numberOfTasks = maximumTasks;
+        if (tasks.size() == remaining) {
+            return tasks;
+        }
+        skippedFiles.put(file.getAbsolutePath(), reason + ", " + (tasks.size() - remaining) + " tasks omitted");
+        return new ArrayList<Task>(tasks).subList(0, remaining);
+    }
+
+    /**
+     * Scans files for tasks and classifies the found tasks. Each thread that scans files uses its own instance.
+     */
+    private class FileScanner {
+        private final TaskScanner taskScanner = new TaskScanner(high, normal, low, ignoreCase, asRegexp);
+        /** Buffer for the content of the scanned files, reused for all files up to {@link #MAXIMUM_BUFFER_SIZE}. */
+        private byte[] buffer;
+        private final ScanStatistics fileStatistics = new ScanStatistics();
+
+        FileScanner() {
+            scannerStatistics.add(fileStatistics);
+        }
+
+        /**
+         * Scans the specified file for tasks and assigns the file and package to the tasks. If the scan is
+         * incremental, then the tasks of unchanged files are taken from the manifest.
+         *
+         * @param workspace
+         *            the workspace that contains the file
+         * @param fileName
+         *            the name of the file to scan, relative to the workspace
+         * @param attributes
+         *            the attributes of the file
+         * @param charset
+         *            the encoding of the file
+         * @return the found tasks, an empty collection if the file could not be read, or {@code null} if the file
+         *         has not been scanned since it exceeds a budget or the scan has been stopped
+         * @throws InterruptedException
+         *             if the user canceled the scanning
+         */
+        Collection<Task> scan(final File workspace, final String fileName, final BasicFileAttributes attributes,
+                final Charset charset) throws InterruptedException {
+            if (isScanTimeLimitExceeded()) {
+                stop(getScanTimeLimitMessage());
+            }
+            if (isStopped()) {
+                unscannedFiles.incrementAndGet();
+                return null;
+            }
+            File file = new File(workspace, fileName);
+            long size = attributes.size();
+            if (maximumFileSize > 0 && size > maximumFileSize * KILOBYTE) {
+                skippedFiles.put(file.getAbsolutePath(), "file size of " + size / KILOBYTE + " KB exceeds the maximum of "
+                        + maximumFileSize + " KB");
+                return null;
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (manifest != null) {
+                Collection<Task> unchanged = manifest.getUnchanged(fileName, size, lastModified);
+                if (unchanged != null) {
+                    return unchanged;
+                }
+            }
+
+            try {
+                PackageNameDetector packageDetector = new PackageNameDetector(fileName);
+                taskScanner.setMaximumLineLength(maximumLineLength);
+                taskScanner.setDeadline(getFileDeadline());
+                if (manifest == null) {
+                    Collection<Task> tasks = scan(file, charset, null, packageDetector);
+                    recordTruncation(file);
+                    return classify(workspace, file, packageDetector, tasks);
+                }
+
+                byte[] hash = null;
+                MessageDigest digest = null;
+                if (manifest.isCandidate(fileName, size)) {
+                    hash = hash(file, size);
+                    Collection<Task> unchanged = manifest.getUnchanged(fileName, size, lastModified, hash);
+                    if (unchanged != null) {
+                        return unchanged;
+                    }
+                }
+                else {
+                    digest = createDigest();
+                }
+                Collection<Task> tasks = scan(file, charset, digest, packageDetector);
+                if (recordTruncation(file)) {
+                    return classify(workspace, file, packageDetector, tasks); // partial tasks are not reused
+                }
+                if (hash == null) {
+                    hash = digest.digest();
+                }
+                manifest.add(fileName, size, lastModified, hash, classify(workspace, file, packageDetector, tasks));
+                return tasks;
+            }
+            catch (IOException exception) {
+                // ignore files that could not be read
+                return Collections.emptyList();
+            }
+        }
+
+        private long getFileDeadline() {
+            if (fileTimeLimit > 0) {
+                return Math.min(System.nanoTime() + fileTimeLimit * NANOSECONDS_PER_SECOND, scanDeadline);
+            }
+            return scanDeadline;
+        }
+
+        /**
+         * Records whether the last scanned file has been truncated since it exceeded a budget.
+         *
+         * @param file
+         *            the scanned file
+         * @return {@code true} if the file has been truncated, {@code false} if the file has been scanned completely
+         */
+        private boolean recordTruncation(final File file) {
+            String fileName = file.getAbsolutePath();
+            if (taskScanner.isTimeLimitExceeded()) {
+                if (isScanTimeLimitExceeded()) {
+                    stop(getScanTimeLimitMessage());
+                    skippedFiles.put(fileName, getScanTimeLimitMessage() + ", file has been scanned partially");
+                }
+                else {
+                    skippedFiles.put(fileName, "time limit of " + fileTimeLimit
+                            + " seconds for the file exceeded, file has been scanned partially");
+                }
+                return true;
+            }
+            if (taskScanner.hasTruncatedLines()) {
+                skippedFiles.put(fileName, "lines longer than " + maximumLineLength + " characters have been truncated");
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Computes the hash of the content of the specified file, so that a file that has been touched without
+         * changing its content does not need to be scanned again.
+         */
+        private byte[] hash(final File file, final long size) throws IOException {
+            long start = System.nanoTime();
+            MessageDigest digest = createDigest();
+            InputStream input = new DigestInputStream(new FileInputStream(file), digest);
+            try {
+                IOUtils.skip(input, Long.MAX_VALUE);
+            }
+            finally {
+                input.close();
+            }
+            fileStatistics.stop(Phase.READING, start).addBytes(size);
+            return digest.digest();
+        }
+
+        private MessageDigest createDigest() {
+            try {
+                return MessageDigest.getInstance(DIGEST_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException exception) {
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        private Collection<Task> classify(final File workspace, final File file,
+                final PackageNameDetector packageDetector, final Collection<Task> tasks) {
+            if (!tasks.isEmpty()) {
+                String absolutePath = file.getAbsolutePath();
+                String packageName = packageDetector.getPackageName();
+
+                for (Task task : tasks) {
+                    task.setFileName(absolutePath);
+                    task.setPackageName(packageName);
+                    task.setPathName(workspace.getPath());
+                }
+            }
+            return tasks;
+        }
+
+        /**
+         * Scans the specified file for tasks. Files with an encoding that is compatible to US-ASCII are read into a
+         * buffer and scanned on the byte level, so that only lines with tasks are decoded. Files in other encodings
+         * are decoded and searched for the tags as a whole. Files that exceed the maximum size of the buffer are
+         * scanned line by line, so that the memory of each thread is bounded. The package of the file is detected
+         * from the same content.
+         *
+         * @param file
+         *            the file to scan
+         * @param charset
+         *            the encoding of the file
+         * @param digest
+         *            the digest to update with the content of the file, may be {@code null}
+         * @param packageDetector
+         *            the detector of the package of the file
+         * @return the found tasks
+         * @throws IOException
+         *             if the file could not be read
+         * @throws InterruptedException
+         *             if the user canceled the scanning
+         */
+        private Collection<Task> scan(final File file, final Charset charset, final MessageDigest digest,
+                final PackageNameDetector packageDetector) throws IOException, InterruptedException {
+            if (TaskScanner.isAsciiCompatible(charset)) {
+                RandomAccessFile input = new RandomAccessFile(file, "r");
+                try {
+                    long size = input.length();
+                    if (size <= MAXIMUM_BUFFER_SIZE) {
+                        int length = (int)size;
+                        if (buffer == null || buffer.length < length) {
+                            buffer = new byte[length];
+                        }
+                        long start = System.nanoTime();
+                        input.readFully(buffer, 0, length);
+                        if (digest != null) {
+                            digest.update(buffer, 0, length);
+                        }
+                        fileStatistics.stop(Phase.READING, start).addBytes(length).addFiles(1);
+
+                        start = System.nanoTime();
+                        Collection<Task> tasks = taskScanner.scan(buffer, length, charset);
+                        recordMatching(start, tasks);
+                        if (!tasks.isEmpty()) {
+                            start = System.nanoTime();
+                            packageDetector.detect(buffer, length, charset);
+                            fileStatistics.stop(Phase.PACKAGES, start).addFiles(1);
+                        }
+                        return tasks;
+                    }
+                }
+                finally {
+                    input.close();
+                }
+            }
+            long size = file.length();
+            fileStatistics.get(Phase.READING).addBytes(size).addFiles(1);
+            long start = System.nanoTime();
+            InputStream input = new FilePath(file).read();
+            if (digest != null) {
+                input = new DigestInputStream(input, digest);
+            }
+            Reader reader = packageDetector.inspect(new InputStreamReader(input, charset));
+            Collection<Task> tasks;
+            if (size > MAXIMUM_BUFFER_SIZE) {
+                tasks = taskScanner.scanLines(reader);
+            }
+            else {
+                tasks = taskScanner.scan(reader);
+            }
+            recordMatching(start, tasks);
+            return tasks;
+        }
+
+        /**
+         * Records the statistics of the task scanner for the last scanned file. Files that are scanned line by line
+         * are read while they are matched, so the time of reading is part of the time of matching. The time of the
+         * context hash codes is recorded separately.
+         *
+         * @param start
+         *            the start of the scan
+         * @param tasks
+         *            the found tasks
+         */
+        private void recordMatching(final long start, final Collection<Task> tasks) {
+            long contextHashTime = taskScanner.getContextHashTime();
+            fileStatistics.addTime(Phase.MATCHING, System.nanoTime() - start - contextHashTime)
+                    .addFiles(1).addLines(taskScanner.getNumberOfLines()).addTasks(tasks.size());
+            fileStatistics.addTime(Phase.CONTEXT_HASHING, contextHashTime).addTasks(tasks.size());
+        }
     }
 
-    private ModuleDetector createModuleDetector(final File workspace) {
+    private ModuleDetector createModuleDetector(final File workspace) throws IOException, InterruptedException {
         if (shouldDetectModules) {
+            if (incremental) {
+                return createCachedModuleDetector(workspace);
+            }
             return new ModuleDetector(workspace);
         }
         else {
@@ -260,28 +1134,41 @@ public class WorkspaceScanner extends MasterToSlaveFileCallable<TasksParserResul
     }
 
     /**
-     * Returns an array with the filenames of the files that have been found in
-     * the workspace.
+     * Creates a module detector that uses the modules of the previous scan if the build files and their folders did
+     * not change, so that an unchanged module layout requires no traversal of the workspace. Otherwise the build
+     * files are parsed and the detected modules are stored in the workspace.
      *
-     * @param workspaceRoot
-     *      root directory of the workspace
-     * @return the filenames of the FindBugs files
+     * @param workspace
+     *            the workspace to scan
+     * @return the module detector
+     * @throws IOException
+     *             if the workspace could not be traversed
+     * @throws InterruptedException
+     *             if the user canceled the scanning
      */
-    @SuppressWarnings("PMD.AvoidThreadGroup")
-    private String[] findFiles(final File workspaceRoot) {
-        FileSet fileSet = new FileSet();
-        org.apache.tools.ant.Project project = new org.apache.tools.ant.Project();
-        fileSet.setProject(project);
-        fileSet.setDir(workspaceRoot);
-        fileSet.setIncludes(filePattern);
-
-        if (StringUtils.isNotBlank(excludeFilePattern)) {
-            fileSet.setExcludes(excludeFilePattern);
+    private ModuleDetector createCachedModuleDetector(final File workspace) throws IOException, InterruptedException {
+        ModuleCache cache = ModuleCache.load(workspace);
+        if (cache != null) {
+            log("Reused the modules of " + cache.getNumberOfBuildFiles() + " unchanged build files");
+        }
+        else {
+            Map<String, Long> folders = new TreeMap<String, Long>();
+            Map<String, Long> buildFiles = ModuleCache.findBuildFiles(workspace, folders);
+            cache = ModuleCache.create(workspace, buildFiles, folders, new ModuleDetector(workspace));
+            try {
+                cache.save(workspace);
+            }
+            catch (IOException exception) {
+                log("Can't write the cache of the detected modules: " + exception);
+            }
         }
+        return cache.createModuleDetector();
+    }
 
+    private FileWalker createFileWalker(final File workspaceRoot) {
         log("Scanning folder '" + workspaceRoot + "' for files matching the pattern '" + filePattern
                 + "' - excludes: " + excludeFilePattern);
 
-        return fileSet.getDirectoryScanner(project).getIncludedFiles();
+        return new FileWalker(filePattern, excludeFilePattern);
     }
-}
\ No newline at end of file
+}
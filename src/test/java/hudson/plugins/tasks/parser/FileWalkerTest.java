@@ -0,0 +1,152 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link FileWalker}.
+ */
+public class FileWalkerTest {
+    private static final String[] FILES = {
+            "Main.java", "readme.txt", "src/main/java/A.java", "src/main/java/b/B.java", "src/test/java/ATest.java",
+            "src/main/resources/a.properties", "node_modules/lib/index.js", "node_modules/lib/Lib.java",
+            "web/node_modules/x/X.java", "web/app.js", "target/classes/Gen.java", "a/b/c/d/Deep.java",
+            ".git/config", "src/main/java/.svn/entries", "src/main/java/Backup.java~"};
+
+    /** Workspace with the files to find. */
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    /**
+     * Verifies that the same files are found as with an Ant file set.
+     *
+     * @throws Exception
+     *             if the files could not be created or found
+     */
+    @Test
+    public void shouldFindSameFilesAsAnt() throws Exception {
+        createFiles();
+
+        verifyFiles("**/*.java", null);
+        verifyFiles("**/*.java", "");
+        verifyFiles("**/*.java", "**/node_modules/**");
+        verifyFiles("**/*.java, **/*.js", "**/node_modules/**, target/");
+        verifyFiles("src/main/**/*.java", "**/b/**");
+        verifyFiles("src/**", "src/test/**/*");
+        verifyFiles("**/*", "**/*.java");
+        verifyFiles("*.java readme.txt", null);
+        verifyFiles("src\\main\\java\\*.java", null);
+        verifyFiles("a/*/c/**/*.java", null);
+        verifyFiles("**/?.java", "src/main/");
+        verifyFiles("**/*.JAVA", null);
+        verifyFiles("", "**/*.java");
+        verifyFiles("web/", "web/node_modules");
+    }
+
+    /**
+     * Verifies that only the selected files that match the patterns are visited.
+     *
+     * @throws Exception
+     *             if the files could not be created or found
+     */
+    @Test
+    public void shouldVisitSelectedFiles() throws Exception {
+        createFiles();
+
+        final List<String> files = new ArrayList<String>();
+        new FileWalker("**/*.java", "**/node_modules/**").visit(workspace.getRoot(),
+                Arrays.asList("src/main/java/A.java", "src\\main\\java\\b\\B.java", "web/app.js",
+                        "node_modules/lib/Lib.java", "src/main/java/Deleted.java", "src/main/java"),
+                new FileWalker.Visitor() {
+                    @Override
+                    public void visit(final String fileName, final BasicFileAttributes attributes) {
+                        files.add(fileName);
+                    }
+                });
+
+        assertEquals("Wrong files visited", Arrays.asList(toPath("src/main/java/A.java"),
+                toPath("src/main/java/b/B.java")), files);
+    }
+
+    /**
+     * Verifies that symbolic links are followed, but loops are skipped.
+     *
+     * @throws Exception
+     *             if the files could not be created or found
+     */
+    @Test
+    public void shouldSkipSymbolicLinkLoops() throws Exception {
+        createFiles();
+        try {
+            Files.createSymbolicLink(new File(workspace.getRoot(), "src/main/java/b/loop").toPath(),
+                    workspace.getRoot().toPath());
+            Files.createSymbolicLink(new File(workspace.getRoot(), "src/main/java/link").toPath(),
+                    new File(workspace.getRoot(), "a").toPath());
+        }
+        catch (UnsupportedOperationException exception) {
+            return; // symbolic links are not supported on this platform
+        }
+        catch (IOException exception) {
+            return; // symbolic links are not supported on this platform
+        }
+
+        List<String> files = walk("src/main/**/*.java", null);
+
+        assertTrue("File not found", files.contains(toPath("src/main/java/b/B.java")));
+        assertTrue("File in symbolic link not found", files.contains(toPath("src/main/java/link/b/c/d/Deep.java")));
+        assertFalse("File in symbolic link loop found", files.contains(toPath("src/main/java/b/loop/Main.java")));
+    }
+
+    private void createFiles() throws IOException {
+        for (String file : FILES) {
+            FileUtils.writeStringToFile(new File(workspace.getRoot(), file), file, "UTF-8");
+        }
+    }
+
+    private void verifyFiles(final String includes, final String excludes) throws IOException, InterruptedException {
+        FileSet fileSet = new FileSet();
+        Project project = new Project();
+        fileSet.setProject(project);
+        fileSet.setDir(workspace.getRoot());
+        fileSet.setIncludes(includes);
+        if (StringUtils.isNotBlank(excludes)) {
+            fileSet.setExcludes(excludes);
+        }
+        List<String> expected = Arrays.asList(fileSet.getDirectoryScanner(project).getIncludedFiles());
+        Collections.sort(expected);
+
+        assertEquals("Wrong files for " + includes + " - " + excludes, expected, walk(includes, excludes));
+    }
+
+    private List<String> walk(final String includes, final String excludes) throws IOException, InterruptedException {
+        final List<String> files = new ArrayList<String>();
+        new FileWalker(includes, excludes).walk(workspace.getRoot(), new FileWalker.Visitor() {
+            @Override
+            public void visit(final String fileName, final BasicFileAttributes attributes) {
+                files.add(fileName);
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    private String toPath(final String fileName) {
+        return fileName.replace('/', File.separatorChar);
+    }
+}
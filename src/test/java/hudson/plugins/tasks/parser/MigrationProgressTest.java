@@ -0,0 +1,54 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link MigrationProgress}.
+ */
+public class MigrationProgressTest {
+    /** Folder for the checkpoint. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that the migration continues after the checkpoint when the checkpoint is loaded again.
+     *
+     * @throws IOException
+     *             if the checkpoint could not be written
+     */
+    @Test
+    public void shouldContinueAfterCheckpoint() throws IOException {
+        File file = new File(folder.getRoot(), "migration.properties");
+        MigrationProgress progress = MigrationProgress.load(file);
+        assertFalse("Build visited", progress.isVisited("folder/job", "1"));
+
+        progress.start(4, 0);
+        progress.visit("folder/job", "1", true);
+        progress.visit("folder/job", "2", false);
+        assertEquals("Wrong percentage", 50, progress.getPercentage());
+        assertTrue("No remaining time", progress.getRemainingTime() >= 0);
+        progress.save();
+
+        MigrationProgress loaded = MigrationProgress.load(file);
+        assertTrue("Build not visited", loaded.isVisited("folder/job", "1"));
+        assertTrue("Build not visited", loaded.isVisited("folder/job", "2"));
+        assertTrue("Job not visited", loaded.isVisited("another", "3"));
+        assertFalse("Build visited", loaded.isVisited("folder/job", "3"));
+        assertFalse("Job visited", loaded.isVisited("folder/other", "1"));
+        assertEquals("Wrong number of migrated builds", 1, loaded.getNumberOfMigratedBuilds());
+        assertFalse("Migration completed", loaded.isCompleted());
+        assertEquals("No estimate expected", -1, loaded.getRemainingTime());
+
+        loaded.complete();
+        loaded.save();
+        assertTrue("Migration not completed", MigrationProgress.load(file).isCompleted());
+        assertEquals("Wrong percentage", 100, loaded.getPercentage());
+    }
+}
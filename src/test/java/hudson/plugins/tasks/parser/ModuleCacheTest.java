@@ -0,0 +1,236 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FalseFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.ModuleDetector;
+
+/**
+ * Tests the class {@link ModuleCache}.
+ */
+public class ModuleCacheTest {
+    private static final long LAST_MODIFIED = 1000000000000L;
+    private static final String[] BUILD_FILES = {"pom.xml", "core/pom.xml", "core/api/pom.xml", "ant/build.xml",
+            "bundle/META-INF/MANIFEST.MF", "unnamed/pom.xml"};
+    private static final String[] FILES = {"Main.java", "core/Core.java", "core/api/Api.java",
+            "core/api-impl/Impl.java", "ant/src/Ant.java", "bundle/META-INF/Info.java", "bundle/B.java",
+            "unnamed/U.java"};
+
+    /** Workspace with the build files. */
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    /**
+     * Verifies that the cached modules are the same as the detected ones.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldGuessSameModules() throws Exception {
+        createFiles();
+
+        ModuleDetector detector = new FolderModuleDetector(workspace.getRoot());
+        ModuleCache cache = createCache(detector);
+
+        assertEquals("Wrong number of build files", BUILD_FILES.length, cache.getNumberOfBuildFiles());
+        ModuleDetector cached = cache.createModuleDetector();
+        for (String file : FILES) {
+            String fileName = new File(workspace.getRoot(), file).getAbsolutePath();
+            assertEquals("Wrong module of " + file, detector.guessModuleName(fileName),
+                    cached.guessModuleName(fileName));
+        }
+    }
+
+    /**
+     * Verifies that the cache is discarded if build files are changed, added or deleted, without traversing the
+     * workspace.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldDiscardCacheOfChangedBuildFiles() throws Exception {
+        File root = workspace.getRoot();
+        createFiles();
+        saveCache();
+
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        File pom = new File(root, "core/pom.xml");
+        assertTrue("Can't modify", pom.setLastModified(LAST_MODIFIED + 1000));
+        assertNull("Modified build file not detected", ModuleCache.load(root));
+        assertTrue("Can't modify", pom.setLastModified(LAST_MODIFIED));
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        createBuildFile("core/impl/pom.xml");
+        assertNull("New build file not detected", ModuleCache.load(root));
+        FileUtils.deleteQuietly(new File(root, "core/impl"));
+        resetFolders();
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        File api = new File(root, "core/api/pom.xml");
+        assertTrue("Can't move", api.renameTo(new File(root, "core/api/build.xml")));
+        assertNull("Renamed build file not detected", ModuleCache.load(root));
+        assertTrue("Can't move", new File(root, "core/api/build.xml").renameTo(api));
+        resetFolders();
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        FileUtils.deleteQuietly(new File(root, "ant/build.xml"));
+        assertNull("Deleted build file not detected", ModuleCache.load(root));
+    }
+
+    /**
+     * Verifies that the cache is discarded if a build file is added to a folder without build files, but not if
+     * other files or folders are added.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldDiscardCacheOfNewBuildFiles() throws Exception {
+        File root = workspace.getRoot();
+        createFiles();
+        FileUtils.writeStringToFile(new File(root, "docs/guide/index.txt"), "index", "UTF-8");
+        saveCache();
+
+        FileUtils.writeStringToFile(new File(root, "docs/guide/chapter.txt"), "chapter", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "docs/images/logo.txt"), "logo", "UTF-8");
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        createBuildFile("docs/guide/pom.xml");
+        assertNull("New build file not detected", ModuleCache.load(root));
+        FileUtils.deleteQuietly(new File(root, "docs/guide/pom.xml"));
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        createBuildFile("docs/plugins/bundle/META-INF/MANIFEST.MF");
+        assertNull("New build file in new folder not detected", ModuleCache.load(root));
+        FileUtils.deleteQuietly(new File(root, "docs/plugins"));
+        assertNotNull("Cache not loaded", ModuleCache.load(root));
+
+        createBuildFile(".svn/pom.xml");
+        assertNotNull("Build file in excluded folder detected", ModuleCache.load(root));
+    }
+
+    /**
+     * Verifies that a cache that can't be parsed, e.g. a Java serialized object, is ignored.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldIgnoreMalformedCache() throws Exception {
+        File root = workspace.getRoot();
+        createFiles();
+        saveCache();
+        File file = new File(root, ModuleCache.FILE_NAME);
+        byte[] content = FileUtils.readFileToByteArray(file);
+
+        FileUtils.writeByteArrayToFile(file, Arrays.copyOf(content, content.length - 1));
+        assertNull("Truncated cache loaded", ModuleCache.load(root));
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(serialized);
+        output.writeObject(new HashMap<String, String>());
+        output.close();
+        FileUtils.writeByteArrayToFile(file, serialized.toByteArray());
+        assertNull("Serialized object loaded", ModuleCache.load(root));
+    }
+
+    /**
+     * Verifies that build files that have been modified right before the cache has been created are not trusted.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldNotTrustRecentlyModifiedBuildFiles() throws Exception {
+        File root = workspace.getRoot();
+        createFiles();
+        assertTrue("Can't modify", new File(root, "pom.xml").setLastModified(System.currentTimeMillis()));
+        saveCache();
+
+        assertNull("Cache loaded", ModuleCache.load(root));
+    }
+
+    private void saveCache() throws IOException, InterruptedException {
+        File root = workspace.getRoot();
+        createCache(new FolderModuleDetector(root)).save(root);
+        resetFolders(); // writing the cache modifies the workspace folder
+    }
+
+    private ModuleCache createCache(final ModuleDetector detector) throws IOException, InterruptedException {
+        File root = workspace.getRoot();
+        Map<String, Long> folders = new TreeMap<String, Long>();
+        Map<String, Long> buildFiles = ModuleCache.findBuildFiles(root, folders);
+        return ModuleCache.create(root, buildFiles, folders, detector);
+    }
+
+    private void createFiles() throws IOException {
+        for (String file : BUILD_FILES) {
+            createBuildFile(file);
+        }
+        resetFolders();
+    }
+
+    private void createBuildFile(final String file) throws IOException {
+        File buildFile = new File(workspace.getRoot(), file);
+        FileUtils.writeStringToFile(buildFile, file, "UTF-8");
+        assertTrue("Can't modify", buildFile.setLastModified(LAST_MODIFIED));
+    }
+
+    /**
+     * Sets the modification time of all folders, otherwise the recently created folders are not trusted.
+     */
+    private void resetFolders() {
+        for (File folder : FileUtils.listFilesAndDirs(workspace.getRoot(), FalseFileFilter.INSTANCE,
+                TrueFileFilter.INSTANCE)) {
+            assertTrue("Can't modify", folder.setLastModified(LAST_MODIFIED));
+        }
+    }
+
+    /**
+     * Uses the name of the nearest folder with a build file as module name, except for the folder 'unnamed'.
+     */
+    private static class FolderModuleDetector extends ModuleDetector {
+        private final String prefix;
+
+        FolderModuleDetector(final File workspace) {
+            super();
+            prefix = workspace.getAbsolutePath().replace('\\', '/') + '/';
+        }
+
+        @Override
+        public String guessModuleName(final String originalFileName) {
+            String fileName = StringUtils.removeStart(originalFileName.replace('\\', '/'), prefix);
+            String module = "root";
+            String path = StringUtils.EMPTY;
+            for (String buildFile : BUILD_FILES) {
+                String folder = StringUtils.substringBeforeLast(StringUtils.removeEnd(buildFile,
+                        "META-INF/MANIFEST.MF"), "/");
+                if (StringUtils.isNotEmpty(folder) && !"unnamed".equals(folder) && fileName.startsWith(folder + "/")
+                        && folder.length() > path.length()) {
+                    path = folder;
+                    module = folder;
+                }
+            }
+            return module;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link PackageNameDetector}.
+ */
+public class PackageNameDetectorTest {
+    private static final String JAVA = "/*\r\n * package comment;\r\n */\r\n\r\n"
+            + "   package hudson.plugins.tasks.parser;\r\nimport java.io.File;\r\n// TODO: test\r\n";
+    private static final String CSHARP = "using System;\nnamespace Hudson.Plugins.Tasks {\n// TODO: test\n}\n";
+    private static final String CSHARP_WITHOUT_BRACE = "using System;\rnamespace Hudson.Plugins.Tasks\r{\r}";
+
+    /**
+     * Verifies the detection of Java packages.
+     *
+     * @throws IOException
+     *             if the content could not be read
+     */
+    @Test
+    public void shouldDetectJavaPackage() throws IOException {
+        verifyPackage("hudson.plugins.tasks.parser", "Detector.java", JAVA);
+        verifyPackage(PackageNameDetector.UNDEFINED_PACKAGE, "Detector.java", "// package name;\nclass A {}");
+        verifyPackage(PackageNameDetector.UNDEFINED_PACKAGE, "Detector.java", "");
+    }
+
+    /**
+     * Verifies the detection of C# namespaces.
+     *
+     * @throws IOException
+     *             if the content could not be read
+     */
+    @Test
+    public void shouldDetectCsharpNamespace() throws IOException {
+        verifyPackage("Hudson.Plugins.Tasks", "Detector.cs", CSHARP);
+        verifyPackage("Hudson.Plugins.Tasks", "Detector.cs", CSHARP_WITHOUT_BRACE);
+        verifyPackage(PackageNameDetector.UNDEFINED_PACKAGE, "Detector.cs", "  namespace Indented {");
+    }
+
+    /**
+     * Verifies that other files have no package.
+     *
+     * @throws IOException
+     *             if the content could not be read
+     */
+    @Test
+    public void shouldIgnoreOtherFiles() throws IOException {
+        verifyPackage(PackageNameDetector.UNDEFINED_PACKAGE, "Detector.txt", JAVA);
+        verifyPackage(PackageNameDetector.UNDEFINED_PACKAGE, "Detector.c", CSHARP);
+    }
+
+    private void verifyPackage(final String expected, final String fileName, final String content)
+            throws IOException {
+        PackageNameDetector reader = new PackageNameDetector(fileName);
+        assertEquals("Content has been modified", content,
+                IOUtils.toString(reader.inspect(new StringReader(content))));
+        assertEquals("Wrong package detected by reader", expected, reader.getPackageName());
+
+        PackageNameDetector singleCharacters = new PackageNameDetector(fileName);
+        Reader input = singleCharacters.inspect(new StringReader(content));
+        while (input.read() >= 0) {
+            // read all characters
+        }
+        assertEquals("Wrong package detected by single characters", expected, singleCharacters.getPackageName());
+
+        PackageNameDetector buffer = new PackageNameDetector(fileName);
+        byte[] bytes = content.getBytes("UTF-8");
+        buffer.detect(bytes, bytes.length, Charset.forName("UTF-8"));
+        assertEquals("Wrong package detected in buffer", expected, buffer.getPackageName());
+    }
+}
@@ -0,0 +1,53 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link RequiredLiteral}.
+ */
+public class RequiredLiteralTest {
+    private static final String WRONG_LITERAL = "Wrong literal extracted";
+
+    /**
+     * Verifies that the longest literal of a sequence is returned.
+     */
+    @Test
+    public void shouldFindLongestLiteral() {
+        assertEquals(WRONG_LITERAL, "TODO", find("^.*(TODO(?:[0-9]*))(.*)$"));
+        assertEquals(WRONG_LITERAL, "FIXME", find("^.*(\\bFIXME\\b)(.*)$"));
+        assertEquals(WRONG_LITERAL, "@todo", find("^.*(@todo)(.*)$"));
+        assertEquals(WRONG_LITERAL, "TODO.", find("^.*(TODO\\.)\\s*(.*)$"));
+        assertEquals(WRONG_LITERAL, "TODO", find("^.*(\\QTODO\\E)(.*)$"));
+    }
+
+    /**
+     * Verifies that optional parts are not used as literal.
+     */
+    @Test
+    public void shouldSkipOptionalParts() {
+        assertEquals(WRONG_LITERAL, "TOD", find("^.*(TODO?)(.*)$"));
+        assertEquals(WRONG_LITERAL, "TO", find("^.*(TO(DOS)?)(.*)$"));
+        assertEquals(WRONG_LITERAL, "FIX", find("^.*(FIX(?=ME))(.*)$"));
+        assertEquals(WRONG_LITERAL, "TODO", find("^.*(TODO{0,1}TODO)(.*)$"));
+        assertEquals(WRONG_LITERAL, "ODO", find("^.*(\\x54ODO)(.*)$"));
+    }
+
+    /**
+     * Verifies that no literal is returned if a literal is not required.
+     */
+    @Test
+    public void shouldNotFindLiteral() {
+        assertNull(WRONG_LITERAL, find("^.*(TODO|FIXME)(.*)$"));
+        assertNull(WRONG_LITERAL, find("^.*([A-Z]+)(.*)$"));
+        assertNull(WRONG_LITERAL, find("(?i)^.*(TODO)(.*)$"));
+        assertNull(WRONG_LITERAL, RequiredLiteral.find(Pattern.compile("^.*(TODO)(.*)$", Pattern.COMMENTS)));
+    }
+
+    private String find(final String regexp) {
+        return RequiredLiteral.find(Pattern.compile(regexp));
+    }
+}
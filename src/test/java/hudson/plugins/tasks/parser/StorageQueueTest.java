@@ -0,0 +1,174 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link StorageQueue}.
+ */
+public class StorageQueueTest {
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Verifies that the tasks are available in memory until they have been written.
+     *
+     * @throws InterruptedException
+     *             if the test has been interrupted
+     */
+    @Test
+    public void shouldKeepPendingTasksInMemory() throws InterruptedException {
+        StorageQueue<String> queue = new StorageQueue<String>(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        queue.submit("build", "tasks", new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+
+        assertEquals("Wrong pending tasks", "tasks", queue.getPending("build"));
+        assertFalse("Write completed", queue.await("build", 10));
+        assertEquals("Wrong number of pending writes", 1, queue.getNumberOfPendingWrites());
+
+        release.countDown();
+
+        assertTrue("Write not completed", queue.await("build", TIMEOUT));
+        assertTrue("Writes not completed", queue.awaitAll(TIMEOUT));
+        assertNull("Tasks still pending", queue.getPending("build"));
+        assertEquals("Wrong number of pending writes", 0, queue.getNumberOfPendingWrites());
+    }
+
+    /**
+     * Verifies that the submitting thread writes the tasks if all threads are busy and the queue is full.
+     *
+     * @throws InterruptedException
+     *             if the test has been interrupted
+     */
+    @Test
+    public void shouldWriteInCallerIfQueueIsFull() throws InterruptedException {
+        StorageQueue<String> queue = new StorageQueue<String>(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+        queue.submit("first", "1", blocked);
+        queue.submit("second", "2", blocked);
+
+        final Thread caller = Thread.currentThread();
+        final boolean[] inCaller = new boolean[1];
+        queue.submit("third", "3", new Runnable() {
+            @Override
+            public void run() {
+                inCaller[0] = Thread.currentThread() == caller;
+            }
+        });
+
+        assertTrue("Not written by caller", inCaller[0]);
+        assertNull("Tasks still pending", queue.getPending("third"));
+
+        release.countDown();
+
+        assertTrue("Writes not completed", queue.awaitAll(TIMEOUT));
+    }
+
+    /**
+     * Verifies that the writes that wait for a thread are performed by the caller if the pending writes time out.
+     *
+     * @throws InterruptedException
+     *             if the test has been interrupted
+     */
+    @Test
+    public void shouldWriteQueuedTasksAfterTimeout() throws InterruptedException {
+        StorageQueue<String> queue = new StorageQueue<String>(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.submit("first", "1", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        });
+        assertTrue("Write not started", started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        final boolean[] isWritten = new boolean[1];
+        queue.submit("second", "2", new Runnable() {
+            @Override
+            public void run() {
+                isWritten[0] = true;
+            }
+        });
+
+        assertFalse("Writes completed", queue.awaitAll(10));
+        assertEquals("Wrong number of queued writes", 1, queue.writeQueued());
+        assertTrue("Queued write not performed", isWritten[0]);
+        assertEquals("Wrong pending writes", Collections.singleton("first"), queue.getPendingKeys());
+
+        release.countDown();
+
+        assertTrue("Writes not completed", queue.awaitAll(TIMEOUT));
+        assertTrue("Writes still pending", queue.getPendingKeys().isEmpty());
+    }
+
+    /**
+     * Verifies that the writes of the same key do not overlap and that only the last of the waiting writes is
+     * performed.
+     *
+     * @throws InterruptedException
+     *             if the test has been interrupted
+     */
+    @Test
+    public void shouldSerializeWritesOfSameKey() throws InterruptedException {
+        StorageQueue<String> queue = new StorageQueue<String>(2, 4);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        queue.submit("build", "1", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+                written.add("1");
+            }
+        });
+        assertTrue("Write not started", started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        for (final String value : new String[] {"2", "3"}) {
+            queue.submit("build", value, new Runnable() {
+                @Override
+                public void run() {
+                    written.add(value);
+                }
+            });
+        }
+
+        assertEquals("Wrong pending tasks", "3", queue.getPending("build"));
+        assertFalse("Write completed", queue.await("build", 10));
+        assertTrue("Write started before the running write completed", written.isEmpty());
+
+        release.countDown();
+
+        assertTrue("Write not completed", queue.await("build", TIMEOUT));
+        assertEquals("Wrong writes", Arrays.asList("1", "3"), written);
+        assertNull("Tasks still pending", queue.getPending("build"));
+    }
+
+    private void await(final CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
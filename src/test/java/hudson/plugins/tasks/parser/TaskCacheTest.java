@@ -0,0 +1,71 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Tests the class {@link TaskCache}.
+ */
+public class TaskCacheTest {
+    /**
+     * Verifies that the least recently used entries are evicted if the budget is exceeded.
+     */
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() {
+        TaskCache<String> cache = new TaskCache<String>(100);
+        cache.put("first", "1", 40);
+        cache.put("second", "2", 40);
+
+        assertEquals("Wrong value", "1", cache.get("first"));
+
+        cache.put("third", "3", 40);
+
+        assertNull("Entry not evicted", cache.get("second"));
+        assertEquals("Wrong value", "1", cache.get("first"));
+        assertEquals("Wrong value", "3", cache.get("third"));
+        assertEquals("Wrong size", 80, cache.getSize());
+        assertEquals("Wrong number of entries", 2, cache.getNumberOfEntries());
+        assertEquals("Wrong number of hits", 3, cache.getHits());
+        assertEquals("Wrong number of misses", 1, cache.getMisses());
+        assertEquals("Wrong number of evictions", 1, cache.getEvictions());
+    }
+
+    /**
+     * Verifies that entries larger than the budget are not cached and that a smaller budget evicts entries.
+     */
+    @Test
+    public void shouldRespectBudget() {
+        TaskCache<String> cache = new TaskCache<String>(100);
+        cache.put("large", "large", 101);
+
+        assertFalse("Large entry cached", cache.contains("large"));
+
+        cache.put("first", "1", 40);
+        cache.put("first", "1", 50);
+        cache.put("second", "2", 50);
+
+        assertEquals("Wrong size", 100, cache.getSize());
+
+        cache.setBudget(0);
+
+        assertEquals("Wrong size", 0, cache.getSize());
+        assertEquals("Wrong number of evictions", 2, cache.getEvictions());
+        assertEquals("Wrong number of misses", 0, cache.getMisses());
+    }
+
+    /**
+     * Verifies the estimated memory of tasks.
+     */
+    @Test
+    public void shouldEstimateSize() {
+        Task task = new Task(Priority.HIGH, 1, "TODO", "message");
+
+        assertEquals("Wrong size", 0, TaskCache.estimateSize(Collections.<Task>emptyList()));
+        assertTrue("Wrong size", TaskCache.estimateSize(Collections.singleton(task)) > TaskCache.TASK_SIZE);
+    }
+}
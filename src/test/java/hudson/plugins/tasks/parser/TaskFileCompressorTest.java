@@ -0,0 +1,55 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link TaskFileCompressor}.
+ */
+public class TaskFileCompressorTest {
+    /** Folder for the compressed files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that a compressed file replaces the original file and is decompressed while it is read.
+     *
+     * @throws IOException
+     *             if the file could not be compressed
+     */
+    @Test
+    public void shouldCompressFile() throws IOException {
+        File file = folder.newFile("open-tasks.xml");
+        String content = StringUtils.repeat("<task><fileName>/workspace/src/Task.java</fileName></task>\n", 1000);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        long files = TaskFileCompressor.getNumberOfCompressedFiles();
+        long savedBytes = TaskFileCompressor.getSavedBytes();
+
+        long saved = TaskFileCompressor.compress(file);
+
+        File compressed = TaskFileCompressor.getCompressedFile(file);
+        assertFalse("Original file not deleted", file.exists());
+        assertTrue("Compressed file not created", compressed.exists());
+        assertEquals("Wrong saved bytes", content.length() - compressed.length(), saved);
+        assertEquals("Wrong number of files", files + 1, TaskFileCompressor.getNumberOfCompressedFiles());
+        assertEquals("Wrong saved bytes", savedBytes + saved, TaskFileCompressor.getSavedBytes());
+
+        InputStream input = TaskFileCompressor.open(compressed);
+        try {
+            assertEquals("Wrong content", content, IOUtils.toString(input, "UTF-8"));
+        }
+        finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Tests the class {@link TaskFingerprints}.
+ */
+public class TaskFingerprintsTest {
+    /** Folder for the stored fingerprints. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that moved tasks are matched and changed tasks are new respectively fixed.
+     */
+    @Test
+    public void shouldFindNewAndFixedTasks() {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 10, "TODO", 1),
+                createTask("Task.java", 20, "FIXME", 2),
+                createTask("Scanner.java", 5, "TODO", 3));
+        List<Task> current = Arrays.asList(
+                createTask("Task.java", 12, "TODO", 1),
+                createTask("Scanner.java", 5, "TODO", 4),
+                createTask("Scanner.java", 8, "FIXME", 5));
+
+        TaskFingerprints currentPrints = TaskFingerprints.create(current);
+        TaskFingerprints referencePrints = TaskFingerprints.create(reference);
+
+        assertArrayEquals("Wrong new tasks", new boolean[] {false, true, true},
+                currentPrints.getUnmatched(referencePrints));
+        assertArrayEquals("Wrong fixed tasks", new boolean[] {false, true, true},
+                referencePrints.getUnmatched(currentPrints));
+        assertEquals("Wrong number of new tasks", 2, currentPrints.getNumberOfUnmatched(referencePrints));
+    }
+
+    /**
+     * Verifies that tasks with the same context and type are matched by their file and line.
+     */
+    @Test
+    public void shouldMatchCollisionsByLocation() {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 10, "TODO", 1),
+                createTask("Task.java", 30, "TODO", 1));
+        List<Task> current = Arrays.asList(
+                createTask("Task.java", 20, "TODO", 1),
+                createTask("Task.java", 30, "TODO", 1),
+                createTask("Task.java", 40, "TODO", 1));
+
+        TaskFingerprints currentPrints = TaskFingerprints.create(current);
+        TaskFingerprints referencePrints = TaskFingerprints.create(reference);
+
+        assertEquals("Wrong number of new tasks", 1, currentPrints.getNumberOfUnmatched(referencePrints));
+        assertFalse("Task at the same line is new", currentPrints.getUnmatched(referencePrints)[1]);
+        assertEquals("Wrong number of fixed tasks", 0, referencePrints.getNumberOfUnmatched(currentPrints));
+    }
+
+    /**
+     * Verifies that stored fingerprints give the same result as the fingerprints of the tasks.
+     *
+     * @throws IOException
+     *             if the fingerprints could not be written
+     */
+    @Test
+    public void shouldMatchStoredFingerprints() throws IOException {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 10, "TODO", 1),
+                createTask("Task.java", 20, "FIXME", 2));
+        File file = new File(folder.getRoot(), "open-tasks.hashes");
+        TaskFingerprints.create(reference).save(file);
+
+        TaskFingerprints loaded = TaskFingerprints.load(file);
+
+        assertEquals("Wrong number of tasks", 2, loaded.size());
+        TaskFingerprints current = TaskFingerprints.create(Collections.singletonList(
+                createTask("Task.java", 20, "FIXME", 2)));
+        assertEquals("Wrong number of new tasks", 0, current.getNumberOfUnmatched(loaded));
+        assertArrayEquals("Wrong fixed tasks", new boolean[] {true, false}, loaded.getUnmatched(current));
+        assertEquals("Wrong number of files", 1, folder.getRoot().list().length);
+    }
+
+    /**
+     * Verifies that tasks without a context hash are matched only with equal tasks, like the tasks of the scenarios of
+     * the {@code TasksDifferencerTest}.
+     */
+    @Test
+    public void shouldMatchTasksWithoutContextByEquality() {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 10, "TODO", "first", 0),
+                createTask("Task.java", 20, "TODO", "second", 0),
+                createTask("Scanner.java", 5, "TODO", "third", 0));
+        List<Task> current = Arrays.asList(
+                createTask("Task.java", 10, "TODO", "first", 0),
+                createTask("Task.java", 20, "TODO", "changed", 0),
+                createTask("Scanner.java", 6, "TODO", "third", 0),
+                createTask("Scanner.java", 8, "TODO", "fourth", 0));
+
+        TaskFingerprints currentPrints = TaskFingerprints.create(current);
+        TaskFingerprints referencePrints = TaskFingerprints.create(reference);
+
+        assertArrayEquals("Wrong new tasks", new boolean[] {false, true, true, true},
+                currentPrints.getUnmatched(referencePrints));
+        assertArrayEquals("Wrong fixed tasks", new boolean[] {false, true, true},
+                referencePrints.getUnmatched(currentPrints));
+    }
+
+    /**
+     * Verifies that equal tasks without a context hash are not new, and that no tasks are new or fixed if the tasks
+     * did not change.
+     */
+    @Test
+    public void shouldMatchEqualTasksWithoutContext() {
+        List<Task> tasks = Arrays.asList(
+                createTask("Task.java", 10, "TODO", "message", 0),
+                createTask("Task.java", 10, "TODO", "message", 0),
+                createTask("Task.java", 10, "FIXME", "message", 0));
+
+        TaskFingerprints current = TaskFingerprints.create(tasks);
+        TaskFingerprints reference = TaskFingerprints.create(tasks.subList(0, 2));
+
+        assertArrayEquals("Wrong new tasks", new boolean[] {false, false, true}, current.getUnmatched(reference));
+        assertEquals("Wrong number of fixed tasks", 0, reference.getNumberOfUnmatched(current));
+        assertEquals("Wrong number of new tasks", 0, current.getNumberOfUnmatched(current));
+    }
+
+    /**
+     * Verifies that fingerprints in store order select the same tasks as the ranges that are read from the store.
+     *
+     * @throws IOException
+     *             if the tasks or fingerprints could not be written
+     */
+    @Test
+    public void shouldSelectStoredTasks() throws IOException {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 20, "FIXME", 2),
+                createTask("Scanner.java", 5, "TODO", 3),
+                createTask("Task.java", 10, "TODO", 1));
+        File store = new File(folder.getRoot(), "open-tasks.bin");
+        TaskStore.write(reference, store);
+        File file = new File(folder.getRoot(), "open-tasks.hashes");
+        TaskFingerprints.createInStoreOrder(reference).save(file);
+
+        TaskFingerprints loaded = TaskFingerprints.load(file);
+
+        assertTrue("Fingerprints not in store order", loaded.isStoreOrder());
+        assertFalse("Fingerprints in store order", TaskFingerprints.create(reference).isStoreOrder());
+        boolean[] isFixed = loaded.getUnmatched(TaskFingerprints.create(Collections.singletonList(
+                createTask("Scanner.java", 5, "TODO", 3))));
+        List<Task> fixed = new ArrayList<Task>();
+        for (int i = 0; i < isFixed.length; i++) {
+            if (isFixed[i]) {
+                fixed.addAll(TaskStore.read(store, new int[] {i, i + 1}));
+            }
+        }
+
+        assertEquals("Wrong number of fixed tasks", 2, fixed.size());
+        assertTrue("Wrong fixed tasks", TaskFingerprints.create(fixed).hasSameFingerprints(loaded.select(isFixed)));
+        assertFalse("Fixed tasks match all tasks", TaskFingerprints.create(fixed).hasSameFingerprints(loaded));
+    }
+
+    /**
+     * Verifies that a duplicated task is matched only once, so that a removed duplicate is fixed.
+     */
+    @Test
+    public void shouldCountDuplicatedTasks() {
+        List<Task> reference = Arrays.asList(
+                createTask("Task.java", 10, "TODO", 1),
+                createTask("Task.java", 20, "TODO", 1));
+        List<Task> current = Collections.singletonList(createTask("Task.java", 15, "TODO", 1));
+
+        TaskFingerprints currentPrints = TaskFingerprints.create(current);
+        TaskFingerprints referencePrints = TaskFingerprints.create(reference);
+
+        assertEquals("Wrong number of new tasks", 0, currentPrints.getNumberOfUnmatched(referencePrints));
+        assertEquals("Wrong number of fixed tasks", 1, referencePrints.getNumberOfUnmatched(currentPrints));
+    }
+
+    private Task createTask(final String fileName, final int line, final String tag, final String message,
+            final long contextHashCode) {
+        Task task = new Task(Priority.NORMAL, line, tag, message);
+        task.setFileName(fileName);
+        task.setContextHashCode(contextHashCode);
+        return task;
+    }
+
+    private Task createTask(final String fileName, final int line, final String tag, final long contextHashCode) {
+        return createTask(fileName, line, tag, "message", contextHashCode);
+    }
+}
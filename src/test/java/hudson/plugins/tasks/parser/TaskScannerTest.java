@@ -1,18 +1,23 @@
 package hudson.plugins.tasks.parser;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Iterator;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
 import hudson.plugins.analysis.core.ParserResult;
+import hudson.plugins.analysis.util.ContextHashCode;
 import hudson.plugins.analysis.util.model.AnnotationContainer;
 import hudson.plugins.analysis.util.model.JavaProject;
 import hudson.plugins.analysis.util.model.Priority;
@@ -243,6 +248,207 @@ public class TaskScannerTest {
         assertEquals("Type is not the found token", FIXME, task.getType());
     }
 
+    /**
+     * Checks that all priorities are reported for a single line and that the last tag in a line wins.
+     */
+    @Test
+    public void testSeveralTagsInOneLine() {
+        String text = "// TODO: first FIXME: second todo third";
+        Collection<Task> result = scan(new StringReader(text), 2, "FIXME", "TODO", null, false, false);
+
+        Iterator<Task> tasks = result.iterator();
+        verifyTask(tasks.next(), Priority.HIGH, FIXME, 1, "second todo third");
+        verifyTask(tasks.next(), Priority.NORMAL, "TODO", 1, "first FIXME second todo third");
+
+        result = scan(new StringReader(text), 2, "FIXME", "TODO", null, true, false);
+
+        tasks = result.iterator();
+        verifyTask(tasks.next(), Priority.HIGH, FIXME, 1, "second todo third");
+        verifyTask(tasks.next(), Priority.NORMAL, "TODO", 1, "third");
+    }
+
+    /**
+     * Checks that the first defined tag is chosen if several tags start at the same position and that tags with
+     * regular expression characters are still supported.
+     */
+    @Test
+    public void testTagPrecedence() {
+        Collection<Task> result = scan(new StringReader("FIXME now"), 1, "FIX, FIXME", null, null, false, false);
+        verifyTask(result.iterator().next(), Priority.HIGH, FIXME, 1, "now");
+
+        result = scan(new StringReader("FIXME now"), 1, "FIXME, FIX", null, null, false, false);
+        verifyTask(result.iterator().next(), Priority.HIGH, FIXME, 1, "now");
+
+        result = scan(new StringReader("FIXME now"), 1, "FIX.E", null, null, false, false);
+        verifyTask(result.iterator().next(), Priority.HIGH, "FIXME", 1, "now");
+    }
+
+    /**
+     * Checks that scanning the bytes of a file finds the same tasks as scanning the lines of the file.
+     *
+     * @throws IOException
+     *      if the file could not be read
+     */
+    @Test
+    public void testScanBytes() throws IOException {
+        String text = "FIXME first\r\n\r\nsecond TODO\rthird\n\u00e4 TODO: \u00fcmlaut\n";
+        for (String encoding : new String[] {"UTF-8", "ISO-8859-1", "windows-1251"}) {
+            Charset charset = Charset.forName(encoding);
+            byte[] content = text.getBytes(charset);
+
+            TaskScanner scanner = new TaskScanner();
+            Collection<Task> expected = scanner.scan(new StringReader(new String(content, charset)));
+            Collection<Task> actual = scanner.scan(content, content.length, charset);
+
+            assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 3, actual.size());
+            Iterator<Task> iterator = actual.iterator();
+            for (Task task : expected) {
+                Task other = iterator.next();
+                verifyTask(other, task.getPriority(), task.getType(), task.getPrimaryLineNumber(), task.getDetailMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks that the line numbers are correct if only the lines with a tag are extracted from the content.
+     */
+    @Test
+    public void testLineNumbersWithMixedLineBreaks() {
+        String text = "first\r\nsecond\rFIXME third\n\n\r\nTODO: fifth\r\rsixth";
+        Collection<Task> tasks = scan(new StringReader(text), 2);
+
+        Iterator<Task> iterator = tasks.iterator();
+        verifyTask(iterator.next(), Priority.HIGH, FIXME, 3, "third");
+        verifyTask(iterator.next(), Priority.NORMAL, "TODO", 6, "fifth");
+
+        scan(new StringReader("first\r\nsecond\rthird\n"), 0);
+    }
+
+    /**
+     * Verifies that the context hash codes are the same as the ones of {@link ContextHashCode}.
+     *
+     * @throws IOException
+     *             if the file could not be created
+     */
+    @Test
+    public void testContextHashCode() throws IOException {
+        String text = "TODO: first\r\nsecond\rFIXME third\n\n\r\nTODO: fifth\r\rsixth\n"
+                + "seventh\neighth\r\nninth\ntenth\n\u00e4\u00f6\u00fc FIXME umlauts\nlast TODO";
+        File file = File.createTempFile("context", ".txt");
+        try {
+            FileUtils.writeStringToFile(file, text, "UTF-8");
+            byte[] content = text.getBytes("UTF-8");
+
+            verifyContextHashCodes(file, 5, new TaskScanner().scan(content, content.length, Charset.forName("UTF-8")));
+            verifyContextHashCodes(file, 5, new TaskScanner().scan(new StringReader(text)));
+            verifyContextHashCodes(file, 5, new TaskScanner().scanLines(new StringReader(text)));
+            verifyContextHashCodes(file, 5, new TaskScanner("^.*(TODO|FIXME)(.*)$", null, null, false, true)
+                    .scan(new StringReader(text)));
+        }
+        finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Verifies that long lines are truncated and that the scan is stopped when the deadline has been exceeded.
+     *
+     * @throws IOException
+     *             if the text could not be scanned
+     */
+    @Test
+    public void testScanLimits() throws IOException {
+        String text = "FIXME short\n" + StringUtils.repeat("x", 100) + " TODO long\nTODO short\n";
+        byte[] content = text.getBytes("UTF-8");
+
+        TaskScanner scanner = new TaskScanner("FIXME", "TODO", null, false, false);
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 3, scanner.scan(new StringReader(text)).size());
+        assertFalse("Lines truncated", scanner.hasTruncatedLines());
+
+        scanner.setMaximumLineLength(50);
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 2, scanner.scan(new StringReader(text)).size());
+        assertTrue("Lines not truncated", scanner.hasTruncatedLines());
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 2, scanner.scan(content, content.length,
+                Charset.forName("UTF-8")).size());
+        assertTrue("Lines not truncated", scanner.hasTruncatedLines());
+
+        scanner.setMaximumLineLength(0);
+        scanner.setDeadline(System.nanoTime() - 1);
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 0, scanner.scan(new StringReader(text)).size());
+        assertTrue("Time limit not exceeded", scanner.isTimeLimitExceeded());
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 0, scanner.scan(content, content.length,
+                Charset.forName("UTF-8")).size());
+        assertTrue("Time limit not exceeded", scanner.isTimeLimitExceeded());
+
+        scanner.setDeadline(TaskScanner.NO_DEADLINE);
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 3, scanner.scan(new StringReader(text)).size());
+        assertFalse("Time limit exceeded", scanner.isTimeLimitExceeded());
+    }
+
+    /**
+     * Verifies that lines with multibyte characters are truncated by characters, independent of the scanned
+     * representation.
+     *
+     * @throws IOException
+     *             if the text could not be scanned
+     */
+    @Test
+    public void testTruncateMultibyteLines() throws IOException {
+        String text = StringUtils.repeat("\u00e4", 40) + " TODO \u00f6\u00f6\u00f6\u00f6\u00f6\n";
+        byte[] content = text.getBytes("UTF-8");
+
+        TaskScanner scanner = new TaskScanner(null, "TODO", null, false, false);
+        scanner.setMaximumLineLength(48);
+
+        Collection<Task> fromReader = scanner.scan(new StringReader(text));
+        Collection<Task> fromBytes = scanner.scan(content, content.length, Charset.forName("UTF-8"));
+
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, 1, fromBytes.size());
+        assertTrue("Lines not truncated", scanner.hasTruncatedLines());
+        assertEquals("Wrong message", "\u00f6\u00f6", fromBytes.iterator().next().getDetailMessage());
+        assertEquals("Wrong message", fromReader.iterator().next().getDetailMessage(),
+                fromBytes.iterator().next().getDetailMessage());
+    }
+
+    /**
+     * Verifies that the lines of the scanned content are counted.
+     *
+     * @throws IOException
+     *             if the text could not be scanned
+     */
+    @Test
+    public void testNumberOfLines() throws IOException {
+        verifyNumberOfLines("", 0);
+        verifyNumberOfLines("TODO", 1);
+        verifyNumberOfLines("first\nTODO second\n", 2);
+        verifyNumberOfLines("first\r\nTODO second\r\n\r\nfourth", 4);
+        verifyNumberOfLines("TODO first\r\rthird\n", 3);
+    }
+
+    private void verifyNumberOfLines(final String text, final int expectedNumberOfLines) throws IOException {
+        byte[] content = text.getBytes("UTF-8");
+        TaskScanner[] scanners = {new TaskScanner(), new TaskScanner("^.*(TODO)(.*)$", null, null, false, true),
+                new TaskScanner("^.*(TODO|\\n)(.*)$", null, null, false, true)};
+        for (TaskScanner scanner : scanners) {
+            scanner.scan(new StringReader(text));
+            assertEquals("Wrong number of lines", expectedNumberOfLines, scanner.getNumberOfLines());
+            scanner.scanLines(new StringReader(text));
+            assertEquals("Wrong number of lines", expectedNumberOfLines, scanner.getNumberOfLines());
+            scanner.scan(content, content.length, Charset.forName("UTF-8"));
+            assertEquals("Wrong number of lines", expectedNumberOfLines, scanner.getNumberOfLines());
+        }
+    }
+
+    private void verifyContextHashCodes(final File file, final int expectedNumberOfTasks,
+            final Collection<Task> tasks) throws IOException {
+        assertEquals(WRONG_NUMBER_OF_TASKS_ERROR, expectedNumberOfTasks, tasks.size());
+        for (Task task : tasks) {
+            assertEquals("Wrong context hash code for line " + task.getPrimaryLineNumber(),
+                    new ContextHashCode().create(file.getAbsolutePath(), task.getPrimaryLineNumber(), "UTF-8"),
+                    task.getContextHashCode());
+        }
+    }
+
     /**
      * Checks whether we find all priority task in the test file.
      */
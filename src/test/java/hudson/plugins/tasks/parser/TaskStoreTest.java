@@ -0,0 +1,264 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Tests the class {@link TaskStore}.
+ */
+public class TaskStoreTest {
+    /** Folder for the stored tasks. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that all properties of the tasks are restored, including the key.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldRestoreAllProperties() throws IOException {
+        List<Task> tasks = createTasks(TaskStore.PAGE_SIZE * 2 + 17);
+        File file = folder.newFile("open-tasks.bin");
+        TaskStore.write(tasks, file);
+
+        List<Task> read = TaskStore.read(file);
+
+        assertEquals("Wrong tasks", toString(tasks), toString(read));
+        assertFalse("Temporary file not removed", new File(file.getPath() + ".tmp").exists());
+    }
+
+    /**
+     * Verifies that an empty list of tasks is stored.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldStoreEmptyTasks() throws IOException {
+        File file = folder.newFile("open-tasks.bin");
+        TaskStore.write(Collections.<Task>emptyList(), file);
+
+        assertTrue("Tasks found", TaskStore.read(file).isEmpty());
+    }
+
+    /**
+     * Verifies that files in an unknown format are rejected.
+     *
+     * @throws IOException
+     *             if the file could not be created
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void shouldRejectUnknownFormat() throws IOException {
+        File file = folder.newFile("open-tasks.xml");
+        FileUtils.writeStringToFile(file, "<?xml version='1.0' encoding='UTF-8'?>");
+
+        TaskStore.read(file);
+    }
+
+    /**
+     * Verifies that sizes that exceed the length of the file are rejected before anything is allocated.
+     *
+     * @throws IOException
+     *             if the file could not be created
+     */
+    @Test
+    public void shouldRejectSizesBeyondLength() throws IOException {
+        verifyMalformedHeader(0, Integer.MAX_VALUE);
+        verifyMalformedHeader(0, TaskStore.PAGE_SIZE, Integer.MAX_VALUE, 1);
+        verifyMalformedHeader(0, TaskStore.PAGE_SIZE, 0, 0, Integer.MAX_VALUE);
+        verifyMalformedHeader(10, TaskStore.PAGE_SIZE, 0, 0, 2);
+        verifyMalformedHeader(10, TaskStore.PAGE_SIZE, 0, 0, 1, Integer.MAX_VALUE);
+    }
+
+    private void verifyMalformedHeader(final int numberOfTasks, final int... sizes) throws IOException {
+        File file = new File(folder.getRoot(), "malformed.bin");
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            output.writeInt(TaskStore.MAGIC);
+            output.writeByte(TaskStore.VERSION);
+            VarInt.writeNumber(output, numberOfTasks);
+            for (int size : sizes) {
+                VarInt.writeNumber(output, size);
+            }
+        }
+        finally {
+            output.close();
+        }
+        try {
+            TaskStore.read(file);
+            fail("Malformed header not detected: " + Arrays.toString(sizes));
+        }
+        catch (StreamCorruptedException exception) {
+            // expected
+        }
+    }
+
+    /**
+     * Verifies that the tasks of each module, package, file, priority and tag are read using the index, also if
+     * the tasks span several pages.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldReadTasksOfIndexedValues() throws IOException {
+        List<Task> tasks = createTasks(TaskStore.PAGE_SIZE * 3 + 5);
+        File file = folder.newFile("open-tasks.bin");
+        TaskStore.write(tasks, file);
+
+        TaskIndex index = TaskIndex.load(file);
+
+        assertEquals("Wrong number of tasks", tasks.size(), index.getNumberOfTasks());
+        for (TaskIndex.Dimension dimension : TaskIndex.Dimension.values()) {
+            int total = 0;
+            for (String value : index.getValues(dimension)) {
+                List<Task> expected = new ArrayList<Task>();
+                for (Task task : tasks) {
+                    if (dimension.getValue(task).equals(value)) {
+                        expected.add(task);
+                    }
+                }
+                int[] ranges = index.getRanges(dimension, value);
+                int[] copy = ranges.clone();
+
+                List<Task> read = TaskStore.read(file, ranges);
+
+                assertEquals("Wrong tasks of " + dimension + " " + value, toString(expected), toString(read));
+                assertEquals("Wrong number of tasks", expected.size(), index.getNumberOfTasks(dimension, value));
+                assertArrayEquals("Ranges modified", copy, ranges);
+                assertEquals("Wrong value", value, index.findValue(dimension, value.hashCode()));
+                total += read.size();
+            }
+            assertEquals("Not all tasks indexed by " + dimension, tasks.size(), total);
+        }
+        assertEquals("Unknown value found", 0, index.getRanges(TaskIndex.Dimension.MODULE, "unknown").length);
+    }
+
+    /**
+     * Verifies that the tasks are restored from a difference to a keyframe, also if the build of the keyframe has
+     * been deleted and if the keyframe is linked from a previous difference.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldRestoreTasksFromDifference() throws IOException {
+        File keyframe = folder.newFile("open-tasks.bin");
+        TaskStore.write(createTasks(TaskStore.PAGE_SIZE * 2), keyframe);
+
+        List<Task> tasks = createTasks(TaskStore.PAGE_SIZE * 2);
+        tasks.subList(100, 110).clear();
+        Task added = new Task(Priority.HIGH, 4711, "FIXME", "added");
+        added.setFileName("/workspace/src/Added.java");
+        tasks.add(added);
+        File first = new File(folder.newFolder("first"), "open-tasks.delta");
+
+        assertTrue("Difference not written", TaskDelta.write(tasks, keyframe, 1, first));
+        assertTrue("Keyframe deleted", keyframe.delete());
+        assertEquals("Wrong tasks", toString(tasks), toString(TaskDelta.read(first)));
+        assertEquals("Wrong distance", 1, TaskDelta.getDistance(first));
+        assertTrue("Difference too large", first.length() * 10 < TaskDelta.getKeyframeFile(first).length());
+
+        tasks.remove(0);
+        File second = new File(folder.newFolder("second"), "open-tasks.delta");
+
+        assertTrue("Difference not written", TaskDelta.write(tasks, TaskDelta.getKeyframeFile(first), 2, second));
+        assertEquals("Wrong tasks", toString(tasks), toString(TaskDelta.read(second)));
+        assertEquals("Wrong distance", 2, TaskDelta.getDistance(second));
+    }
+
+    /**
+     * Verifies that no difference is written if most of the tasks have been changed.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldSkipLargeDifference() throws IOException {
+        File keyframe = folder.newFile("open-tasks.bin");
+        TaskStore.write(createTasks(100), keyframe);
+
+        List<Task> tasks = createTasks(100);
+        for (Task task : tasks.subList(0, 51)) {
+            task.setModuleName("changed");
+        }
+        File file = new File(folder.newFolder("build"), "open-tasks.delta");
+
+        assertFalse("Difference written", TaskDelta.write(tasks, keyframe, 1, file));
+        assertFalse("Difference written", file.exists());
+    }
+
+    /**
+     * Verifies that the files of a store and of a difference are deleted together with their index and keyframe.
+     *
+     * @throws IOException
+     *             if the tasks could not be stored
+     */
+    @Test
+    public void shouldDeleteIndexAndKeyframe() throws IOException {
+        File keyframe = folder.newFile("open-tasks.bin");
+        TaskStore.write(createTasks(100), keyframe);
+        File build = new File(folder.newFolder("build"), "open-tasks.delta");
+        assertTrue("Difference not written", TaskDelta.write(createTasks(100), keyframe, 1, build));
+
+        TaskStore.delete(keyframe);
+        TaskDelta.delete(build);
+
+        assertFalse("Store not deleted", keyframe.exists());
+        assertFalse("Index not deleted", TaskIndex.getIndexFile(keyframe).exists());
+        assertFalse("Difference not deleted", build.exists());
+        assertFalse("Keyframe not deleted", TaskDelta.getKeyframeFile(build).exists());
+    }
+
+    private List<Task> createTasks(final int size) {
+        List<Task> tasks = new ArrayList<Task>();
+        for (int i = 0; i < size; i++) {
+            Task task = new Task(Priority.values()[i % 3], (i * 7) % 500 + 1, i % 5 == 0 ? "FIXME" : "TODO",
+                    i % 11 == 0 ? null : "message ä " + i);
+            task.setModuleName("module-" + i % 3);
+            task.setPackageName(i % 4 == 0 ? null : "edu.hm.package" + i % 4);
+            task.setFileName("/workspace/src/File" + i % 40 + ".java");
+            task.setPathName("/workspace");
+            task.setContextHashCode(i * 0x9E3779B9);
+            if (i % 2 == 0) {
+                task.setAuthorName("author " + i % 3);
+                task.setAuthorEmail("author" + i % 3 + "@example.com");
+                task.setCommitId("commit" + i % 6);
+            }
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private List<String> toString(final List<Task> tasks) {
+        List<String> properties = new ArrayList<String>();
+        for (FileAnnotation task : tasks) {
+            properties.add(task.getKey() + ":" + task.getModuleName() + ":" + task.getPackageName() + ":"
+                    + task.getFileName() + ":" + task.getPathName() + ":" + task.getPrimaryLineNumber() + ":"
+                    + task.getPriority() + ":" + task.getType() + ":" + ((Task)task).getDetailMessage() + ":"
+                    + task.getContextHashCode() + ":" + task.getAuthorName() + ":" + task.getAuthorEmail() + ":"
+                    + task.getCommitId() + ":" + task.getOrigin());
+        }
+        Collections.sort(properties);
+        return properties;
+    }
+}
@@ -0,0 +1,65 @@
+package hudson.plugins.tasks.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Tests the class {@link TaskTotals}.
+ */
+public class TaskTotalsTest {
+    /**
+     * Verifies that the tasks are counted by priority, tag, module, package and language.
+     */
+    @Test
+    public void shouldCountTasks() {
+        List<FileAnnotation> tasks = new ArrayList<FileAnnotation>();
+        tasks.add(createTask(Priority.HIGH, "FIXME", "core", "edu.hm", "/src/Task.java"));
+        tasks.add(createTask(Priority.NORMAL, "TODO", "core", "edu.hm", "/src/Scanner.JAVA"));
+        tasks.add(createTask(Priority.NORMAL, "TODO", "ui", null, "/src.ui/Task.cs"));
+
+        TaskTotals totals = new TaskTotals(tasks, 2, 1);
+
+        assertEquals("Wrong number of tasks", 3, totals.getNumberOfTasks());
+        assertEquals("Wrong number of high tasks", 1, totals.getNumberOfTasks(Priority.HIGH));
+        assertEquals("Wrong number of normal tasks", 2, totals.getNumberOfTasks(Priority.NORMAL));
+        assertEquals("Wrong number of low tasks", 0, totals.getNumberOfTasks(Priority.LOW));
+        assertEquals("Wrong tags", "{FIXME=1, TODO=2}", totals.getTags().toString());
+        assertEquals("Wrong modules", "{core=2, ui=1}", totals.getModules().toString());
+        assertEquals("Wrong packages", "{=1, edu.hm=2}", totals.getPackages().toString());
+        assertEquals("Wrong languages", "{cs=1, java=2}", totals.getLanguages().toString());
+        assertEquals("Wrong number of C# tasks", 1, totals.getNumberOfTasksInLanguage("cs"));
+        assertEquals("Wrong number of C tasks", 0, totals.getNumberOfTasksInLanguage("c"));
+        assertEquals("Wrong number of new tasks", 2, totals.getNumberOfNewTasks());
+        assertEquals("Wrong number of fixed tasks", 1, totals.getNumberOfFixedTasks());
+    }
+
+    /**
+     * Verifies the totals of a build without tasks.
+     */
+    @Test
+    public void shouldCountNoTasks() {
+        TaskTotals totals = new TaskTotals(Collections.<FileAnnotation>emptyList(), 0, 3);
+
+        assertEquals("Wrong number of tasks", 0, totals.getNumberOfTasks());
+        assertEquals("Wrong number of high tasks", 0, totals.getNumberOfTasks(Priority.HIGH));
+        assertTrue("Tags found", totals.getTags().isEmpty());
+        assertEquals("Wrong number of fixed tasks", 3, totals.getNumberOfFixedTasks());
+    }
+
+    private Task createTask(final Priority priority, final String tag, final String module,
+            final String packageName, final String fileName) {
+        Task task = new Task(priority, 1, tag, "message");
+        task.setFileName(fileName);
+        task.setModuleName(module);
+        task.setPackageName(packageName);
+        return task;
+    }
+}
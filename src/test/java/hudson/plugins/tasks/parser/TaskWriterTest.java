@@ -0,0 +1,121 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.Priority;
+
+/**
+ * Tests the classes {@link TaskWriter} and {@link TaskReader}.
+ */
+public class TaskWriterTest {
+    /**
+     * Verifies that the tasks are read with the same properties as written.
+     *
+     * @throws IOException
+     *             if the tasks could not be written or read
+     */
+    @Test
+    public void shouldReadWrittenTasks() throws IOException {
+        List<Task> written = new ArrayList<Task>();
+        for (int i = 0; i < TaskWriter.BATCH_SIZE * 2 + 1; i++) {
+            written.add(createTask(i));
+        }
+        Task withoutModule = new Task(Priority.HIGH, 1, "FIXME", "\u00e4\u00f6\u00fc \u20ac");
+        withoutModule.setFileName("/workspace/Umlauts.java");
+        written.add(withoutModule);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TaskWriter writer = new TaskWriter(output);
+        writer.write(written.subList(0, 10));
+        writer.write(written.subList(10, written.size()));
+        writer.close();
+
+        List<Task> read = new ArrayList<Task>();
+        new TaskReader(new ByteArrayInputStream(output.toByteArray())).read(read);
+
+        assertEquals("Wrong number of tasks", written.size(), read.size());
+        Iterator<Task> iterator = read.iterator();
+        for (Task expected : written) {
+            Task actual = iterator.next();
+            assertEquals("Wrong file", expected.getFileName(), actual.getFileName());
+            assertEquals("Wrong package", expected.getPackageName(), actual.getPackageName());
+            assertEquals("Wrong module", expected.getModuleName(), actual.getModuleName());
+            assertEquals("Wrong path", expected.getPathName(), actual.getPathName());
+            assertEquals("Wrong line", expected.getPrimaryLineNumber(), actual.getPrimaryLineNumber());
+            assertEquals("Wrong priority", expected.getPriority(), actual.getPriority());
+            assertEquals("Wrong tag", expected.getType(), actual.getType());
+            assertEquals("Wrong message", expected.getDetailMessage(), actual.getDetailMessage());
+            assertEquals("Wrong context hash code", expected.getContextHashCode(), actual.getContextHashCode());
+            assertEquals("Wrong origin", Task.ORIGIN, actual.getOrigin());
+        }
+    }
+
+    /**
+     * Verifies that a stream that ends before all tasks have been written is detected.
+     *
+     * @throws IOException
+     *             if the tasks could not be written
+     */
+    @Test(expected = IOException.class)
+    public void shouldDetectIncompleteStream() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TaskWriter writer = new TaskWriter(output);
+        writer.write(Arrays.asList(createTask(1), createTask(2)));
+        writer.close();
+        byte[] content = output.toByteArray();
+
+        new TaskReader(new ByteArrayInputStream(content, 0, content.length - 1)).read(new ArrayList<Task>());
+    }
+
+    /**
+     * Verifies that negative markers, string lengths and string references are detected as malformed stream.
+     *
+     * @throws IOException
+     *             if the stream could not be written
+     */
+    @Test
+    public void shouldRejectNegativeNumbers() throws IOException {
+        verifyCorrupted(-1L);
+        verifyCorrupted(TaskWriter.GROUP, TaskWriter.NEW_STRING, -1L);
+        verifyCorrupted(TaskWriter.GROUP, -1L);
+    }
+
+    private void verifyCorrupted(final long... numbers) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(output);
+        for (long number : numbers) {
+            VarInt.writeNumber(stream, number);
+        }
+        stream.close();
+
+        try {
+            new TaskReader(new ByteArrayInputStream(output.toByteArray())).read(new ArrayList<Task>());
+            fail("Malformed stream not detected: " + Arrays.toString(numbers));
+        }
+        catch (StreamCorruptedException exception) {
+            // expected
+        }
+    }
+
+    private Task createTask(final int index) {
+        Task task = new Task(Priority.values()[index % Priority.values().length], index, "TODO", "message " + index);
+        task.setFileName("/workspace/module-" + index % 7 + "/File" + index % 13 + ".java");
+        task.setPackageName("package" + index % 5);
+        task.setModuleName("module-" + index % 7);
+        task.setPathName("/workspace");
+        task.setContextHashCode(index * 31L);
+        return task;
+    }
+}
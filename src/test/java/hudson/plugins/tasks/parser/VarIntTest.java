@@ -0,0 +1,82 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the class {@link VarInt}.
+ */
+public class VarIntTest {
+    private static final long[] VALUES = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE,
+            -1, -64, -65, Integer.MIN_VALUE, Long.MIN_VALUE};
+
+    /**
+     * Verifies that unsigned and signed numbers are read as they have been written, and that small numbers use
+     * a single byte.
+     *
+     * @throws IOException
+     *             if the numbers could not be written or read
+     */
+    @Test
+    public void shouldReadWrittenNumbers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        VarInt.writeNumber(output, 127);
+        assertEquals("Wrong length of small number", 1, bytes.size());
+        VarInt.writeSignedNumber(output, -64);
+        assertEquals("Wrong length of small signed number", 2, bytes.size());
+        for (long value : VALUES) {
+            VarInt.writeNumber(output, value);
+            VarInt.writeSignedNumber(output, value);
+        }
+        output.close();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("Wrong number", 127, VarInt.readNumber(input));
+        assertEquals("Wrong signed number", -64, VarInt.readSignedNumber(input));
+        for (long value : VALUES) {
+            assertEquals("Wrong number", value, VarInt.readNumber(input));
+            assertEquals("Wrong signed number", value, VarInt.readSignedNumber(input));
+        }
+        assertEquals("Remaining bytes", -1, input.read());
+    }
+
+    /**
+     * Verifies that sizes that do not fit into an {@code int} are rejected.
+     *
+     * @throws IOException
+     *             if the numbers could not be written
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void shouldRejectLargeSize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        VarInt.writeNumber(output, Integer.MAX_VALUE + 1L);
+        output.close();
+
+        VarInt.readSize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /**
+     * Verifies that a number with too many continuation bytes is rejected.
+     *
+     * @throws IOException
+     *             if the number could not be read
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void shouldRejectMalformedNumber() throws IOException {
+        byte[] bytes = new byte[Long.SIZE];
+        Arrays.fill(bytes, (byte)0x80);
+
+        VarInt.readNumber(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,367 @@
+package hudson.plugins.tasks.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.analysis.util.model.FileAnnotation;
+import hudson.plugins.tasks.parser.ScanStatistics.Measurement;
+import hudson.plugins.tasks.parser.ScanStatistics.Phase;
+
+/**
+ * Tests the class {@link WorkspaceScanner}.
+ */
+public class WorkspaceScannerTest {
+    private static final int NUMBER_OF_FILES = 50;
+    private static final String WRONG_TASKS_ERROR = "Wrong tasks found.";
+    private static final String WRONG_LOG_ERROR = "Wrong log message.";
+
+    /** Workspace with the files to scan. */
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    /**
+     * Verifies that the parallel scanning finds the same tasks as the sequential scanning and that the order of the
+     * tasks does not depend on the scheduling of the threads.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldScanInParallelWithSameResult() throws Exception {
+        createFiles();
+
+        List<String> sequential = scan(1);
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3, sequential.size());
+
+        List<String> expected = scan(4);
+        for (int run = 0; run < 3; run++) {
+            assertEquals(WRONG_TASKS_ERROR, expected, scan(4));
+        }
+
+        Collections.sort(sequential);
+        Collections.sort(expected);
+        assertEquals(WRONG_TASKS_ERROR, sequential, expected);
+    }
+
+    /**
+     * Verifies that the scanning is canceled if the thread has been interrupted.
+     *
+     * @throws Exception
+     *             if the files could not be created
+     */
+    @Test
+    public void shouldCancelParallelScanning() throws Exception {
+        createFiles();
+
+        Thread.currentThread().interrupt();
+        try {
+            scan(4);
+            fail("Scanning has not been canceled");
+        }
+        catch (InterruptedException exception) {
+            assertFalse("Interrupted flag not cleared", Thread.interrupted());
+        }
+    }
+
+    /**
+     * Verifies that the tasks of unchanged files are reused and that a changed configuration invalidates the
+     * manifest.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldReuseTasksOfUnchangedFiles() throws Exception {
+        createFiles();
+
+        TasksParserResult initial = scanIncremental("FIXME", 1);
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3, initial.getNumberOfAnnotations());
+        assertTrue("Manifest not written", new File(workspace.getRoot(), ScanManifest.FILE_NAME).isFile());
+        assertTrue(WRONG_LOG_ERROR, initial.getLogMessages().contains("Reused the tasks of 0 unchanged files"));
+
+        FileUtils.writeStringToFile(new File(workspace.getRoot(), "folder-1/file-1.txt"), "TODO: changed\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(workspace.getRoot(), "new.txt"), "FIXME: new\n", "UTF-8");
+        TasksParserResult incremental = scanIncremental("FIXME", 1);
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3 - 2 + 1, incremental.getNumberOfAnnotations());
+        assertTrue(WRONG_LOG_ERROR, incremental.getLogMessages().contains(
+                "Reused the tasks of " + (NUMBER_OF_FILES - 1) + " unchanged files"));
+
+        for (int numberOfThreads = 1; numberOfThreads < 5; numberOfThreads += 3) {
+            TasksParserResult unchanged = scanIncremental("FIXME", numberOfThreads);
+            assertEquals(WRONG_TASKS_ERROR, toString(incremental), toString(unchanged));
+            assertTrue(WRONG_LOG_ERROR, unchanged.getLogMessages().contains(
+                    "Reused the tasks of " + (NUMBER_OF_FILES + 1) + " unchanged files"));
+        }
+
+        TasksParserResult changed = scanIncremental("FIX", 1);
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 2 - 1, changed.getNumberOfAnnotations());
+        assertTrue(WRONG_LOG_ERROR, changed.getLogMessages().contains("Reused the tasks of 0 unchanged files"));
+    }
+
+    /**
+     * Verifies that the tasks of a file that has been touched without changing its content are reused and that the
+     * manifest is replaced atomically.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldReuseTasksOfTouchedFiles() throws Exception {
+        createFiles();
+
+        TasksParserResult initial = scanIncremental("FIXME", 1);
+        File touched = new File(workspace.getRoot(), "folder-1/file-1.txt");
+        assertTrue("File not touched", touched.setLastModified(touched.lastModified() + 60000));
+
+        TasksParserResult incremental = scanIncremental("FIXME", 1);
+        assertEquals(WRONG_TASKS_ERROR, toDetailedString(initial), toDetailedString(incremental));
+        assertTrue(WRONG_LOG_ERROR, incremental.getLogMessages().contains(
+                "Reused the tasks of " + NUMBER_OF_FILES + " unchanged files"));
+        assertFalse("Temporary manifest not removed",
+                new File(workspace.getRoot(), ScanManifest.FILE_NAME + ".tmp").exists());
+    }
+
+    /**
+     * Verifies that the reused tasks keep all properties and that a manifest that can't be parsed, e.g. a Java
+     * serialized object or a truncated file, is ignored.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldIgnoreMalformedManifest() throws Exception {
+        createFiles();
+
+        TasksParserResult initial = scanIncremental("FIXME", 1);
+        TasksParserResult unchanged = scanIncremental("FIXME", 1);
+        assertEquals(WRONG_TASKS_ERROR, toDetailedString(initial), toDetailedString(unchanged));
+        assertTrue(WRONG_LOG_ERROR, unchanged.getLogMessages().contains(
+                "Reused the tasks of " + NUMBER_OF_FILES + " unchanged files"));
+
+        File manifest = new File(workspace.getRoot(), ScanManifest.FILE_NAME);
+        byte[] content = FileUtils.readFileToByteArray(manifest);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(serialized);
+        output.writeObject(new ArrayList<String>(Collections.singletonList("planted")));
+        output.close();
+        byte[][] malformed = {serialized.toByteArray(), Arrays.copyOf(content, content.length / 2)};
+        for (byte[] bytes : malformed) {
+            FileUtils.writeByteArrayToFile(manifest, bytes);
+
+            TasksParserResult rescanned = scanIncremental("FIXME", 1);
+            assertEquals(WRONG_TASKS_ERROR, toDetailedString(initial), toDetailedString(rescanned));
+            assertTrue(WRONG_LOG_ERROR, rescanned.getLogMessages().contains("Reused the tasks of 0 unchanged files"));
+        }
+    }
+
+    /**
+     * Verifies that a scanner that has been sent to an agent returns the same tasks in the encoded transfer format.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldTransferEncodedTasks() throws Exception {
+        createFiles();
+        WorkspaceScanner scanner = new WorkspaceScanner("**/*.txt", "", "UTF-8", "FIXME", "TODO", "@deprecated",
+                false, false, false);
+        TasksParserResult local = scanner.invoke(workspace.getRoot(), null);
+
+        WorkspaceScanner remote = (WorkspaceScanner)copy(scanner);
+        TasksParserResult encoded = remote.invoke(workspace.getRoot(), null);
+        assertEquals("Tasks not encoded", 0, encoded.getNumberOfAnnotations());
+        TasksParserResult transferred = (TasksParserResult)copy(encoded);
+
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3, transferred.getNumberOfAnnotations());
+        assertEquals(WRONG_TASKS_ERROR, toDetailedString(local), toDetailedString(transferred));
+        assertEquals("Wrong number of files", NUMBER_OF_FILES, transferred.getNumberOfScannedFiles());
+    }
+
+    /**
+     * Verifies that files exceeding the maximum file size are skipped and that the scan is stopped when the maximum
+     * number of tasks has been reached.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldSkipFilesThatExceedBudgets() throws Exception {
+        createFiles();
+        FileUtils.writeStringToFile(new File(workspace.getRoot(), "large.txt"),
+                StringUtils.repeat("line without a tag\n", 2000) + "// FIXME: large\n", "UTF-8");
+
+        WorkspaceScanner scanner = createScanner();
+        scanner.setMaximumFileSize(20);
+        TasksParserResult result = scanner.invoke(workspace.getRoot(), null);
+
+        assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3, result.getNumberOfAnnotations());
+        assertEquals("Wrong skipped files", Collections.singleton(
+                new File(workspace.getRoot(), "large.txt").getAbsolutePath()), result.getSkippedFiles().keySet());
+        assertFalse("Result is complete", result.isComplete());
+        assertNull("Scan has been stopped", result.getIncompleteReason());
+        FileUtils.forceDelete(new File(workspace.getRoot(), "large.txt"));
+
+        for (int numberOfThreads = 1; numberOfThreads < 5; numberOfThreads += 3) {
+            scanner = createScanner();
+            scanner.setNumberOfThreads(numberOfThreads);
+            scanner.setMaximumTasks(10);
+            result = scanner.invoke(workspace.getRoot(), null);
+
+            assertEquals(WRONG_TASKS_ERROR, 10, result.getNumberOfAnnotations());
+            assertFalse("Result is complete", result.isComplete());
+            assertEquals("Wrong reason", "maximum number of 10 tasks reached", result.getIncompleteReason());
+            assertEquals("Wrong number of truncated files", 1, result.getSkippedFiles().size());
+            assertEquals("Wrong number of files", 4, result.getNumberOfScannedFiles());
+            assertTrue(WRONG_LOG_ERROR, result.getLogMessages().contains("Stopped scanning"));
+        }
+    }
+
+    /**
+     * Verifies that the remaining files are not scanned if the time limit of the scan has been exceeded.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldStopScanningAfterTimeLimit() throws Exception {
+        createFiles();
+
+        WorkspaceScanner scanner = createScanner();
+        scanner.setScanTimeLimit(1);
+        assertTrue("Result is incomplete", scanner.invoke(workspace.getRoot(), null).isComplete());
+
+        WorkspaceScanner slowScanner = new WorkspaceScanner("**/*.txt", "", "UTF-8", "FIXME", "TODO", "@deprecated",
+                false, false, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void log(final String message) {
+                super.log(message);
+                if (message.startsWith("Found")) {
+                    try {
+                        Thread.sleep(1100); // exceed the time limit after the files have been found
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        slowScanner.setNumberOfThreads(2);
+        slowScanner.setScanTimeLimit(1);
+        TasksParserResult result = slowScanner.invoke(workspace.getRoot(), null);
+
+        assertFalse("Result is complete", result.isComplete());
+        assertEquals(WRONG_TASKS_ERROR, 0, result.getNumberOfAnnotations());
+        assertEquals("Wrong reason", "time limit of 1 seconds for the scan exceeded", result.getIncompleteReason());
+    }
+
+    /**
+     * Verifies that the files, lines and tasks of the scan are counted in the statistics.
+     *
+     * @throws Exception
+     *             if the files could not be created or scanned
+     */
+    @Test
+    public void shouldMeasurePhases() throws Exception {
+        createFiles();
+
+        for (int numberOfThreads = 1; numberOfThreads < 5; numberOfThreads += 3) {
+            WorkspaceScanner scanner = createScanner();
+            scanner.setNumberOfThreads(numberOfThreads);
+            ScanStatistics statistics = scanner.invoke(workspace.getRoot(), null).getStatistics();
+
+            Measurement matching = statistics.get(Phase.MATCHING);
+            assertEquals("Wrong number of files", NUMBER_OF_FILES, matching.getFiles());
+            assertEquals("Wrong number of lines", 20 * NUMBER_OF_FILES * (NUMBER_OF_FILES - 1) / 2
+                    + 3 * NUMBER_OF_FILES, matching.getLines());
+            assertEquals(WRONG_TASKS_ERROR, NUMBER_OF_FILES * 3, matching.getTasks());
+            assertEquals("Wrong number of files", NUMBER_OF_FILES, statistics.get(Phase.ENUMERATION).getFiles());
+            assertTrue("No bytes read", statistics.get(Phase.READING).getBytes() > 0);
+            assertEquals("Wrong number of lines in summary", statistics.getMeasurements().size() + 1,
+                    statistics.getSummary().size());
+        }
+    }
+
+    private Object copy(final Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(object);
+        output.close();
+        return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    private List<String> toDetailedString(final TasksParserResult result) {
+        List<String> tasks = new ArrayList<String>();
+        for (FileAnnotation annotation : result.getAnnotations()) {
+            Task task = (Task)annotation;
+            tasks.add(task.getFileName() + ":" + task.getPrimaryLineNumber() + ":" + task.getPriority() + ":"
+                    + task.getType() + ":" + task.getDetailMessage() + ":" + task.getPackageName() + ":"
+                    + task.getModuleName() + ":" + task.getPathName() + ":" + task.getContextHashCode());
+        }
+        Collections.sort(tasks);
+        return tasks;
+    }
+
+    private TasksParserResult scanIncremental(final String high, final int numberOfThreads)
+            throws IOException, InterruptedException {
+        WorkspaceScanner scanner = new WorkspaceScanner("**/*.txt", "", "UTF-8", high, "TODO", "@deprecated",
+                false, false, false);
+        scanner.setIncremental(true);
+        scanner.setNumberOfThreads(numberOfThreads);
+        return scanner.invoke(workspace.getRoot(), null);
+    }
+
+    private WorkspaceScanner createScanner() {
+        return new WorkspaceScanner("**/*.txt", "", "UTF-8", "FIXME", "TODO", "@deprecated", false, false, false);
+    }
+
+    private List<String> toString(final TasksParserResult result) {
+        List<String> tasks = new ArrayList<String>();
+        for (FileAnnotation task : result.getAnnotations()) {
+            tasks.add(task.getFileName() + ":" + task.getPrimaryLineNumber() + ":" + task.getMessage());
+        }
+        Collections.sort(tasks);
+        return tasks;
+    }
+
+    private void createFiles() throws IOException {
+        for (int file = 0; file < NUMBER_OF_FILES; file++) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < file * 20; line++) {
+                content.append("line without a tag\n");
+            }
+            content.append("// FIXME: first\n// TODO second\n// @deprecated third\n");
+            FileUtils.writeStringToFile(new File(workspace.getRoot(), "folder-" + file % 5 + "/file-" + file + ".txt"),
+                    content.toString(), "UTF-8");
+        }
+    }
+
+    private List<String> scan(final int numberOfThreads) throws IOException, InterruptedException {
+        WorkspaceScanner scanner = new WorkspaceScanner("**/*.txt", "", "UTF-8", "FIXME", "TODO", "@deprecated",
+                false, false, false);
+        scanner.setNumberOfThreads(numberOfThreads);
+
+        List<String> tasks = new ArrayList<String>();
+        for (FileAnnotation task : scanner.invoke(workspace.getRoot(), null).getAnnotations()) {
+            tasks.add(task.getFileName() + ":" + task.getPrimaryLineNumber() + ":" + task.getMessage());
+        }
+        return tasks;
+    }
+}